@@ -0,0 +1,296 @@
+/**
+ * Project: STMv2 Package: stm File: AdmissionController.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 5:21:09 PM
+ */
+package stm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of transactions in flight, the rest are queued till a slot frees up. Past a
+ * certain number of concurrent transactions, more transactions only mean more aborts and lower
+ * goodput, so the limit is adapted to the measured abort ratio and commit latency.
+ * 
+ * The limit is adjusted at the end of every window of completions, in the spirit of AIMD and TCP
+ * Vegas:
+ * 
+ * * If the abort ratio of the window is above the threshold, the limit is decreased
+ * multiplicatively. A window of aborts without a single commit is the worst case of it.
+ * 
+ * * Else, if the average commit latency of the window has grown well beyond the lowest observed,
+ * the transactions are queueing up on each other, so the limit is decreased by 1.
+ * 
+ * * Else, the limit is increased by 1.
+ * 
+ * The commit latency of a transaction doesn't count the time it spent blocked in
+ * {@link Transaction#retry()}, that is waiting for other transactions and not congestion.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.AdmissionController
+ */
+public class AdmissionController {
+  
+  private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+  
+  /**
+   * The abort ratio above which the limit is decreased multiplicatively.
+   */
+  private static final double ABORT_RATIO_THRESHOLD = 0.3;
+  
+  /**
+   * The factor the limit is multiplied with when the abort ratio is too high.
+   */
+  private static final double DECREASE_FACTOR = 0.75;
+  
+  /**
+   * The factor of the lowest observed commit latency beyond which the limit is decreased.
+   */
+  private static final double LATENCY_TOLERANCE = 2.0;
+  
+  /**
+   * The minimum number of completions in a window.
+   */
+  private static final int MIN_WINDOW = 16;
+  
+  /**
+   * The current limit of transactions in flight.
+   */
+  private int limit;
+  
+  /**
+   * The limit is never adjusted above this.
+   */
+  private int maxLimit;
+  
+  /**
+   * The number of transactions in flight.
+   */
+  private int inFlight;
+  
+  /**
+   * Starts the transactions waiting for a slot.
+   */
+  private Deque<Runnable> waiting;
+  
+  /**
+   * The number of commits in the current window.
+   */
+  private int commits;
+  
+  /**
+   * The number of aborts in the current window.
+   */
+  private int aborts;
+  
+  /**
+   * The sum of the commit latencies of the current window, in nanoseconds.
+   */
+  private long latencySum;
+  
+  /**
+   * The lowest average commit latency of a window observed so far, in nanoseconds.
+   */
+  private double minLatency;
+  
+  /**
+   * Makes a new admission controller.
+   * 
+   * @param initialLimit
+   *          The initial limit of transactions in flight.
+   * @param maxLimit
+   *          The limit is never adjusted above this.
+   */
+  public AdmissionController(int initialLimit, int maxLimit) {
+    if (initialLimit < 1 || maxLimit < initialLimit) {
+      throw new IllegalArgumentException("The limits must satisfy 1 <= initialLimit <= maxLimit");
+    }
+    this.limit = initialLimit;
+    this.maxLimit = maxLimit;
+    this.waiting = new ArrayDeque<>();
+    this.minLatency = Double.MAX_VALUE;
+  }
+  
+  /**
+   * @return The current limit of transactions in flight.
+   */
+  public synchronized int getLimit() {
+    return this.limit;
+  }
+  
+  /**
+   * @return The number of transactions in flight.
+   */
+  public synchronized int getInFlight() {
+    return this.inFlight;
+  }
+  
+  /**
+   * @return The number of transactions waiting for a slot.
+   */
+  public synchronized int getQueued() {
+    return this.waiting.size();
+  }
+  
+  /**
+   * Admits a new transaction. It is started right away if there is a free slot, else it is queued.
+   * 
+   * @param start
+   *          Starts the transaction.
+   */
+  void admit(Runnable start) {
+    
+    synchronized (this) {
+      if (this.inFlight >= this.limit) {
+        this.waiting.addLast(start);
+        return;
+      }
+      this.inFlight = this.inFlight + 1;
+    }
+    
+    start.run();
+  }
+  
+  /**
+   * Takes a slot again for a transaction that gave up its slot while it was blocked. The woken up
+   * transaction goes ahead of the new ones. The calling thread waits till it gets the slot.
+   */
+  void reacquire() {
+    
+    Semaphore slot = new Semaphore(0);
+    
+    synchronized (this) {
+      if (this.inFlight >= this.limit) {
+        this.waiting.addFirst(slot::release);
+      } else {
+        this.inFlight = this.inFlight + 1;
+        slot.release();
+      }
+    }
+    
+    slot.acquireUninterruptibly();
+  }
+  
+  /**
+   * Frees up the slot of a transaction, and starts the waiting transactions if there are free slots.
+   */
+  void release() {
+    
+    List<Runnable> starts = new ArrayList<>();
+    
+    synchronized (this) {
+      this.inFlight = this.inFlight - 1;
+      this.takeStarts(starts);
+    }
+    
+    run(starts);
+  }
+  
+  /**
+   * Records a failed commit.
+   */
+  void recordAbort() {
+    
+    List<Runnable> starts = new ArrayList<>();
+    
+    synchronized (this) {
+      this.aborts = this.aborts + 1;
+      this.adjustIfWindowEnded(starts);
+    }
+    
+    run(starts);
+  }
+  
+  /**
+   * Records a successful commit.
+   * 
+   * @param latency
+   *          The time the transaction took to commit, in nanoseconds, not counting the time it was
+   *          blocked.
+   */
+  void recordCommit(long latency) {
+    
+    List<Runnable> starts = new ArrayList<>();
+    
+    synchronized (this) {
+      this.commits = this.commits + 1;
+      this.latencySum = this.latencySum + latency;
+      this.adjustIfWindowEnded(starts);
+    }
+    
+    run(starts);
+  }
+  
+  /**
+   * Takes the waiting transactions that fit into the free slots, and gives them their slots. The
+   * caller holds the monitor of the controller, and starts them once it has let go of it.
+   * 
+   * @param starts
+   *          Collects the starts of the transactions.
+   */
+  private void takeStarts(List<Runnable> starts) {
+    while (this.inFlight < this.limit && !this.waiting.isEmpty()) {
+      this.inFlight = this.inFlight + 1;
+      starts.add(this.waiting.pollFirst());
+    }
+  }
+  
+  /**
+   * Starts the transactions, outside of the monitor of the controller.
+   */
+  private static void run(List<Runnable> starts) {
+    for (Runnable start : starts) {
+      start.run();
+    }
+  }
+  
+  /**
+   * Adjusts the limit at the end of a window. The caller holds the monitor of the controller.
+   * 
+   * @param starts
+   *          Collects the starts of the waiting transactions a raised limit lets in.
+   */
+  private void adjustIfWindowEnded(List<Runnable> starts) {
+    
+    int completions = this.commits + this.aborts;
+    
+    if (completions < Math.max(MIN_WINDOW, this.limit)) return;
+    
+    double abortRatio = (double) this.aborts / completions;
+    
+    // a window without commits has no latency, it is all aborts
+    //
+    double latency = this.commits == 0 ? 0 : (double) this.latencySum / this.commits;
+    
+    if (this.commits > 0) this.minLatency = Math.min(this.minLatency, latency);
+    
+    int oldLimit = this.limit;
+    
+    if (abortRatio > ABORT_RATIO_THRESHOLD) {
+      this.limit = Math.max(1, (int) (this.limit * DECREASE_FACTOR));
+    } else if (latency > this.minLatency * LATENCY_TOLERANCE) {
+      this.limit = Math.max(1, this.limit - 1);
+    } else {
+      this.limit = Math.min(this.maxLimit, this.limit + 1);
+    }
+    
+    if (oldLimit != this.limit) {
+      logger.debug("Admission limit " + oldLimit + " -> " + this.limit + ", abort ratio " + abortRatio);
+    }
+    
+    this.commits = 0;
+    this.aborts = 0;
+    this.latencySum = 0;
+    
+    // a raised limit lets the waiting transactions in
+    //
+    this.takeStarts(starts);
+  }
+}
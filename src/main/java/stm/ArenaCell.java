@@ -0,0 +1,282 @@
+/**
+ * Project: STMv2 Package: stm File: ArenaCell.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 1:47:02 AM
+ */
+package stm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The memory cell of a {@link TLongArena}, a single memory cell for all the slots of the arena. The
+ * slots are struct-of-arrays: every slot is a value and a version, kept by the storage of the arena
+ * -- {@link OnHeap} or {@link OffHeap} -- so the number of heap objects doesn't grow with the
+ * number of slots.
+ * 
+ * * The transactions log every slot on its own -- keyed by the arena and the slot's index -- with
+ * the shared {@link PrimitiveCell#BITS} marker and the raw value, like a {@link TLongVar}.
+ * 
+ * * Every slot is its own seqlock: the writers make its version odd while they write the value, the
+ * readers retry till they read the value between two equal, even versions. The writers are
+ * serialized by the commit lock.
+ * 
+ * * The transactions blocked on an arena wait on the whole arena, a write into any slot wakes them.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.ArenaCell
+ */
+abstract class ArenaCell extends MemoryCell implements TLongArena {
+  
+  /**
+   * The number of slots.
+   */
+  private final int size;
+  
+  /**
+   * Makes an arena of zeroed slots.
+   * 
+   * @param ID
+   *          The identifier of the memory cell, handed out by the STM
+   * @param size
+   *          The number of slots
+   */
+  ArenaCell(long ID, int size) {
+    super(ID, PrimitiveCell.BITS);
+    if (size < 0) throw new IllegalArgumentException("The size of the arena can't be negative");
+    this.size = size;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.TLongArena#size()
+   */
+  @Override
+  public int size() {
+    return this.size;
+  }
+  
+  /**
+   * @param index
+   *          The index of a slot.
+   * @return The index.
+   * @throws IndexOutOfBoundsException
+   *           When the arena has no such slot.
+   */
+  int checkIndex(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+    return index;
+  }
+  
+  /**
+   * @return The version of the slot, read with acquire semantics.
+   */
+  abstract long versionOf(int slot);
+  
+  /**
+   * @return The value of the slot, read with opaque semantics.
+   */
+  abstract long valueOf(int slot);
+  
+  /**
+   * Sets the version of the slot, with release semantics if asked to, else opaque.
+   */
+  abstract void setVersion(int slot, long version, boolean release);
+  
+  /**
+   * Sets the value of the slot, with opaque semantics.
+   */
+  abstract void setValue(int slot, long value);
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.MemoryCell#peekBits(int)
+   */
+  @Override
+  long peekBits(int slot) {
+    while (true) {
+      long version = this.versionOf(slot);
+      if ((version & 1L) == 0) {
+        long value = this.valueOf(slot);
+        
+        // the value must be read before the version is read again
+        //
+        VarHandle.acquireFence();
+        
+        if (this.versionOf(slot) == version) return value;
+      }
+      Thread.onSpinWait();
+    }
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.MemoryCell#holds(int, stm.Value, long)
+   */
+  @Override
+  boolean holds(int slot, Value value, long bits) {
+    return this.peekBits(slot) == bits;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.MemoryCell#write(int, stm.Value, long, stm.ConflictScheduler.Worker)
+   */
+  @Override
+  void write(int slot, Value newData, long bits, ConflictScheduler.Worker writer) {
+    
+    long version = this.versionOf(slot);
+    
+    // the odd version must be visible before the value changes
+    //
+    this.setVersion(slot, version + 1, false);
+    VarHandle.storeStoreFence();
+    this.setValue(slot, bits);
+    this.setVersion(slot, version + 2, true);
+    
+    // bumps the version of the arena itself and records the writer for the scheduler
+    //
+    this.write(PrimitiveCell.BITS, writer);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.MemoryCell#toString()
+   */
+  @Override
+  public String toString() {
+    return "{\"ID\":" + this.getID() + ",\"size\":" + this.size + "}";
+  }
+  
+  /**
+   * An arena kept on the heap, its values and versions in parallel `long[]`s.
+   * 
+   * Qualified Name: stm.ArenaCell.OnHeap
+   */
+  static final class OnHeap extends ArenaCell {
+    
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(long[].class);
+    
+    /**
+     * The values of the slots.
+     */
+    private final long[] values;
+    
+    /**
+     * The versions of the slots, odd while a writer is writing into the slot.
+     */
+    private final long[] versions;
+    
+    OnHeap(long ID, int size) {
+      super(ID, size);
+      this.values = new long[size];
+      this.versions = new long[size];
+    }
+    
+    @Override
+    long versionOf(int slot) {
+      return (long) SLOT.getAcquire(this.versions, slot);
+    }
+    
+    @Override
+    long valueOf(int slot) {
+      return (long) SLOT.getOpaque(this.values, slot);
+    }
+    
+    @Override
+    void setVersion(int slot, long version, boolean release) {
+      if (release) {
+        SLOT.setRelease(this.versions, slot, version);
+      } else {
+        SLOT.setOpaque(this.versions, slot, version);
+      }
+    }
+    
+    @Override
+    void setValue(int slot, long value) {
+      SLOT.setOpaque(this.values, slot, value);
+    }
+  }
+  
+  /**
+   * An arena kept off the heap, in direct {@link ByteBuffer}s. Every slot takes 16 bytes -- its
+   * version followed by its value, on the same cache line -- and the slots are split into chunks
+   * of upto 1 GB, since a buffer can't be larger than 2 GB. The heap only holds the chunks'
+   * buffers, so neither the heap size nor the GC pauses grow with the size of the arena.
+   * 
+   * The direct memory is released when the arena becomes unreachable, the JVM caps it with
+   * `-XX:MaxDirectMemorySize`.
+   * 
+   * Note: The slots are indexed by `int`, so an arena holds at most 2^31 - 1 of them -- 32 GB of
+   * direct memory for 16 GB of values. Larger datasets are sharded across several arenas, see
+   * {@link STM#newOffHeapLongArena(int)}.
+   * 
+   * Qualified Name: stm.ArenaCell.OffHeap
+   */
+  static final class OffHeap extends ArenaCell {
+    
+    private static final VarHandle WORD = MethodHandles.byteBufferViewVarHandle(long[].class,
+        ByteOrder.nativeOrder());
+    
+    /**
+     * A slot takes 1 << SLOT_SHIFT bytes, a version and a value.
+     */
+    private static final int SLOT_SHIFT = 4;
+    
+    /**
+     * A chunk holds 1 << CHUNK_SHIFT slots, 1 GB worth.
+     */
+    private static final int CHUNK_SHIFT = 30 - SLOT_SHIFT;
+    
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    
+    /**
+     * The chunks of the slots.
+     */
+    private final ByteBuffer[] chunks;
+    
+    OffHeap(long ID, int size) {
+      super(ID, size);
+      this.chunks = new ByteBuffer[(int) (((long) size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+      for (int i = 0; i < this.chunks.length; i++) {
+        int slots = Math.min(size - (i << CHUNK_SHIFT), 1 << CHUNK_SHIFT);
+        this.chunks[i] = ByteBuffer.allocateDirect(slots << SLOT_SHIFT);
+      }
+    }
+    
+    /**
+     * @return The offset of the slot's version in its chunk, its value follows.
+     */
+    private static int offsetOf(int slot) {
+      return (slot & CHUNK_MASK) << SLOT_SHIFT;
+    }
+    
+    @Override
+    long versionOf(int slot) {
+      return (long) WORD.getAcquire(this.chunks[slot >>> CHUNK_SHIFT], offsetOf(slot));
+    }
+    
+    @Override
+    long valueOf(int slot) {
+      return (long) WORD.getOpaque(this.chunks[slot >>> CHUNK_SHIFT], offsetOf(slot) + Long.BYTES);
+    }
+    
+    @Override
+    void setVersion(int slot, long version, boolean release) {
+      if (release) {
+        WORD.setRelease(this.chunks[slot >>> CHUNK_SHIFT], offsetOf(slot), version);
+      } else {
+        WORD.setOpaque(this.chunks[slot >>> CHUNK_SHIFT], offsetOf(slot), version);
+      }
+    }
+    
+    @Override
+    void setValue(int slot, long value) {
+      WORD.setOpaque(this.chunks[slot >>> CHUNK_SHIFT], offsetOf(slot) + Long.BYTES, value);
+    }
+  }
+}
@@ -0,0 +1,856 @@
+/**
+ * Project: STMv2 Package: stm File: BatchExecutor.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 1:26:51 PM
+ */
+package stm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A deterministic parallel execution engine for ordered batches of transactions, modelled after
+ * Block-STM. The result of executing a batch is identical to running its transactions one after the
+ * other in the given order, but the transactions are executed speculatively in parallel.
+ * 
+ * The transactions of the batch read from and write to a multi-version memory -- every memory cell
+ * has one version per transaction index that wrote into it. A transaction at index i reads the
+ * version written by the highest index below i, or the memory cell itself when there is none. Each
+ * execution is validated by re-reading its read set, an execution whose reads changed is aborted
+ * and its writes are marked as estimates. The transactions reading an estimate wait for the
+ * estimating transaction to be re-executed. Only the invalidated transactions are re-executed.
+ * 
+ * Once the whole batch has been executed and validated, the final versions are flushed into the
+ * STM. The batch holds the STM exclusively for its whole execution, so the memory cells can't
+ * change under it.
+ * 
+ * Note: A transaction whose actions fail doesn't write anything, its status in the result is false.
+ * Since a batch can't wait for anyone outside of it, a transaction that calls
+ * {@link Transaction#retry()} fails as well.
+ * 
+ * Note: The transactions of a batch have no handles, they can't be cancelled or given deadlines.
+ * The batch runs to completion, a caller that needs a bound on it should keep its batches small.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.BatchExecutor
+ */
+public class BatchExecutor {
+  
+  private static final Logger logger = LoggerFactory.getLogger(BatchExecutor.class);
+  
+  /**
+   * The status of a transaction that is ready to be executed.
+   */
+  private static final int READY_TO_EXECUTE = 0;
+  
+  /**
+   * The status of a transaction that is being executed.
+   */
+  private static final int EXECUTING = 1;
+  
+  /**
+   * The status of a transaction that has been executed.
+   */
+  private static final int EXECUTED = 2;
+  
+  /**
+   * The status of a transaction whose execution is being aborted.
+   */
+  private static final int ABORTING = 3;
+  
+  /**
+   * The STM the batches operate upon.
+   */
+  private STM stm;
+  
+  /**
+   * The number of threads executing a batch.
+   */
+  private int nThreads;
+  
+  /**
+   * The threads executing the batches.
+   */
+  private ExecutorService threadPool;
+  
+  /**
+   * Makes a new batch executor for the STM.
+   * 
+   * @param stm
+   *          The STM the batches operate upon.
+   * @param nThreads
+   *          The number of threads executing a batch in parallel.
+   */
+  public BatchExecutor(STM stm, int nThreads) {
+    if (nThreads < 1) throw new IllegalArgumentException("The executor needs atleast 1 thread");
+    this.stm = stm;
+    this.nThreads = nThreads;
+    this.threadPool = Executors.newFixedThreadPool(nThreads, r -> {
+      Thread thread = new Thread(r, "stm-batch");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+  
+  /**
+   * Executes the batch of transactional actions, each action is a transaction of its own. The
+   * effects on the STM are identical to running the transactions one after the other in the order
+   * of the batch. The caller is blocked till the whole batch has been committed.
+   * 
+   * An action throwing a {@link RuntimeException} only fails its own transaction. Anything else
+   * thrown while executing the batch -- an {@link Error} out of an action, or a fault of the
+   * executor itself -- stops all the workers, and the batch is abandoned without writing anything.
+   * 
+   * @param batch
+   *          The ordered transactional actions.
+   * @return The statuses of the transactions in the order of the batch, true if the transaction
+   *         succeeded, false if its actions failed.
+   * @throws IllegalStateException
+   *           When the batch was abandoned, or the caller was interrupted while waiting for it --
+   *           the caller's interrupt flag is then set again.
+   */
+  public List<Boolean> execute(List<Function<Transaction, Boolean>> batch) {
+    
+    Run run = new Run(batch);
+    
+    List<Transaction> waiters = new ArrayList<>();
+    
+    PartitionedExecutor partitions = this.stm.acquireExclusive();
+    
+    try {
+      
+      List<Future<?>> workers = new ArrayList<>(this.nThreads);
+      for (int i = 0; i < this.nThreads; i++) {
+        workers.add(this.threadPool.submit(run::work));
+      }
+      
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+      
+      run.flush(waiters);
+    
+    } catch (InterruptedException | ExecutionException e) {
+      
+      // stops the workers still running, the batch isn't flushed
+      //
+      run.done = true;
+      
+      // the caller's interrupt is kept for its own handling
+      //
+      if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+      
+      logger.error(e.getMessage(), e);
+      
+      throw new IllegalStateException("The batch couldn't be executed", e);
+    
+    } finally {
+      this.stm.releaseExclusive(partitions);
+      Transaction.wakeup(waiters);
+    }
+    
+    List<Boolean> statuses = new ArrayList<>(batch.size());
+    List<Runnable> effects = new ArrayList<>();
+    for (int i = 0; i < batch.size(); i++) {
+      statuses.add(run.succeeded.get(i));
+      List<Runnable> transactionEffects = run.incarnations.get(i).takeEffects(run.succeeded.get(i));
+      if (!Objects.isNull(transactionEffects)) effects.addAll(transactionEffects);
+    }
+    
+    if (!effects.isEmpty()) this.stm.defer(effects);
+    
+    return statuses;
+  }
+  
+  /**
+   * Stops the threads of the executor.
+   */
+  public void shutdown() {
+    this.threadPool.shutdownNow();
+  }
+  
+  /**
+   * Thrown when a transaction reads a version that is an estimate. The transaction can't go on
+   * till the transaction that wrote the estimate has been re-executed.
+   * 
+   * Qualified Name: stm.BatchExecutor.Dependency
+   */
+  static final class Dependency extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * The index of the transaction that wrote the estimate.
+     */
+    private int blockingIndex;
+    
+    /**
+     * @param blockingIndex
+     *          The index of the transaction that wrote the estimate.
+     */
+    Dependency(int blockingIndex) {
+      super(null, null, false, false);
+      this.blockingIndex = blockingIndex;
+    }
+  }
+  
+  /**
+   * A version of a memory cell written by a transaction of the batch.
+   * 
+   * Qualified Name: stm.BatchExecutor.Version
+   */
+  private static final class Version {
+    
+    /**
+     * The index of the transaction that wrote this version.
+     */
+    private int index;
+    
+    /**
+     * The incarnation -- the number of re-executions -- of the transaction that wrote this version.
+     */
+    private int incarnation;
+    
+    /**
+     * The value written, null for an estimate.
+     */
+    private Value value;
+    
+    /**
+     * The raw bits written into a {@link PrimitiveCell}, logged next to the value.
+     */
+    private long bits;
+    
+    /**
+     * Marks a version whose writer has been aborted and is most likely going to write again.
+     */
+    private boolean estimate;
+    
+    Version(int index, int incarnation, Value value, long bits, boolean estimate) {
+      this.index = index;
+      this.incarnation = incarnation;
+      this.value = value;
+      this.bits = bits;
+      this.estimate = estimate;
+    }
+  }
+  
+  /**
+   * A location of the memory, a memory cell and a slot of it. The slot is 0 except for the slots of
+   * the {@link ArenaCell}s, each of which is versioned on its own.
+   * 
+   * Qualified Name: stm.BatchExecutor.Location
+   */
+  private static final class Location {
+    
+    private MemoryCell memCell;
+    
+    private int slot;
+    
+    Location(MemoryCell memCell, int slot) {
+      this.memCell = memCell;
+      this.slot = slot;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      return 31 * this.memCell.hashCode() + this.slot;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof Location)) return false;
+      Location other = (Location) obj;
+      return this.slot == other.slot && this.memCell == other.memCell;
+    }
+  }
+  
+  /**
+   * A read performed by an execution of a transaction. The version is null when the value came
+   * from the memory cell itself.
+   * 
+   * Qualified Name: stm.BatchExecutor.Read
+   */
+  private static final class Read {
+    
+    private Location location;
+    
+    private Version version;
+    
+    Read(Location location, Version version) {
+      this.location = location;
+      this.version = version;
+    }
+  }
+  
+  /**
+   * The view of the multi-version memory from a single execution of a transaction of the batch.
+   * The transaction reads through this view instead of reading from the memory cells.
+   * 
+   * Qualified Name: stm.BatchExecutor.View
+   */
+  static final class View {
+    
+    /**
+     * The run the execution belongs to.
+     */
+    private Run run;
+    
+    /**
+     * The index of the executing transaction.
+     */
+    private int index;
+    
+    /**
+     * The reads performed by the execution.
+     */
+    private List<Read> reads;
+    
+    /**
+     * The index of the transaction whose estimate was read, -1 if none was.
+     */
+    private int blockingIndex;
+    
+    View(Run run, int index) {
+      this.run = run;
+      this.index = index;
+      this.reads = new ArrayList<>();
+      this.blockingIndex = -1;
+    }
+    
+    /**
+     * Reads the value of the memory cell as seen by the executing transaction.
+     * 
+     * @param memCell
+     *          The memory cell to read.
+     * @return The value, it must not be modified.
+     * @throws Dependency
+     *           When the value is an estimate.
+     */
+    Value read(MemoryCell memCell) {
+      Version version = this.version(memCell, 0);
+      return Objects.isNull(version) ? memCell.peek() : version.value;
+    }
+    
+    /**
+     * Reads the bits of the primitive memory cell, or of the slot of the arena, as seen by the
+     * executing transaction.
+     * 
+     * @param memCell
+     *          The primitive memory cell or the arena to read.
+     * @param slot
+     *          The slot of the arena, 0 for a primitive memory cell.
+     * @return The raw bits.
+     * @throws Dependency
+     *           When the value is an estimate.
+     */
+    long readBits(MemoryCell memCell, int slot) {
+      Version version = this.version(memCell, slot);
+      return Objects.isNull(version) ? memCell.peekBits(slot) : version.bits;
+    }
+    
+    /**
+     * Records the read of the slot of the memory cell.
+     * 
+     * @return The version read, null if the value comes from the memory cell itself.
+     */
+    private Version version(MemoryCell memCell, int slot) {
+      
+      Location location = new Location(memCell, slot);
+      Version version = this.run.read(location, this.index);
+      
+      if (!Objects.isNull(version) && version.estimate) {
+        this.blockingIndex = version.index;
+        throw new Dependency(version.index);
+      }
+      
+      this.reads.add(new Read(location, version));
+      
+      return version;
+    }
+  }
+  
+  /**
+   * The execution of a single batch. It holds the multi-version memory and the collaborative
+   * scheduler of Block-STM.
+   * 
+   * Qualified Name: stm.BatchExecutor.Run
+   */
+  private final class Run {
+    
+    /**
+     * The transactional actions of the batch.
+     */
+    private List<Function<Transaction, Boolean>> batch;
+    
+    /**
+     * The size of the batch.
+     */
+    private int size;
+    
+    /**
+     * The multi-version memory, the versions of every location keyed by the index of their writers.
+     */
+    private Map<Location, ConcurrentSkipListMap<Integer, Version>> versions;
+    
+    /**
+     * The locations written by the last execution of each transaction.
+     */
+    private AtomicReferenceArray<Set<Location>> lastWrites;
+    
+    /**
+     * The reads of the last execution of each transaction.
+     */
+    private AtomicReferenceArray<List<Read>> lastReads;
+    
+    /**
+     * The statuses of the last execution of each transaction.
+     */
+    private AtomicReferenceArray<Boolean> succeeded;
+    
+    /**
+     * The last execution of each transaction, the effects it registered are run after the batch.
+     */
+    private AtomicReferenceArray<Transaction> incarnations;
+    
+    /**
+     * The scheduling state of each transaction, it is also the lock guarding it.
+     */
+    private State[] states;
+    
+    /**
+     * The index of the next transaction to execute.
+     */
+    private AtomicInteger executionIndex;
+    
+    /**
+     * The index of the next transaction to validate.
+     */
+    private AtomicInteger validationIndex;
+    
+    /**
+     * Incremented every time one of the indices is decreased.
+     */
+    private AtomicInteger decreaseCount;
+    
+    /**
+     * The number of tasks being worked upon.
+     */
+    private AtomicInteger activeTasks;
+    
+    /**
+     * Set when the whole batch has been executed and validated, or when it was abandoned.
+     */
+    private volatile boolean done;
+    
+    Run(List<Function<Transaction, Boolean>> batch) {
+      this.batch = batch;
+      this.size = batch.size();
+      this.versions = new ConcurrentHashMap<>();
+      this.lastWrites = new AtomicReferenceArray<>(this.size);
+      this.lastReads = new AtomicReferenceArray<>(this.size);
+      this.succeeded = new AtomicReferenceArray<>(this.size);
+      this.incarnations = new AtomicReferenceArray<>(this.size);
+      this.states = new State[this.size];
+      for (int i = 0; i < this.size; i++) {
+        this.states[i] = new State();
+        this.lastWrites.set(i, Collections.emptySet());
+        this.lastReads.set(i, Collections.emptyList());
+      }
+      this.executionIndex = new AtomicInteger(0);
+      this.validationIndex = new AtomicInteger(0);
+      this.decreaseCount = new AtomicInteger(0);
+      this.activeTasks = new AtomicInteger(0);
+      this.done = this.size == 0;
+    }
+    
+    /**
+     * The work loop of the threads executing the batch. A task is an execution or a validation of
+     * a transaction, represented by its index and incarnation.
+     */
+    void work() {
+      
+      Task task = null;
+      
+      try {
+        
+        while (!this.done) {
+          
+          if (!Objects.isNull(task) && task.execution) task = this.tryExecute(task);
+          
+          if (!Objects.isNull(task) && !task.execution) task = this.needsReexecution(task);
+          
+          if (Objects.isNull(task)) task = this.nextTask();
+        }
+      
+      } catch (Throwable e) {
+        
+        // the task is lost, the other workers would wait for it forever
+        //
+        this.done = true;
+        
+        throw e;
+      }
+    }
+    
+    /**
+     * Flushes the final versions of the memory cells into the STM. The caller holds the STM
+     * exclusively.
+     * 
+     * @param waiters
+     *          Collects the transactions blocked on the memory cells written into.
+     */
+    void flush(List<Transaction> waiters) {
+      
+      for (Map.Entry<Location, ConcurrentSkipListMap<Integer, Version>> member : this.versions.entrySet()) {
+        
+        Map.Entry<Integer, Version> last = member.getValue().lastEntry();
+        MemoryCell memCell = member.getKey().memCell;
+        
+        if (Objects.isNull(last) || !BatchExecutor.this.stm.exists(memCell)) continue;
+        
+        memCell.write(member.getKey().slot, last.getValue().value, last.getValue().bits, null);
+        memCell.takeWaiters(waiters);
+      }
+    }
+    
+    /**
+     * Reads the version of the location written by the highest transaction index below the given
+     * index.
+     * 
+     * @param location
+     *          The location.
+     * @param index
+     *          The index of the reading transaction.
+     * @return The version, null if no transaction below the index wrote into the location.
+     */
+    Version read(Location location, int index) {
+      ConcurrentSkipListMap<Integer, Version> cellVersions = this.versions.get(location);
+      if (Objects.isNull(cellVersions)) return null;
+      Map.Entry<Integer, Version> entry = cellVersions.lowerEntry(index);
+      return Objects.isNull(entry) ? null : entry.getValue();
+    }
+    
+    /**
+     * Executes the incarnation of the transaction against the multi-version memory.
+     * 
+     * @param task
+     *          The execution task.
+     * @return The next task for the thread, null if there is none.
+     */
+    private Task tryExecute(Task task) {
+      
+      while (true) {
+        
+        View view = new View(this, task.index);
+        Transaction t = Transaction.builder().stm(BatchExecutor.this.stm).action(this.batch.get(task.index)).build();
+        t.setView(view);
+        
+        boolean status = false;
+        
+        try {
+          status = t.executeActions();
+        } catch (Dependency e) {
+          // the blocking index is recorded in the view
+        } catch (Transaction.Retry e) {
+          // a transaction of the batch can't block, retrying is the same as failing
+        } catch (RuntimeException e) {
+          logger.error("Transaction " + task.index + " of the batch failed", e);
+        }
+        
+        if (view.blockingIndex >= 0) {
+          if (this.addDependency(task.index, view.blockingIndex)) return null;
+          continue; // the blocking transaction has been executed meanwhile, execute again
+        }
+        
+        TxLog writes = status ? t.getWriteQuarantine() : new TxLog();
+        
+        this.succeeded.set(task.index, status);
+        this.incarnations.set(task.index, t);
+        
+        boolean wroteNewLocation = this.record(task, view.reads, writes);
+        
+        return this.finishExecution(task, wroteNewLocation);
+      }
+    }
+    
+    /**
+     * Records the reads and writes of the execution into the multi-version memory.
+     * 
+     * @return true if the execution wrote into a memory cell that the previous incarnation didn't.
+     */
+    private boolean record(Task task, List<Read> reads, TxLog writes) {
+      
+      Set<Location> locations = new HashSet<>();
+      
+      for (int i = 0; i < writes.size(); i++) {
+        Location location = new Location(writes.keyAt(i), writes.slotAt(i));
+        locations.add(location);
+        this.versions.computeIfAbsent(location, k -> new ConcurrentSkipListMap<>()).put(task.index,
+            new Version(task.index, task.incarnation, writes.valueAt(i), writes.bitsAt(i), false));
+      }
+      
+      Set<Location> previousWrites = this.lastWrites.get(task.index);
+      
+      for (Location location : previousWrites) {
+        if (!locations.contains(location)) this.versions.get(location).remove(task.index);
+      }
+      
+      boolean wroteNewLocation = !previousWrites.containsAll(locations);
+      
+      this.lastWrites.set(task.index, locations);
+      this.lastReads.set(task.index, reads);
+      
+      return wroteNewLocation;
+    }
+    
+    /**
+     * Validates the read set of the transaction's last execution. If the reads aren't valid
+     * anymore, the execution is aborted and its writes are converted into estimates.
+     * 
+     * @param task
+     *          The validation task.
+     * @return The next task for the thread, null if there is none.
+     */
+    private Task needsReexecution(Task task) {
+      
+      boolean aborted = !this.validateReads(task.index) && this.tryValidationAbort(task);
+      
+      if (aborted) {
+        for (Location location : this.lastWrites.get(task.index)) {
+          this.versions.get(location).put(task.index, new Version(task.index, task.incarnation, null, 0L, true));
+        }
+      }
+      
+      return this.finishValidation(task.index, aborted);
+    }
+    
+    /**
+     * @return true if every read of the transaction's last execution still sees the same version.
+     */
+    private boolean validateReads(int index) {
+      for (Read read : this.lastReads.get(index)) {
+        Version current = this.read(read.location, index);
+        if (Objects.isNull(current) && Objects.isNull(read.version)) continue;
+        if (Objects.isNull(current) || Objects.isNull(read.version)) return false;
+        if (current.estimate) return false;
+        if (current.index != read.version.index || current.incarnation != read.version.incarnation) return false;
+      }
+      return true;
+    }
+    
+    /**
+     * Picks the next task -- a validation if there are executions waiting to be validated, else an
+     * execution.
+     */
+    private Task nextTask() {
+      if (this.validationIndex.get() < this.executionIndex.get()) {
+        Task task = this.nextValidation();
+        if (!Objects.isNull(task)) return task;
+      }
+      return this.nextExecution();
+    }
+    
+    private Task nextExecution() {
+      if (this.executionIndex.get() >= this.size) {
+        this.checkDone();
+        return null;
+      }
+      this.activeTasks.incrementAndGet();
+      return this.tryIncarnate(this.executionIndex.getAndIncrement());
+    }
+    
+    private Task nextValidation() {
+      if (this.validationIndex.get() >= this.size) {
+        this.checkDone();
+        return null;
+      }
+      this.activeTasks.incrementAndGet();
+      int index = this.validationIndex.getAndIncrement();
+      if (index < this.size) {
+        State state = this.states[index];
+        synchronized (state) {
+          if (state.status == EXECUTED) return new Task(index, state.incarnation, false);
+        }
+      }
+      this.activeTasks.decrementAndGet();
+      return null;
+    }
+    
+    private Task tryIncarnate(int index) {
+      if (index < this.size) {
+        State state = this.states[index];
+        synchronized (state) {
+          if (state.status == READY_TO_EXECUTE) {
+            state.status = EXECUTING;
+            return new Task(index, state.incarnation, true);
+          }
+        }
+      }
+      this.activeTasks.decrementAndGet();
+      return null;
+    }
+    
+    private void checkDone() {
+      int observedCount = this.decreaseCount.get();
+      if (Math.min(this.executionIndex.get(), this.validationIndex.get()) >= this.size
+          && this.activeTasks.get() == 0 && observedCount == this.decreaseCount.get()) {
+        this.done = true;
+      }
+    }
+    
+    /**
+     * Makes the transaction wait for the blocking transaction to be re-executed.
+     * 
+     * @return false if the blocking transaction has already been executed.
+     */
+    private boolean addDependency(int index, int blockingIndex) {
+      State blocking = this.states[blockingIndex];
+      synchronized (blocking) {
+        if (blocking.status == EXECUTED) return false;
+        State state = this.states[index];
+        synchronized (state) {
+          state.status = ABORTING;
+        }
+        blocking.dependents.add(index);
+      }
+      this.activeTasks.decrementAndGet();
+      return true;
+    }
+    
+    private void setReadyStatus(int index) {
+      State state = this.states[index];
+      synchronized (state) {
+        state.incarnation = state.incarnation + 1;
+        state.status = READY_TO_EXECUTE;
+      }
+    }
+    
+    private Task finishExecution(Task task, boolean wroteNewLocation) {
+      
+      State state = this.states[task.index];
+      List<Integer> dependents = null;
+      
+      synchronized (state) {
+        state.status = EXECUTED;
+        dependents = state.dependents;
+        state.dependents = new ArrayList<>();
+      }
+      
+      if (!dependents.isEmpty()) {
+        int minDependent = Integer.MAX_VALUE;
+        for (int dependent : dependents) {
+          this.setReadyStatus(dependent);
+          minDependent = Math.min(minDependent, dependent);
+        }
+        this.decreaseExecutionIndex(minDependent);
+      }
+      
+      if (this.validationIndex.get() > task.index) {
+        if (!wroteNewLocation) return new Task(task.index, task.incarnation, false);
+        this.decreaseValidationIndex(task.index);
+      }
+      
+      this.activeTasks.decrementAndGet();
+      return null;
+    }
+    
+    private boolean tryValidationAbort(Task task) {
+      State state = this.states[task.index];
+      synchronized (state) {
+        if (state.incarnation == task.incarnation && state.status == EXECUTED) {
+          state.status = ABORTING;
+          return true;
+        }
+      }
+      return false;
+    }
+    
+    private Task finishValidation(int index, boolean aborted) {
+      if (aborted) {
+        this.setReadyStatus(index);
+        this.decreaseValidationIndex(index + 1);
+        if (this.executionIndex.get() > index) {
+          Task task = this.tryIncarnate(index);
+          if (!Objects.isNull(task)) return task;
+          return null; // tryIncarnate has already given up the active task
+        }
+      }
+      this.activeTasks.decrementAndGet();
+      return null;
+    }
+    
+    private void decreaseExecutionIndex(int target) {
+      this.executionIndex.accumulateAndGet(target, Math::min);
+      this.decreaseCount.incrementAndGet();
+    }
+    
+    private void decreaseValidationIndex(int target) {
+      this.validationIndex.accumulateAndGet(target, Math::min);
+      this.decreaseCount.incrementAndGet();
+    }
+  }
+  
+  /**
+   * The scheduling state of a transaction of the batch.
+   * 
+   * Qualified Name: stm.BatchExecutor.State
+   */
+  private static final class State {
+    
+    private int incarnation;
+    
+    private int status = READY_TO_EXECUTE;
+    
+    /**
+     * The transactions waiting for this transaction to be re-executed.
+     */
+    private List<Integer> dependents = new ArrayList<>();
+  }
+  
+  /**
+   * An execution or a validation task for an incarnation of a transaction.
+   * 
+   * Qualified Name: stm.BatchExecutor.Task
+   */
+  private static final class Task {
+    
+    private int index;
+    
+    private int incarnation;
+    
+    private boolean execution;
+    
+    Task(int index, int incarnation, boolean execution) {
+      this.index = index;
+      this.incarnation = incarnation;
+      this.execution = execution;
+    }
+  }
+}
@@ -0,0 +1,340 @@
+/**
+ * Project: STMv2 Package: stm File: ConflictScheduler.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 10:12:40 AM
+ */
+package stm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A conflict aware scheduler for transactions. It runs the transactions on a fixed set of workers,
+ * each worker has its own queue of transactions and executes them one after the other.
+ * 
+ * Instead of letting a transaction that failed its commit retry blindly, the scheduler looks up the
+ * worker of the transaction that won the conflict -- the last writer of the memory cell that failed
+ * the validation -- and moves the loser to the front of the winner's queue. The loser then runs
+ * right after the winner on the same worker, so a pair of transactions that keep killing each
+ * other get serialized instead of wasting their retries. This is in the spirit of Steal-on-abort
+ * and CAR-STM.
+ * 
+ * The transactions can be cancelled through their handles, and given a deadline with
+ * {@link #submit(long, TimeUnit, Function...)}. A queued or blocked transaction finds out that it
+ * has to stop on its next attempt.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.ConflictScheduler
+ */
+public class ConflictScheduler {
+  
+  private static final Logger logger = LoggerFactory.getLogger(ConflictScheduler.class);
+  
+  /**
+   * The STM the scheduled transactions operate upon.
+   */
+  private STM stm;
+  
+  /**
+   * The workers of the scheduler.
+   */
+  private Worker[] workers;
+  
+  /**
+   * Used for distributing the submitted transactions across the workers in a round-robin fashion.
+   */
+  private AtomicInteger nextWorker;
+  
+  /**
+   * The number of aborted transactions that were moved to the worker of the transaction they
+   * conflicted with.
+   */
+  private AtomicLong steals;
+  
+  /**
+   * The transactions submitted and not ended yet, queued, running or blocked.
+   */
+  private Set<Transaction> inFlight;
+  
+  /**
+   * Flag that indicates that the scheduler has been shut down, guarded by the scheduler.
+   */
+  private boolean isShutdown;
+  
+  /**
+   * Makes a new conflict aware scheduler for the STM.
+   * 
+   * @param stm
+   *          The STM that the scheduled transactions operate on.
+   * @param nWorkers
+   *          The number of workers, each worker runs on its own thread.
+   */
+  public ConflictScheduler(STM stm, int nWorkers) {
+    if (nWorkers < 1) throw new IllegalArgumentException("The scheduler needs atleast 1 worker");
+    this.stm = stm;
+    this.nextWorker = new AtomicInteger(0);
+    this.steals = new AtomicLong(0);
+    this.inFlight = ConcurrentHashMap.newKeySet();
+    this.workers = new Worker[nWorkers];
+    for (int i = 0; i < nWorkers; i++) {
+      this.workers[i] = new Worker(i);
+    }
+    for (Worker worker : this.workers) {
+      worker.thread.start();
+    }
+  }
+  
+  /**
+   * Submits the actions to be performed transactionally. The scheduler spins up a transaction to
+   * perform the actions on one of its workers.
+   * 
+   * @param actions
+   *          The actions to perform transactionally.
+   * @return The handle of the transaction.
+   */
+  @SuppressWarnings("unchecked")
+  public TransactionHandle submit(Function<Transaction, Boolean>... actions) {
+    List<Function<Transaction, Boolean>> transactionalActions = Arrays.asList(actions);
+    Transaction t = Transaction.builder().stm(this.stm).actions(transactionalActions).build();
+    return this.enqueue(t);
+  }
+  
+  /**
+   * Submits the actions to be performed transactionally, with a deadline. If the transaction
+   * doesn't commit before the deadline, it aborts cleanly with the {@link Outcome#TIMED_OUT}
+   * outcome. The deadline runs from the submission, the time spent waiting in the queues counts.
+   * 
+   * @param timeout
+   *          The time from now till the deadline.
+   * @param unit
+   *          The unit of the timeout.
+   * @param actions
+   *          The actions to perform transactionally.
+   * @return The handle of the transaction.
+   */
+  @SuppressWarnings("unchecked")
+  public TransactionHandle submit(long timeout, TimeUnit unit, Function<Transaction, Boolean>... actions) {
+    List<Function<Transaction, Boolean>> transactionalActions = Arrays.asList(actions);
+    Transaction t = Transaction.builder().stm(this.stm).actions(transactionalActions).build();
+    t.setTimeout(timeout, unit);
+    return this.enqueue(t);
+  }
+  
+  /**
+   * Queues the submitted transaction on the next worker. Once the scheduler has been shut down, the
+   * transaction is ended right away as {@link Outcome#CANCELLED}.
+   * 
+   * @param t
+   *          The submitted transaction.
+   * @return The handle of the transaction.
+   */
+  private TransactionHandle enqueue(Transaction t) {
+    
+    TransactionHandle handle = new TransactionHandle(t);
+    Worker worker = this.workers[Math.floorMod(this.nextWorker.getAndIncrement(), this.workers.length)];
+    
+    synchronized (this) {
+      if (!this.isShutdown) {
+        this.inFlight.add(t);
+        worker.queue.addLast(t);
+        return handle;
+      }
+    }
+    
+    t.abandon();
+    return handle;
+  }
+  
+  /**
+   * @return The number of aborted transactions that were moved to the worker of the transaction
+   *         they conflicted with.
+   */
+  public long getSteals() {
+    return this.steals.get();
+  }
+  
+  /**
+   * Stops all the workers of the scheduler, and waits for them to finish the attempts they are
+   * running. The transactions still waiting in the queues or blocked, and the ones submitted from
+   * now on, end as {@link Outcome#CANCELLED} -- so no handle is left waiting.
+   * 
+   * Note: It must not be called from the actions of a scheduled transaction, the worker running
+   * them can't wait for itself.
+   */
+  public void shutdown() {
+    
+    synchronized (this) {
+      if (this.isShutdown) return;
+      this.isShutdown = true;
+    }
+    
+    for (Worker worker : this.workers) {
+      worker.thread.interrupt();
+    }
+    
+    // the workers are waited for since a failed attempt is re-queued after the shut down
+    //
+    boolean isInterrupted = false;
+    for (Worker worker : this.workers) {
+      while (worker.thread.isAlive()) {
+        try {
+          worker.thread.join();
+        } catch (InterruptedException e) {
+          isInterrupted = true;
+        }
+      }
+    }
+    
+    List<Transaction> queued = new ArrayList<>();
+    for (Worker worker : this.workers) {
+      worker.queue.drainTo(queued);
+    }
+    for (Transaction t : queued) {
+      this.abandon(t);
+    }
+    
+    // the cancellation wakes up the blocked transactions, which are abandoned instead of resumed
+    //
+    for (Transaction t : new ArrayList<>(this.inFlight)) {
+      t.cancel();
+    }
+    
+    if (isInterrupted) Thread.currentThread().interrupt();
+  }
+  
+  /**
+   * Ends the transaction that won't be run since the scheduler has been shut down.
+   * 
+   * @param t
+   *          The queued or woken up transaction.
+   */
+  private void abandon(Transaction t) {
+    this.inFlight.remove(t);
+    t.abandon();
+  }
+  
+  /**
+   * Re-queues the transaction that failed its attempt. If the attempt failed because of a conflict
+   * with a transaction run by another worker, the transaction is moved to the front of that
+   * worker's queue so that it runs right after the winner. Otherwise, it goes to the back of its
+   * current worker's queue.
+   * 
+   * @param t
+   *          The transaction that failed its attempt.
+   * @param current
+   *          The worker that ran the failed attempt.
+   */
+  private void reschedule(Transaction t, Worker current) {
+    
+    Worker winner = t.getConflictingWriter();
+    
+    if (Objects.isNull(winner) || winner == current) {
+      current.queue.addLast(t);
+      return;
+    }
+    
+    logger.info("{} lost a conflict to {}, moving the transaction behind the winner", current.thread.getName(),
+        winner.thread.getName());
+    
+    this.steals.incrementAndGet();
+    winner.queue.addFirst(t);
+  }
+  
+  /**
+   * A worker of the scheduler. It takes the transactions from its queue and attempts them one
+   * after the other.
+   * 
+   * Qualified Name: stm.ConflictScheduler.Worker
+   */
+  final class Worker implements Runnable {
+    
+    /**
+     * The transactions waiting to be run by this worker.
+     */
+    private LinkedBlockingDeque<Transaction> queue;
+    
+    /**
+     * The thread this worker runs on.
+     */
+    private Thread thread;
+    
+    /**
+     * Makes a new worker.
+     * 
+     * @param index
+     *          The index of the worker in the scheduler.
+     */
+    Worker(int index) {
+      this.queue = new LinkedBlockingDeque<>();
+      this.thread = new Thread(this, "stm-worker-" + index);
+      this.thread.setDaemon(true);
+    }
+    
+    /**
+     * Re-queues the blocked transaction after it has been woken up, or ends it if the scheduler has
+     * been shut down in the meantime.
+     * 
+     * @param t
+     *          The woken up transaction.
+     */
+    private void resume(Transaction t) {
+      synchronized (ConflictScheduler.this) {
+        if (!ConflictScheduler.this.isShutdown) {
+          this.queue.addLast(t);
+          return;
+        }
+      }
+      ConflictScheduler.this.abandon(t);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      
+      while (!Thread.currentThread().isInterrupted()) {
+        
+        Transaction t = null;
+        
+        try {
+          t = this.queue.takeFirst();
+        } catch (InterruptedException e) {
+          logger.debug("{} has been shutdown", this.thread.getName());
+          return;
+        }
+        
+        t.begin();
+        
+        t.setWorker(this);
+        t.setResumer(this::resume);
+        
+        switch (t.attempt()) {
+          case DONE:
+            t.end();
+            ConflictScheduler.this.inFlight.remove(t);
+            break;
+          case RETRY:
+            ConflictScheduler.this.reschedule(t, this);
+            break;
+          case BLOCKED:
+            // the transaction is re-queued through resume() once it has been woken up
+            break;
+        }
+      }
+    }
+  }
+}
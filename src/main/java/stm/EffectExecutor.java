@@ -0,0 +1,103 @@
+/**
+ * Project: STMv2 Package: stm File: EffectExecutor.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 6:02:44 PM
+ */
+package stm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the effects registered through {@link Transaction#afterCommit(Runnable)} and
+ * {@link Transaction#afterAbort(Runnable)} on a dedicated thread, once the transactions have ended.
+ * The effects never run while the commit lock is held, and the ending transactions only pay for
+ * handing them over.
+ * 
+ * The thread drains all the effects handed over since its last round and runs them as a batch, in
+ * the order they were handed over. A failing effect, even with an {@link Error}, is logged and
+ * doesn't take the thread down.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.EffectExecutor
+ */
+final class EffectExecutor {
+  
+  private static final Logger logger = LoggerFactory.getLogger(EffectExecutor.class);
+  
+  /**
+   * Handed over by {@link #shutdown()}, the thread stops once it gets to it.
+   */
+  private static final List<Runnable> STOP = Collections.unmodifiableList(new ArrayList<>());
+  
+  /**
+   * The effects of the ended transactions, one list per transaction.
+   */
+  private LinkedBlockingQueue<List<Runnable>> pending;
+  
+  /**
+   * Makes a new effect executor and starts its thread.
+   */
+  EffectExecutor() {
+    this.pending = new LinkedBlockingQueue<>();
+    Thread thread = new Thread(this::work, "stm-effects");
+    thread.setDaemon(true);
+    thread.start();
+  }
+  
+  /**
+   * Hands over the effects of an ended transaction.
+   * 
+   * @param effects
+   *          The effects, in the order they were registered.
+   */
+  void submit(List<Runnable> effects) {
+    this.pending.add(effects);
+  }
+  
+  /**
+   * Stops the thread once it has run the effects handed over till now.
+   */
+  void shutdown() {
+    this.pending.add(STOP);
+  }
+  
+  /**
+   * The work loop of the thread, a failing effect doesn't affect the others.
+   */
+  private void work() {
+    
+    List<List<Runnable>> batch = new ArrayList<>();
+    
+    while (true) {
+      
+      try {
+        batch.add(this.pending.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      
+      this.pending.drainTo(batch);
+      
+      for (List<Runnable> effects : batch) {
+        
+        if (effects == STOP) return;
+        
+        for (Runnable effect : effects) {
+          try {
+            effect.run();
+          } catch (Throwable e) {
+            logger.error("Effect failed", e);
+          }
+        }
+      }
+      
+      batch.clear();
+    }
+  }
+}
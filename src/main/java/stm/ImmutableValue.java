@@ -0,0 +1,29 @@
+/**
+ * Project: STMv2 Package: stm File: ImmutableValue.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 9:14:52 PM
+ */
+package stm;
+
+/**
+ * A value that can't be modified once made. The STM never copies an immutable value: reading a
+ * memory cell holding one hands out the same reference that was written, so reading it allocates
+ * nothing.
+ * 
+ * The transactions can't update an immutable value in place, they write a fresh instance into the
+ * memory cell instead -- for eg, `t.write(tVar, balance.plus(10))`.
+ * 
+ * Qualified Name: stm.ImmutableValue
+ */
+public interface ImmutableValue extends Value {
+  
+  /**
+   * An immutable value is its own copy.
+   * 
+   * @return This value.
+   */
+  @Override
+  default Value makeCopy() {
+    return this;
+  }
+}
@@ -0,0 +1,281 @@
+/**
+ * Project: STMv2 Package: stm File: Memory.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 3:05:48 AM
+ */
+package stm;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The memory of an STM, its registered memory cells. The IDs of the memory cells are handed out in
+ * sequence, so the memory is an array indexed by ID -- split into pages, which are only allocated
+ * when the IDs reach them. Adding and removing a memory cell are O(1) and safe from any thread.
+ * 
+ * The memory only holds the memory cells weakly: a memory cell the application no longer reaches is
+ * reclaimed by the GC, as if it had been deleted, and its entry is expunged by the next addition or
+ * removal. The transactions reach the memory cells they logged, so none is reclaimed under an
+ * in-flight transaction. A page is released once all its IDs have been handed out and all its
+ * memory cells removed or reclaimed, and the directory of the pages drops the released pages at its
+ * head once they are half of it -- so the memory stays flat however many memory cells come and go,
+ * as long as the old ones go too.
+ * 
+ * The memory isn't looked up to check if a memory cell still exists, see
+ * {@link MemoryCell#getOwner()}.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.Memory
+ */
+final class Memory {
+  
+  /**
+   * A page holds 1 << PAGE_SHIFT memory cells.
+   */
+  private static final int PAGE_SHIFT = 12;
+  
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+  
+  /**
+   * Marks the released pages in the directory.
+   */
+  private static final Page RELEASED = new Page();
+  
+  /**
+   * The pages, grown and compacted while holding the memory.
+   */
+  private volatile Directory directory;
+  
+  /**
+   * The references to the memory cells the GC has reclaimed.
+   */
+  private final ReferenceQueue<MemoryCell> reclaimed;
+  
+  Memory() {
+    this.directory = new Directory(0, new Page[16]);
+    this.reclaimed = new ReferenceQueue<>();
+  }
+  
+  /**
+   * Adds the memory cell at its ID. The store is lazy, the memory is only read by the removals and
+   * for debugging.
+   * 
+   * @param memCell
+   *          The memory cell.
+   */
+  void add(MemoryCell memCell) {
+    this.expunge();
+    this.page(memCell.getID(), true).lazySet((int) memCell.getID() & PAGE_MASK, new Ref(memCell, this.reclaimed));
+  }
+  
+  /**
+   * Adds the memory cells at their IDs, see {@link #add(MemoryCell)}. The IDs are consecutive.
+   * 
+   * @param memCells
+   *          The memory cells.
+   */
+  void addAll(MemoryCell[] memCells) {
+    this.expunge();
+    Page page = null;
+    for (MemoryCell memCell : memCells) {
+      int index = (int) memCell.getID() & PAGE_MASK;
+      if (Objects.isNull(page) || index == 0) page = this.page(memCell.getID(), true);
+      page.lazySet(index, new Ref(memCell, this.reclaimed));
+    }
+  }
+  
+  /**
+   * Removes the memory cell.
+   * 
+   * @param memCell
+   *          The memory cell.
+   * @return true if the memory cell was in the memory.
+   */
+  boolean remove(MemoryCell memCell) {
+    
+    this.expunge();
+    
+    Page page = this.page(memCell.getID(), false);
+    if (Objects.isNull(page)) return false;
+    
+    int index = (int) memCell.getID() & PAGE_MASK;
+    Ref ref = page.get(index);
+    if (Objects.isNull(ref) || ref.get() != memCell || !page.compareAndSet(index, ref, null)) return false;
+    
+    // a cleared reference isn't enqueued, so the memory cell isn't expunged again
+    //
+    ref.clear();
+    this.release(memCell.getID(), page);
+    
+    return true;
+  }
+  
+  /**
+   * @return The memory cells in the memory, in the order of their IDs.
+   */
+  List<MemoryCell> cells() {
+    List<MemoryCell> cells = new ArrayList<>();
+    for (Page page : this.directory.pages) {
+      if (Objects.isNull(page) || page == RELEASED) continue;
+      for (int i = 0; i < page.length(); i++) {
+        Ref ref = page.get(i);
+        MemoryCell memCell = Objects.isNull(ref) ? null : ref.get();
+        if (!Objects.isNull(memCell)) cells.add(memCell);
+      }
+    }
+    return cells;
+  }
+  
+  /**
+   * Clears the entries of the memory cells reclaimed by the GC.
+   */
+  private void expunge() {
+    for (Ref ref = (Ref) this.reclaimed.poll(); !Objects.isNull(ref); ref = (Ref) this.reclaimed.poll()) {
+      Page page = this.page(ref.ID, false);
+      int index = (int) ref.ID & PAGE_MASK;
+      if (!Objects.isNull(page) && page.compareAndSet(index, ref, null)) this.release(ref.ID, page);
+    }
+  }
+  
+  /**
+   * @return The number of pages the directory has room for, released or not.
+   */
+  int directorySize() {
+    return this.directory.pages.length;
+  }
+  
+  /**
+   * Counts off the memory cell removed from its page, and releases the page when it was the last.
+   * The released pages at the head of the directory are dropped once they are half of it, so the
+   * directory follows the IDs in use rather than the highest ID handed out.
+   */
+  private void release(long ID, Page page) {
+    
+    if (page.pending.decrementAndGet() != 0) return;
+    
+    synchronized (this) {
+      
+      Directory directory = this.directory;
+      Page[] pages = directory.pages;
+      pages[(int) ((ID >>> PAGE_SHIFT) - directory.base)] = RELEASED;
+      
+      int released = 0;
+      while (released < pages.length && pages[released] == RELEASED) released++;
+      
+      // the head is only made of released pages, its IDs are never added again
+      //
+      if (2 * released >= pages.length) {
+        directory = new Directory(directory.base + released, Arrays.copyOfRange(pages, released, pages.length));
+      }
+      
+      this.directory = directory;
+    }
+  }
+  
+  /**
+   * Finds the page of the ID.
+   * 
+   * @param ID
+   *          The ID of a memory cell.
+   * @param create
+   *          Whether to allocate the page when it doesn't exist yet.
+   * @return The page, null if it doesn't exist and wasn't to be created.
+   */
+  private Page page(long ID, boolean create) {
+    
+    Directory directory = this.directory;
+    long index = (ID >>> PAGE_SHIFT) - directory.base;
+    
+    // below the base, the page was released and dropped
+    //
+    if (index < 0) return null;
+    if (index < directory.pages.length && !Objects.isNull(directory.pages[(int) index])) {
+      return directory.pages[(int) index] == RELEASED ? null : directory.pages[(int) index];
+    }
+    if (!create) return null;
+    
+    synchronized (this) {
+      
+      directory = this.directory;
+      index = (ID >>> PAGE_SHIFT) - directory.base;
+      
+      Page[] pages = directory.pages;
+      if (index >= pages.length) {
+        pages = Arrays.copyOf(pages, (int) Math.max(index + 1, 2L * pages.length));
+        directory = new Directory(directory.base, pages);
+      }
+      if (Objects.isNull(pages[(int) index])) pages[(int) index] = new Page();
+      
+      // publishes the new page
+      //
+      this.directory = directory;
+      
+      return pages[(int) index];
+    }
+  }
+  
+  /**
+   * The directory of the pages, the page of an ID is at `(ID >>> PAGE_SHIFT) - base`. A page is null
+   * till a memory cell is added into it, and {@link Memory#RELEASED} once it is released.
+   * 
+   * Qualified Name: stm.Memory.Directory
+   */
+  private static final class Directory {
+    
+    /**
+     * The page index of the first page of the directory, the pages before it were all released.
+     */
+    private final long base;
+    
+    private final Page[] pages;
+    
+    Directory(long base, Page[] pages) {
+      this.base = base;
+      this.pages = pages;
+    }
+  }
+  
+  /**
+   * The weak reference to a memory cell, it remembers the ID to find the entry once the memory cell
+   * is reclaimed.
+   * 
+   * Qualified Name: stm.Memory.Ref
+   */
+  private static final class Ref extends WeakReference<MemoryCell> {
+    
+    private final long ID;
+    
+    Ref(MemoryCell memCell, ReferenceQueue<MemoryCell> queue) {
+      super(memCell, queue);
+      this.ID = memCell.getID();
+    }
+  }
+  
+  /**
+   * A page of the memory.
+   * 
+   * Qualified Name: stm.Memory.Page
+   */
+  @SuppressWarnings("serial")
+  private static final class Page extends AtomicReferenceArray<Ref> {
+    
+    /**
+     * The IDs of the page whose memory cells haven't been removed or reclaimed yet, the page is
+     * released when none is left. Every ID is added once, so the page is never added into again.
+     */
+    private final AtomicInteger pending = new AtomicInteger(PAGE_SIZE);
+    
+    Page() {
+      super(PAGE_SIZE);
+    }
+  }
+}
@@ -1,14 +1,16 @@
 /**
  * Project: STMv2 Package: stm File: MemoryCell.java
  * 
- * @author sidmishraw Last modified: Dec 17, 2017 2:59:20 PM
+ * @author sidmishraw Last modified: Oct 18, 2026 7:12:31 PM
  */
 
 package stm;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
-import java.util.UUID;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
@@ -17,9 +19,13 @@ import com.google.gson.GsonBuilder;
 /**
  * The concrete implementation of the transactional variable. Internally it is a
  * memory cell, a member of the memory -- held in the STM. Each memory cell has data of type T
- * and an unique ID -- UUID. MemoryCell implements the TVar interface to prevent the consumer from
- * accessing its features directly. Furthermore, it's package scoped so that it is only accessible
- * internally.
+ * and an unique ID -- a sequence number handed out by its STM. MemoryCell implements the TVar
+ * interface to prevent the consumer from accessing its features directly. Furthermore, it's package
+ * scoped so that it is only accessible internally.
+ * 
+ * The STMs hold a lot of memory cells, so a memory cell is kept compact: its ID, a single lock
+ * word and the references. The lock word packs the writer bit, the number of readers and the
+ * version of the memory cell -- incremented by every write -- and is updated through a VarHandle.
  * 
  * @author sidmishraw
  * 
@@ -28,32 +34,111 @@ import com.google.gson.GsonBuilder;
 class MemoryCell implements TVar {
   
   /**
-   * For synchronized access to the memory cell - very granular
+   * Set in the lock word while a writer holds the memory cell.
+   */
+  private static final long WRITER = 1L;
+  
+  /**
+   * Added to the lock word by every reader holding the memory cell.
+   */
+  private static final long READER = 1L << 1;
+  
+  /**
+   * The bits of the lock word counting the readers.
+   */
+  private static final long READERS = ((1L << 20) - 1) << 1;
+  
+  /**
+   * Added to the lock word by every write, the bits above the readers hold the version.
+   */
+  private static final long VERSION = 1L << 21;
+  
+  /**
+   * The number of optimistic reads tried before taking the memory cell for reading.
+   */
+  private static final int OPTIMISTIC_READS = 4;
+  
+  private static final VarHandle LOCK_WORD;
+  
+  static {
+    try {
+      LOCK_WORD = MethodHandles.lookup().findVarHandle(MemoryCell.class, "lockWord", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+  
+  /**
+   * For synchronized access to the memory cell - very granular. Only accessed through
+   * {@link #LOCK_WORD}.
    */
-  private ReentrantReadWriteLock memCellLock;
+  private long lockWord;
   
   /**
-   * The identifier of the memory cell, it is a UUID of type 4
+   * The identifier of the memory cell, unique within its STM. The memory cells of different STMs can
+   * share IDs, so a memory cell's identity -- not its ID -- is what it equals and hashes by.
    */
-  private UUID ID;
+  private long ID;
   
   /**
    * Data contained in the memory cell
    */
   private Value data;
   
+  /**
+   * The scheduler worker that ran the transaction which last wrote into this memory cell. It is
+   * null when the last writer wasn't run by a scheduler worker. Used by the
+   * {@link ConflictScheduler} to serialize the transactions that keep conflicting on this memory cell.
+   */
+  private transient volatile ConflictScheduler.Worker lastWriter;
+  
+  /**
+   * The blocked transactions waiting for this memory cell to be written into. It is only allocated
+   * when a transaction blocks on the memory cell. Guarded by the commit lock.
+   */
+  private transient List<Transaction> waiters;
+  
+  /**
+   * The STM the memory cell is registered with, null once it has been deleted. Checked by the
+   * committing transactions instead of looking the memory cell up in the memory of the STM.
+   */
+  private transient volatile STM owner;
+  
   /**
    * Constructs a new memory cell
    * 
+   * @param ID
+   *          The identifier of the memory cell, handed out by the STM
    * @param data
    *          The data held in the memory cell
    */
-  public MemoryCell(Value data) {
-    this.memCellLock = new ReentrantReadWriteLock();
-    this.ID = UUID.randomUUID();
+  MemoryCell(long ID, Value data) {
+    this.ID = ID;
     this.data = data;
   }
   
+  /**
+   * @return The identifier of the memory cell.
+   */
+  long getID() {
+    return this.ID;
+  }
+  
+  /**
+   * @return The STM the memory cell is registered with, null if it has been deleted.
+   */
+  STM getOwner() {
+    return this.owner;
+  }
+  
+  /**
+   * @param owner
+   *          The STM the memory cell is registered with, null when it is deleted.
+   */
+  void setOwner(STM owner) {
+    this.owner = owner;
+  }
+  
   /**
    * Reads the data in the memory cell.
    * This method is package scoped for security reasons.
@@ -61,13 +146,57 @@ class MemoryCell implements TVar {
    * @return The copy of the data contained in the memory cell.
    */
   Value read() {
-    Value data = null;
+    return copyOf(this.peek());
+  }
+  
+  /**
+   * Copies the value, unless it is immutable.
+   * 
+   * @param value
+   *          The value to copy.
+   * @return The copy of the value, the value itself if it is an {@link ImmutableValue}.
+   */
+  static Value copyOf(Value value) {
+    return value instanceof ImmutableValue ? value : value.makeCopy();
+  }
+  
+  /**
+   * Reads the data in the memory cell without copying it, the caller must not modify it. Used for
+   * validating the quarantined values.
+   * 
+   * The read is optimistic, like a seqlock: the lock word is read before and after reading the
+   * data, and the data is consistent if no writer held the memory cell and the version didn't
+   * change in between. Nothing is written, so the concurrent readers of a popular memory cell don't
+   * contend on its cache line. The memory cell is taken for reading only after the writers have
+   * interleaved a few times.
+   * 
+   * @return The data contained in the memory cell.
+   */
+  Value peek() {
+    
+    for (int i = 0; i < OPTIMISTIC_READS; i++) {
+      
+      long word = (long) LOCK_WORD.getAcquire(this);
+      
+      if ((word & WRITER) == 0) {
+        
+        Value data = this.data;
+        
+        // the data must be read before the lock word is read again
+        //
+        VarHandle.acquireFence();
+        
+        if ((((long) LOCK_WORD.getVolatile(this)) & ~READERS) == (word & ~READERS)) return data;
+      }
+      
+      Thread.onSpinWait();
+    }
+    
     try {
-      this.memCellLock.readLock().lock();
-      data = this.data.makeCopy();
-      return data;
+      this.lockShared();
+      return this.data;
     } finally {
-      this.memCellLock.readLock().unlock();
+      this.unlockShared();
     }
   }
   
@@ -77,55 +206,156 @@ class MemoryCell implements TVar {
    * 
    * @param newData
    *          the new data to be written into the memory cell
+   * @param writer
+   *          the scheduler worker of the transaction writing into the memory cell, null if the
+   *          transaction isn't run by a scheduler worker
    */
-  void write(Value newData) {
+  void write(Value newData, ConflictScheduler.Worker writer) {
     if (Objects.isNull(newData)) {
       return;
     }
     try {
-      this.memCellLock.writeLock().lock();
+      this.lockExclusive();
       this.data = newData;
+      this.lastWriter = writer;
     } finally {
-      this.memCellLock.writeLock().unlock();
+      this.unlockExclusive();
     }
   }
   
-  /*
-   * (non-Javadoc)
-   * @see java.lang.Object#hashCode()
+  /**
+   * Writes the value logged by a transaction into the memory cell. The slot is only used by the
+   * {@link ArenaCell}s, the bits by the {@link PrimitiveCell}s and the {@link ArenaCell}s.
+   * 
+   * @param slot
+   *          the slot logged next to the data
+   * @param newData
+   *          the new data to be written into the memory cell
+   * @param bits
+   *          the raw bits logged next to the data
+   * @param writer
+   *          the scheduler worker of the transaction writing into the memory cell, null if the
+   *          transaction isn't run by a scheduler worker
    */
-  @Override
-  public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((this.ID == null) ? 0 : this.ID.hashCode());
-    return result;
+  void write(int slot, Value newData, long bits, ConflictScheduler.Worker writer) {
+    this.write(newData, writer);
   }
   
-  /*
-   * (non-Javadoc)
-   * @see java.lang.Object#equals(java.lang.Object)
+  /**
+   * Checks if the memory cell still holds the value a transaction logged when it read the memory
+   * cell. The slot and the bits are only used by the {@link PrimitiveCell}s and the
+   * {@link ArenaCell}s.
+   * 
+   * @param slot
+   *          The logged slot.
+   * @param value
+   *          The logged value.
+   * @param bits
+   *          The raw bits logged next to the value.
+   * @return true if the current value is the logged one or equal to it.
    */
-  @Override
-  public boolean equals(Object obj) {
-    if (this == obj) {
-      return true;
-    }
-    if (obj == null) {
-      return false;
+  boolean holds(int slot, Value value, long bits) {
+    Value current = this.peek();
+    return value == current || value.isEqual(current);
+  }
+  
+  /**
+   * Reads the raw bits of a primitive memory cell.
+   * 
+   * @param slot
+   *          The slot, only used by the {@link ArenaCell}s.
+   * @return The raw bits.
+   * @throws UnsupportedOperationException
+   *           When the memory cell doesn't hold a primitive.
+   */
+  long peekBits(int slot) {
+    throw new UnsupportedOperationException("The memory cell doesn't hold a primitive");
+  }
+  
+  /**
+   * Takes the memory cell for reading, waits while a writer holds it.
+   */
+  private void lockShared() {
+    while (true) {
+      long word = (long) LOCK_WORD.getVolatile(this);
+      if ((word & WRITER) == 0 && LOCK_WORD.compareAndSet(this, word, word + READER)) return;
+      Thread.onSpinWait();
     }
-    if (!(obj instanceof MemoryCell)) {
-      return false;
+  }
+  
+  /**
+   * Releases the memory cell taken for reading.
+   */
+  private void unlockShared() {
+    LOCK_WORD.getAndAdd(this, -READER);
+  }
+  
+  /**
+   * Takes the memory cell for writing, waits while a writer or any reader holds it. The writers are
+   * serialized by the commit lock, so they only ever wait for the readers making their copies.
+   */
+  private void lockExclusive() {
+    while (true) {
+      long word = (long) LOCK_WORD.getVolatile(this);
+      if ((word & (WRITER | READERS)) == 0 && LOCK_WORD.compareAndSet(this, word, word | WRITER)) return;
+      Thread.onSpinWait();
     }
-    MemoryCell other = (MemoryCell) obj;
-    if (this.ID == null) {
-      if (other.ID != null) {
-        return false;
-      }
-    } else if (!this.ID.equals(other.ID)) {
-      return false;
+  }
+  
+  /**
+   * Releases the memory cell taken for writing and bumps its version.
+   */
+  private void unlockExclusive() {
+    long word = (long) LOCK_WORD.getVolatile(this);
+    LOCK_WORD.setVolatile(this, (word & ~WRITER) + VERSION);
+  }
+  
+  /**
+   * @return The scheduler worker of the transaction that last wrote into this memory cell.
+   */
+  ConflictScheduler.Worker getLastWriter() {
+    return this.lastWriter;
+  }
+  
+  /**
+   * Adds the blocked transaction to the waiters of this memory cell. The caller holds the commit
+   * lock.
+   * 
+   * @param t
+   *          The blocked transaction.
+   */
+  void addWaiter(Transaction t) {
+    if (Objects.isNull(this.waiters)) this.waiters = new ArrayList<>(2);
+    this.waiters.add(t);
+  }
+  
+  /**
+   * Removes the transaction from the waiters of this memory cell. The caller holds the commit lock.
+   * 
+   * @param t
+   *          The transaction that is no longer waiting.
+   */
+  void removeWaiter(Transaction t) {
+    if (Objects.isNull(this.waiters)) return;
+    this.waiters.remove(t);
+    if (this.waiters.isEmpty()) this.waiters = null;
+  }
+  
+  /**
+   * Takes all the waiters of this memory cell after it has been written into. The waiters stop
+   * waiting on all the other memory cells too. The caller holds the commit lock.
+   * 
+   * @param into
+   *          Collects the waiters, they need to be woken up after the commit lock is released.
+   */
+  void takeWaiters(List<Transaction> into) {
+    List<Transaction> waiters = this.waiters;
+    if (Objects.isNull(waiters)) return;
+    this.waiters = null;
+    for (Transaction waiter : waiters) {
+      waiter.stopWaiting();
+      into.add(waiter);
     }
-    return true;
   }
   
   /*
@@ -141,7 +371,7 @@ class MemoryCell implements TVar {
       public boolean shouldSkipField(FieldAttributes f) {
         
         switch (f.getName()) {
-          case "memCellLock":
+          case "lockWord":
             return true;
           default:
             return false;
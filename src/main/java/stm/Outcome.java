@@ -0,0 +1,35 @@
+/**
+ * Project: STMv2 Package: stm File: Outcome.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 4:02:11 PM
+ */
+package stm;
+
+/**
+ * The outcome of a transaction that is done executing.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.Outcome
+ */
+public enum Outcome {
+  
+  /**
+   * The transaction committed successfully.
+   */
+  COMMITTED,
+  
+  /**
+   * The transaction was invalidated since it operated on a deleted transactional variable.
+   */
+  INVALIDATED,
+  
+  /**
+   * The transaction was cancelled through its handle before it could commit.
+   */
+  CANCELLED,
+  
+  /**
+   * The transaction couldn't commit before its deadline.
+   */
+  TIMED_OUT
+}
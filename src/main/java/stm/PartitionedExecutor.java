@@ -0,0 +1,447 @@
+/**
+ * Project: STMv2 Package: stm File: PartitionedExecutor.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 11:03:18 AM
+ */
+package stm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor for the transactions that declare their footprint -- the transactional variables
+ * they operate on -- upfront. The memory cells are hashed into partitions and each partition has
+ * its own worker.
+ * 
+ * A transaction whose footprint falls into a single partition is run by the worker of that
+ * partition. The worker holds the partition's lock while the transaction runs, so no other
+ * transaction can commit into the memory cells of the partition in the meantime. Hence, the
+ * single partition transactions never conflict and never validate their footprint.
+ * 
+ * A transaction whose footprint spans across partitions falls back to the normal path -- it runs
+ * on its own thread, once admitted by the STM's admission controller if it has one, and validates
+ * during its commit phase.
+ * 
+ * Note: The transactions writing into the memory cells of a partition take the partition's lock
+ * during their commit phase, see {@link #lockPartitions(Collection, Partition)}.
+ * 
+ * The transactions can be cancelled through their handles, and given a deadline with
+ * {@link #submit(long, TimeUnit, Collection, Function...)}. A queued or blocked transaction finds
+ * out that it has to stop on its next attempt.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.PartitionedExecutor
+ */
+public class PartitionedExecutor {
+  
+  private static final Logger logger = LoggerFactory.getLogger(PartitionedExecutor.class);
+  
+  /**
+   * The STM the transactions operate upon.
+   */
+  private STM stm;
+  
+  /**
+   * The partitions of the memory.
+   */
+  private Partition[] partitions;
+  
+  /**
+   * The transactions routed to the partitions and not ended yet, queued, running or blocked.
+   */
+  private Set<Transaction> inFlight;
+  
+  /**
+   * Flag that indicates that the executor has been shut down, guarded by the executor.
+   */
+  private boolean isShutdown;
+  
+  /**
+   * Makes a new partitioned executor for the STM. An STM can only have one partitioned executor.
+   * 
+   * @param stm
+   *          The STM that the transactions operate on.
+   * @param nPartitions
+   *          The number of partitions, each partition has its own worker thread.
+   */
+  public PartitionedExecutor(STM stm, int nPartitions) {
+    if (nPartitions < 1) throw new IllegalArgumentException("The executor needs atleast 1 partition");
+    this.stm = stm;
+    this.partitions = new Partition[nPartitions];
+    this.inFlight = ConcurrentHashMap.newKeySet();
+    for (int i = 0; i < nPartitions; i++) {
+      this.partitions[i] = new Partition(i);
+    }
+    this.stm.attachPartitions(this);
+    for (Partition partition : this.partitions) {
+      partition.thread.start();
+    }
+  }
+  
+  /**
+   * Submits the actions to be performed transactionally. The footprint is the set of all the
+   * transactional variables that the actions operate upon.
+   * 
+   * If the footprint falls into a single partition, the transaction is run by the worker of that
+   * partition, otherwise it falls back to the normal path.
+   * 
+   * @param footprint
+   *          The transactional variables the actions operate on.
+   * @param actions
+   *          The actions to perform transactionally.
+   * @return The handle of the transaction.
+   */
+  @SuppressWarnings("unchecked")
+  public TransactionHandle submit(Collection<TVar> footprint, Function<Transaction, Boolean>... actions) {
+    List<Function<Transaction, Boolean>> transactionalActions = Arrays.asList(actions);
+    Transaction t = Transaction.builder().stm(this.stm).actions(transactionalActions).build();
+    return this.route(footprint, t);
+  }
+  
+  /**
+   * Submits the actions to be performed transactionally, with a deadline. If the transaction
+   * doesn't commit before the deadline, it aborts cleanly with the {@link Outcome#TIMED_OUT}
+   * outcome. The deadline runs from the submission, the time spent waiting in the queue of the
+   * partition counts.
+   * 
+   * @param timeout
+   *          The time from now till the deadline.
+   * @param unit
+   *          The unit of the timeout.
+   * @param footprint
+   *          The transactional variables the actions operate on.
+   * @param actions
+   *          The actions to perform transactionally.
+   * @return The handle of the transaction.
+   */
+  @SuppressWarnings("unchecked")
+  public TransactionHandle submit(long timeout, TimeUnit unit, Collection<TVar> footprint,
+      Function<Transaction, Boolean>... actions) {
+    List<Function<Transaction, Boolean>> transactionalActions = Arrays.asList(actions);
+    Transaction t = Transaction.builder().stm(this.stm).actions(transactionalActions).build();
+    t.setTimeout(timeout, unit);
+    return this.route(footprint, t);
+  }
+  
+  /**
+   * Routes the transaction to the partition owning its footprint, or to the normal path.
+   * 
+   * @param footprint
+   *          The transactional variables the transaction operates on.
+   * @param t
+   *          The transaction.
+   * @return The handle of the transaction.
+   */
+  private TransactionHandle route(Collection<TVar> footprint, Transaction t) {
+    
+    Set<MemoryCell> cells = new HashSet<>();
+    for (TVar tVar : footprint) {
+      cells.add((MemoryCell) tVar);
+    }
+    
+    Partition home = this.partitionOf(cells);
+    TransactionHandle handle = new TransactionHandle(t);
+    
+    if (Objects.isNull(home)) {
+      // cross partition transaction, takes the normal path -- through the STM's admission
+      // controller
+      //
+      this.stm.start(t);
+      return handle;
+    }
+    
+    t.setFootprint(cells);
+    t.setPartition(home);
+    
+    synchronized (this) {
+      if (!this.isShutdown) {
+        this.inFlight.add(t);
+        home.queue.add(t);
+        return handle;
+      }
+    }
+    
+    t.abandon();
+    return handle;
+  }
+  
+  /**
+   * Stops all the partition workers, and waits for them to finish the transactions they are
+   * running. The transactions still waiting in the queues or blocked, and the single partition ones
+   * submitted from now on, end as {@link Outcome#CANCELLED} -- so no handle is left waiting. The
+   * cross partition transactions run on their own threads and are left to end by themselves.
+   * 
+   * Note: It must not be called from the actions of a transaction run by a partition worker, the
+   * worker can't wait for itself.
+   */
+  public void shutdown() {
+    
+    synchronized (this) {
+      if (this.isShutdown) return;
+      this.isShutdown = true;
+    }
+    
+    for (Partition partition : this.partitions) {
+      partition.thread.interrupt();
+    }
+    
+    boolean isInterrupted = false;
+    for (Partition partition : this.partitions) {
+      while (partition.thread.isAlive()) {
+        try {
+          partition.thread.join();
+        } catch (InterruptedException e) {
+          isInterrupted = true;
+        }
+      }
+    }
+    
+    List<Transaction> queued = new ArrayList<>();
+    for (Partition partition : this.partitions) {
+      partition.queue.drainTo(queued);
+    }
+    for (Transaction t : queued) {
+      this.abandon(t);
+    }
+    
+    // the cancellation wakes up the blocked transactions, which are abandoned instead of resumed
+    //
+    for (Transaction t : new ArrayList<>(this.inFlight)) {
+      t.cancel();
+    }
+    
+    if (isInterrupted) Thread.currentThread().interrupt();
+  }
+  
+  /**
+   * Ends the transaction that won't be run since the executor has been shut down.
+   * 
+   * @param t
+   *          The queued or woken up transaction.
+   */
+  private void abandon(Transaction t) {
+    this.inFlight.remove(t);
+    t.abandon();
+  }
+  
+  /**
+   * Finds the partition that owns the memory cell.
+   * 
+   * @param memCell
+   *          The memory cell.
+   * @return The partition owning the memory cell.
+   */
+  private Partition partitionOf(MemoryCell memCell) {
+    return this.partitions[Math.floorMod(memCell.hashCode(), this.partitions.length)];
+  }
+  
+  /**
+   * Finds the only partition that owns all the memory cells.
+   * 
+   * @param cells
+   *          The memory cells.
+   * @return The partition if all the memory cells belong to it, else null.
+   */
+  private Partition partitionOf(Collection<MemoryCell> cells) {
+    Partition home = null;
+    for (MemoryCell memCell : cells) {
+      Partition partition = this.partitionOf(memCell);
+      if (Objects.isNull(home)) {
+        home = partition;
+      } else if (home != partition) {
+        return null;
+      }
+    }
+    return home;
+  }
+  
+  /**
+   * Locks the partitions owning the memory cells, in the ascending order of their indices to
+   * prevent deadlocks. The home partition is skipped since it is already held by the caller.
+   * 
+   * A transaction running on a partition worker already holds its home partition's lock. Hence,
+   * it only tries to take the other partitions' locks, and gives up instead of waiting on them.
+   * 
+   * @param cells
+   *          The memory cells that are going to be written into.
+   * @param home
+   *          The partition whose lock is already held, null when none are held.
+   * @return The partitions that were locked, null if the locks couldn't be taken.
+   */
+  List<Partition> lockPartitions(Collection<MemoryCell> cells, Partition home) {
+    
+    TreeSet<Integer> indices = new TreeSet<>();
+    for (MemoryCell memCell : cells) {
+      Partition partition = this.partitionOf(memCell);
+      if (partition != home) indices.add(partition.index);
+    }
+    
+    List<Partition> locked = new ArrayList<>(indices.size());
+    
+    for (Integer index : indices) {
+      
+      Partition partition = this.partitions[index];
+      
+      if (Objects.isNull(home)) {
+        partition.lock.lock();
+      } else if (!partition.lock.tryLock()) {
+        this.unlockPartitions(locked);
+        return null;
+      }
+      
+      locked.add(partition);
+    }
+    
+    return locked;
+  }
+  
+  /**
+   * Unlocks the partitions.
+   * 
+   * @param locked
+   *          The partitions locked by {@link #lockPartitions(Collection, Partition)}.
+   */
+  void unlockPartitions(List<Partition> locked) {
+    for (Partition partition : locked) {
+      partition.lock.unlock();
+    }
+  }
+  
+  /**
+   * Locks all the partitions in the ascending order of their indices.
+   */
+  void lockAll() {
+    for (Partition partition : this.partitions) {
+      partition.lock.lock();
+    }
+  }
+  
+  /**
+   * Unlocks all the partitions.
+   */
+  void unlockAll() {
+    for (Partition partition : this.partitions) {
+      partition.lock.unlock();
+    }
+  }
+  
+  /**
+   * A partition of the memory. It has its own worker that runs the transactions whose footprint
+   * falls into this partition, one after the other.
+   * 
+   * Qualified Name: stm.PartitionedExecutor.Partition
+   */
+  final class Partition implements Runnable {
+    
+    /**
+     * The index of the partition.
+     */
+    private int index;
+    
+    /**
+     * Held by the worker while it runs a transaction, and by the transactions writing into the
+     * memory cells of this partition during their commit phase.
+     */
+    private ReentrantLock lock;
+    
+    /**
+     * The transactions waiting to be run by this partition's worker.
+     */
+    private LinkedBlockingQueue<Transaction> queue;
+    
+    /**
+     * The thread of the partition's worker.
+     */
+    private Thread thread;
+    
+    /**
+     * Makes a new partition.
+     * 
+     * @param index
+     *          The index of the partition.
+     */
+    Partition(int index) {
+      this.index = index;
+      this.lock = new ReentrantLock();
+      this.queue = new LinkedBlockingQueue<>();
+      this.thread = new Thread(this, "stm-partition-" + index);
+      this.thread.setDaemon(true);
+    }
+    
+    /**
+     * Re-queues the blocked transaction after it has been woken up, or ends it if the executor has
+     * been shut down in the meantime.
+     * 
+     * @param t
+     *          The woken up transaction.
+     */
+    private void resume(Transaction t) {
+      synchronized (PartitionedExecutor.this) {
+        if (!PartitionedExecutor.this.isShutdown) {
+          this.queue.add(t);
+          return;
+        }
+      }
+      PartitionedExecutor.this.abandon(t);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      
+      while (!Thread.currentThread().isInterrupted()) {
+        
+        Transaction t = null;
+        
+        try {
+          t = this.queue.take();
+        } catch (InterruptedException e) {
+          logger.debug("{} has been shutdown", this.thread.getName());
+          return;
+        }
+        
+        t.begin();
+        t.setResumer(this::resume);
+        
+        Transaction.Attempt attempt = Transaction.Attempt.RETRY;
+        
+        while (attempt == Transaction.Attempt.RETRY) {
+          
+          // the lock is released between the attempts so that the transactions waiting to
+          // write into this partition can make progress
+          //
+          try {
+            this.lock.lock();
+            attempt = t.attempt();
+          } finally {
+            this.lock.unlock();
+          }
+        }
+        
+        // a blocked transaction is re-queued once it has been woken up
+        //
+        if (attempt == Transaction.Attempt.DONE) {
+          t.end();
+          PartitionedExecutor.this.inFlight.remove(t);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Project: STMv2 Package: stm File: PrimitiveCell.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 11:52:37 PM
+ */
+package stm;
+
+/**
+ * The memory cell of a primitive transactional variable. The primitive is kept as its raw 64 bits
+ * -- a `long` as is, an `int` widened, a `double` through {@link Double#doubleToRawLongBits(double)}
+ * -- so nothing is boxed.
+ * 
+ * The data of the memory cell is always the shared {@link #BITS} marker. The transactions log the
+ * marker together with the bits, in the parallel bits of their {@link TxLog}s, and the memory cell
+ * validates the logged bits and writes them back instead of the data.
+ * 
+ * A single word is read atomically, so the bits are read without the seqlock of
+ * {@link MemoryCell#peek()}.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.PrimitiveCell
+ */
+abstract class PrimitiveCell extends MemoryCell {
+  
+  /**
+   * The data of every primitive memory cell, stands for the bits logged next to it.
+   */
+  static final Value BITS = new ImmutableValue() {
+    
+    @Override
+    public Boolean isEqual(Value v) {
+      return this == v;
+    }
+    
+    @Override
+    public String toString() {
+      return "BITS";
+    }
+  };
+  
+  /**
+   * The raw bits of the primitive.
+   */
+  private volatile long bits;
+  
+  PrimitiveCell(long ID, long bits) {
+    super(ID, BITS);
+    this.bits = bits;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.MemoryCell#peekBits(int)
+   */
+  @Override
+  long peekBits(int slot) {
+    return this.bits;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.MemoryCell#holds(int, stm.Value, long)
+   */
+  @Override
+  boolean holds(int slot, Value value, long bits) {
+    return this.bits == bits;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.MemoryCell#write(int, stm.Value, long, stm.ConflictScheduler.Worker)
+   */
+  @Override
+  void write(int slot, Value newData, long bits, ConflictScheduler.Worker writer) {
+    this.bits = bits;
+    this.write(BITS, writer);
+  }
+  
+  /**
+   * The memory cell of a {@link TLongVar}.
+   * 
+   * Qualified Name: stm.PrimitiveCell.OfLong
+   */
+  static final class OfLong extends PrimitiveCell implements TLongVar {
+    
+    OfLong(long ID, long value) {
+      super(ID, value);
+    }
+  }
+  
+  /**
+   * The memory cell of a {@link TIntVar}.
+   * 
+   * Qualified Name: stm.PrimitiveCell.OfInt
+   */
+  static final class OfInt extends PrimitiveCell implements TIntVar {
+    
+    OfInt(long ID, int value) {
+      super(ID, value);
+    }
+  }
+  
+  /**
+   * The memory cell of a {@link TDoubleVar}.
+   * 
+   * Qualified Name: stm.PrimitiveCell.OfDouble
+   */
+  static final class OfDouble extends PrimitiveCell implements TDoubleVar {
+    
+    OfDouble(long ID, double value) {
+      super(ID, Double.doubleToRawLongBits(value));
+    }
+  }
+}
@@ -8,16 +8,30 @@ package stm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 /**
  * The shared memory object that behaves like a memory whose addresses/cells can
@@ -31,9 +45,17 @@ public class STM {
   private static final Logger logger = LoggerFactory.getLogger(STM.class);
   
   /**
-   * The memory cells or the Memory vector.
+   * The memory cells or the Memory vector. Registering and deleting a memory cell are O(1) and safe
+   * from any thread, and a memory cell knows if it's still registered -- see
+   * {@link MemoryCell#getOwner()} -- so checking it doesn't look it up. The memory cells are held
+   * weakly, the ones the application drops are reclaimed without being deleted.
    */
-  private List<MemoryCell> memory;
+  private transient Memory memory;
+  
+  /**
+   * Hands out the IDs of the memory cells, in sequence.
+   */
+  private transient AtomicLong nextID;
   
   /**
    * Lock that is used for synchronizing commit phases of transactions. This lock
@@ -45,6 +67,45 @@ public class STM {
    */
   private ReentrantLock commitLock;
   
+  /**
+   * The partitioned executor of the STM, null if the STM doesn't have one.
+   */
+  private transient volatile PartitionedExecutor partitions;
+  
+  /**
+   * The number of aborts after which a transaction is escalated to the irrevocable mode, 0 disables
+   * the escalation.
+   */
+  private volatile int escalationThreshold;
+  
+  /**
+   * The timer used for waking up the blocked transactions when their deadlines pass. It is only
+   * created when a transaction with a deadline is submitted.
+   */
+  private transient ScheduledThreadPoolExecutor timer;
+  
+  /**
+   * The admission controller in front of {@link #perform(Function...)}, null if the number of
+   * transactions in flight isn't limited.
+   */
+  private transient volatile AdmissionController admission;
+  
+  /**
+   * Runs the effects of the ended transactions. It is only created when a transaction registers an
+   * effect, and is guarded by the STM.
+   */
+  private transient EffectExecutor effects;
+  
+  /**
+   * The transaction descriptor of each thread, reused by {@link #atomically(Function)}.
+   * 
+   * Note: A thread holds its descriptor strongly, so an idle descriptor is parked -- it references
+   * neither this STM nor any memory cell -- else every STM ever used from a pooled thread would stay
+   * reachable from it. The parked descriptor itself, its emptied quarantines, stays with the thread
+   * till the thread dies or the thread-local is expunged after this STM has been reclaimed.
+   */
+  private transient ThreadLocal<Transaction> descriptors;
+  
   /**
    * Acquires the commit lock on the STM.
    */
@@ -59,11 +120,173 @@ public class STM {
     this.commitLock.unlock();
   }
   
+  /**
+   * Acquires the STM exclusively -- no other transaction can commit till it is released. The locks
+   * of all the partitions are taken before the commit lock, the same order as the transactions
+   * committing into the partitions.
+   * 
+   * @return The partitioned executor whose partitions were locked, to be handed back to
+   *         {@link #releaseExclusive(PartitionedExecutor)}.
+   */
+  PartitionedExecutor acquireExclusive() {
+    PartitionedExecutor partitions = this.partitions;
+    if (!Objects.isNull(partitions)) partitions.lockAll();
+    this.acquireCommitLock();
+    return partitions;
+  }
+  
+  /**
+   * Releases the STM acquired by {@link #acquireExclusive()}.
+   * 
+   * @param partitions
+   *          The partitioned executor returned by {@link #acquireExclusive()}.
+   */
+  void releaseExclusive(PartitionedExecutor partitions) {
+    this.releaseCommitLock();
+    if (!Objects.isNull(partitions)) partitions.unlockAll();
+  }
+  
+  /**
+   * Attaches the partitioned executor to the STM. The transactions committing into the STM need
+   * to coordinate with the partitions.
+   * 
+   * @param partitions
+   *          The partitioned executor.
+   */
+  synchronized void attachPartitions(PartitionedExecutor partitions) {
+    if (!Objects.isNull(this.partitions)) {
+      throw new IllegalStateException("The STM already has a partitioned executor");
+    }
+    this.partitions = partitions;
+  }
+  
+  /**
+   * @return The partitioned executor of the STM, null if the STM doesn't have one.
+   */
+  PartitionedExecutor getPartitions() {
+    return this.partitions;
+  }
+  
+  /**
+   * @return The number of aborts after which a transaction is escalated to the irrevocable mode, 0
+   *         if the escalation is disabled.
+   */
+  public int getEscalationThreshold() {
+    return this.escalationThreshold;
+  }
+  
+  /**
+   * Sets the number of aborts after which a transaction is escalated to the irrevocable mode. An
+   * irrevocable transaction holds the STM exclusively while it runs, so it commits on its first
+   * attempt. This bounds the number of attempts of a big transaction that keeps losing to the smaller
+   * writers.
+   * 
+   * @param escalationThreshold
+   *          The number of aborts, 0 disables the escalation.
+   */
+  public void setEscalationThreshold(int escalationThreshold) {
+    if (escalationThreshold < 0) throw new IllegalArgumentException("The escalation threshold can't be negative");
+    this.escalationThreshold = escalationThreshold;
+  }
+  
+  /**
+   * Schedules the task on the timer of the STM.
+   * 
+   * @param task
+   *          The task to run.
+   * @param delay
+   *          The delay from now.
+   * @param unit
+   *          The unit of the delay.
+   * @return The future of the scheduled task.
+   */
+  synchronized ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+    if (Objects.isNull(this.timer)) {
+      this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "stm-timer");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.timer.setRemoveOnCancelPolicy(true);
+    }
+    return this.timer.schedule(task, delay, unit);
+  }
+  
+  /**
+   * Hands over the effects of an ended transaction to the effect thread of the STM.
+   * 
+   * @param effects
+   *          The effects to run.
+   */
+  void defer(List<Runnable> effects) {
+    
+    // handed over under the STM so that a concurrent shut down can't strand them
+    //
+    synchronized (this) {
+      if (Objects.isNull(this.effects)) this.effects = new EffectExecutor();
+      this.effects.submit(effects);
+    }
+  }
+  
+  /**
+   * Stops the threads the STM started for itself -- the timer of the deadlines and the thread of
+   * the effects -- once they are done with the work they were handed: the pending deadlines still
+   * fire and the pending effects still run. To be called once the STM is discarded, else the
+   * threads stay around till the JVM exits. If the STM is used again, the threads are started again
+   * as needed.
+   * 
+   * Note: The executors of the STM have shutdowns of their own.
+   */
+  public synchronized void shutdown() {
+    if (!Objects.isNull(this.timer)) {
+      this.timer.shutdown();
+      this.timer = null;
+    }
+    if (!Objects.isNull(this.effects)) {
+      this.effects.shutdown();
+      this.effects = null;
+    }
+  }
+  
+  /**
+   * Puts the admission controller in front of {@link #perform(Function...)}, the transactions
+   * performed by the STM are queued once the limit of the transactions in flight is reached. So are
+   * the cross partition transactions of the {@link PartitionedExecutor}, which run on their own
+   * threads like the performed ones.
+   * 
+   * Note: The transactions run by the workers of the {@link ConflictScheduler} and of the partitions
+   * are exempt, their number in flight is already bounded by the number of workers.
+   * 
+   * @param admission
+   *          The admission controller, null removes the limit.
+   */
+  public void setAdmissionController(AdmissionController admission) {
+    this.admission = admission;
+  }
+  
+  /**
+   * Starts the transaction on its own thread, through the admission controller if there is one.
+   * 
+   * @param t
+   *          The transaction to start.
+   */
+  void start(Transaction t) {
+    AdmissionController admission = this.admission;
+    if (Objects.isNull(admission)) {
+      t.execute();
+      return;
+    }
+    t.setAdmission(admission);
+    admission.admit(t::execute);
+  }
+  
   /**
    * Makes a new STM
    */
   public STM() {
-    this.memory = new ArrayList<>();
+    this.memory = new Memory();
+    this.nextID = new AtomicLong();
+    this.descriptors = ThreadLocal.withInitial(() -> Transaction.builder().build());
     this.commitLock = new ReentrantLock();
   }
   
@@ -76,7 +299,134 @@ public class STM {
    * @return The transactional variable or memory cell holding the data
    */
   public TVar newTVar(Value data) {
-    MemoryCell memCell = new MemoryCell(data);
+    return this.register(new MemoryCell(this.nextID.getAndIncrement(), data));
+  }
+  
+  /**
+   * Makes a new transactional variable for each of the values. The values are collected first, then
+   * the IDs of all the memory cells are taken at once and they are registered together, so the STM
+   * is touched once rather than once per transactional variable.
+   * 
+   * Note: The values are held in a list till they are registered, a stream too large for that is
+   * registered in chunks by calling this for each chunk.
+   * 
+   * @param values
+   *          The data to be put into the transactional variables, a parallel stream is collected in
+   *          its encounter order.
+   * @return The transactional variables, in the order of the values.
+   */
+  public List<TVar> newTVars(Stream<? extends Value> values) {
+    return this.newTVars(values.collect(Collectors.toList()));
+  }
+  
+  /**
+   * Makes a new transactional variable for each of the values, see {@link #newTVars(Stream)}.
+   * 
+   * @param values
+   *          The data to be put into the transactional variables.
+   * @return The transactional variables, in the order of the values.
+   */
+  public List<TVar> newTVars(Iterator<? extends Value> values) {
+    List<Value> data = new ArrayList<>();
+    values.forEachRemaining(data::add);
+    return this.newTVars(data);
+  }
+  
+  /**
+   * Makes a new transactional variable for each of the values, see {@link #newTVars(Stream)}.
+   * 
+   * @param values
+   *          The data to be put into the transactional variables.
+   * @return The transactional variables, in the order of the values.
+   */
+  List<TVar> newTVars(List<? extends Value> values) {
+    
+    MemoryCell[] memCells = new MemoryCell[values.size()];
+    long firstID = this.nextID.getAndAdd(memCells.length);
+    
+    for (int i = 0; i < memCells.length; i++) {
+      memCells[i] = new MemoryCell(firstID + i, values.get(i));
+      memCells[i].setOwner(this);
+    }
+    
+    this.memory.addAll(memCells);
+    
+    return Collections.unmodifiableList(Arrays.asList((TVar[]) memCells));
+  }
+  
+  /**
+   * Makes a new transactional variable holding a raw `long`, read and written by the transactions
+   * without boxing.
+   * 
+   * @param value
+   *          The initial value.
+   * @return The transactional variable.
+   */
+  public TLongVar newTLongVar(long value) {
+    return this.register(new PrimitiveCell.OfLong(this.nextID.getAndIncrement(), value));
+  }
+  
+  /**
+   * Makes a new transactional variable holding a raw `int`, see {@link #newTLongVar(long)}.
+   * 
+   * @param value
+   *          The initial value.
+   * @return The transactional variable.
+   */
+  public TIntVar newTIntVar(int value) {
+    return this.register(new PrimitiveCell.OfInt(this.nextID.getAndIncrement(), value));
+  }
+  
+  /**
+   * Makes a new transactional variable holding a raw `double`, see {@link #newTLongVar(long)}.
+   * 
+   * @param value
+   *          The initial value.
+   * @return The transactional variable.
+   */
+  public TDoubleVar newTDoubleVar(double value) {
+    return this.register(new PrimitiveCell.OfDouble(this.nextID.getAndIncrement(), value));
+  }
+  
+  /**
+   * Makes a new arena of transactional `long` slots, all 0. The arena is a single memory cell
+   * however many slots it has.
+   * 
+   * @param size
+   *          The number of slots.
+   * @return The arena.
+   */
+  public TLongArena newLongArena(int size) {
+    return this.register(new ArenaCell.OnHeap(this.nextID.getAndIncrement(), size));
+  }
+  
+  /**
+   * Makes a new arena of transactional `long` slots, all 0, kept off the heap in direct memory. The
+   * slots are read and written like the slots of the arenas on the heap, but neither the heap nor
+   * the GC pauses grow with the size of the arena -- a slot takes 16 bytes of direct memory.
+   * 
+   * An arena is capped at {@link Integer#MAX_VALUE} slots, about 16 GB of values. A larger dataset
+   * is split over several arenas of a fixed size, the slot `i` living at `i % size` in the arena
+   * `i / size`. A transaction may read and write the slots of any number of arenas, so the
+   * shards commit together like the slots of one arena would.
+   * 
+   * @param size
+   *          The number of slots, upto {@link Integer#MAX_VALUE}.
+   * @return The arena.
+   */
+  public TLongArena newOffHeapLongArena(int size) {
+    return this.register(new ArenaCell.OffHeap(this.nextID.getAndIncrement(), size));
+  }
+  
+  /**
+   * Registers the new memory cell with the STM.
+   * 
+   * @param memCell
+   *          The new memory cell.
+   * @return The memory cell.
+   */
+  private <C extends MemoryCell> C register(C memCell) {
+    memCell.setOwner(this);
     this.memory.add(memCell);
     return memCell;
   }
@@ -89,6 +439,9 @@ public class STM {
    * Basically, these transactions are invalidated since they are trying to
    * operate on memory that doesn't exist anymore.
    * 
+   * Note: A transactional variable that is no longer reachable is reclaimed by itself, it needn't be
+   * deleted.
+   * 
    * @param tVar
    *          The transactional variable to get rid off.
    * 
@@ -96,7 +449,9 @@ public class STM {
    */
   public Boolean deleteTVar(TVar tVar) {
     MemoryCell memCell = (MemoryCell) tVar; // get the concrete memory cell
-    return this.memory.remove(memCell);
+    if (memCell.getOwner() != this || !this.memory.remove(memCell)) return false;
+    memCell.setOwner(null);
+    return true;
   }
   
   /**
@@ -109,7 +464,39 @@ public class STM {
    * @return true if it exists in the memory, else false.
    */
   Boolean exists(TVar tVar) {
-    return this.memory.contains(tVar);
+    return ((MemoryCell) tVar).getOwner() == this;
+  }
+  
+  /**
+   * Performs the action transactionally on the calling thread, which waits till the transaction
+   * ends -- if the action calls {@link Transaction#retry()}, the calling thread blocks.
+   * 
+   * Unlike {@link #perform(Function...)}, no thread or handle is made. The transaction descriptor of
+   * the calling thread is reset and reused, along with its quarantines, so a transaction in the
+   * steady state only allocates the values it reads and writes. A call from inside the action of
+   * another transaction gets a new descriptor, it runs as an independent transaction.
+   * 
+   * @param action
+   *          The action to perform transactionally.
+   * @return The outcome of the transaction.
+   */
+  public Outcome atomically(Function<Transaction, Boolean> action) {
+    
+    Transaction t = this.descriptors.get();
+    
+    if (t.isActive()) {
+      t = Transaction.builder().stm(this).action(action).build();
+      t.run();
+      return t.getOutcome();
+    }
+    
+    try {
+      t.reuse(this, action);
+      t.run();
+      return t.getOutcome();
+    } finally {
+      t.park();
+    }
   }
   
   /**
@@ -117,12 +504,82 @@ public class STM {
    * 
    * @param actions
    *          The actions to perform transactionally.
+   * @return The handle of the transaction.
+   */
+  @SuppressWarnings("unchecked")
+  public TransactionHandle perform(Function<Transaction, Boolean>... actions) {
+    List<Function<Transaction, Boolean>> transactionalActions = Arrays.asList(actions);
+    Transaction t = Transaction.builder().stm(this).actions(transactionalActions).build();
+    TransactionHandle handle = new TransactionHandle(t);
+    this.start(t);
+    return handle;
+  }
+  
+  /**
+   * The STM spins up a transaction with a deadline to perform the actions. If the transaction
+   * doesn't commit before the deadline, it aborts cleanly with the {@link Outcome#TIMED_OUT} outcome.
+   * 
+   * The {@link ConflictScheduler} and the {@link PartitionedExecutor} take the deadlines of their
+   * transactions through their own `submit`s. The batches of the {@link BatchExecutor} can't have
+   * deadlines.
+   * 
+   * @param timeout
+   *          The time from now till the deadline.
+   * @param unit
+   *          The unit of the timeout.
+   * @param actions
+   *          The actions to perform transactionally.
+   * @return The handle of the transaction.
+   */
+  @SuppressWarnings("unchecked")
+  public TransactionHandle perform(long timeout, TimeUnit unit, Function<Transaction, Boolean>... actions) {
+    List<Function<Transaction, Boolean>> transactionalActions = Arrays.asList(actions);
+    Transaction t = Transaction.builder().stm(this).actions(transactionalActions).build();
+    t.setTimeout(timeout, unit);
+    TransactionHandle handle = new TransactionHandle(t);
+    this.start(t);
+    return handle;
+  }
+  
+  /**
+   * The STM spins up an irrevocable transaction to perform the actions. The transaction holds the STM
+   * exclusively while it runs, so it is guaranteed to commit on its first attempt and its actions can
+   * perform irreversible I/O. The other transactions can't commit till it is done, so it should be
+   * used sparingly.
+   * 
+   * Note: If the actions fail or retry, the transaction lets go of the STM and is attempted again
+   * later, irrevocably.
+   * 
+   * @param actions
+   *          The actions to perform transactionally.
+   * @return The handle of the transaction.
    */
   @SuppressWarnings("unchecked")
-  public void perform(Function<Transaction, Boolean>... actions) {
+  public TransactionHandle performIrrevocably(Function<Transaction, Boolean>... actions) {
     List<Function<Transaction, Boolean>> transactionalActions = Arrays.asList(actions);
     Transaction t = Transaction.builder().stm(this).actions(transactionalActions).build();
-    t.execute();
+    t.setIrrevocable(true);
+    TransactionHandle handle = new TransactionHandle(t);
+    this.start(t);
+    return handle;
+  }
+  
+  /**
+   * The STM spins up a transaction to perform the actions. The footprint is the set of all the
+   * transactional variables that the actions operate upon. If the STM has a partitioned executor,
+   * the transaction is routed to it, else the footprint is ignored.
+   * 
+   * @param footprint
+   *          The transactional variables the actions operate on.
+   * @param actions
+   *          The actions to perform transactionally.
+   * @return The handle of the transaction.
+   */
+  @SuppressWarnings("unchecked")
+  public TransactionHandle perform(Collection<TVar> footprint, Function<Transaction, Boolean>... actions) {
+    PartitionedExecutor partitions = this.partitions;
+    if (Objects.isNull(partitions)) return this.perform(actions);
+    return partitions.submit(footprint, actions);
   }
   
   /**
@@ -131,12 +588,12 @@ public class STM {
    */
   public void printState() {
     
-    String stateString = new GsonBuilder().setExclusionStrategies(new ExclusionStrategy() {
+    Gson gson = new GsonBuilder().setExclusionStrategies(new ExclusionStrategy() {
       
       @Override
       public boolean shouldSkipField(FieldAttributes f) {
         if (f.getName().equals("commitLock")) return true;
-        if (f.getName().equals("memCellLock")) return true;
+        if (f.getName().equals("lockWord")) return true;
         return false;
       }
       
@@ -144,7 +601,18 @@ public class STM {
       public boolean shouldSkipClass(Class<?> clazz) {
         return false;
       }
-    }).setPrettyPrinting().create().toJson(this);
+    }).setPrettyPrinting().create();
+    
+    // the memory cells are printed the way they print themselves
+    //
+    JsonArray memory = new JsonArray();
+    JsonParser parser = new JsonParser();
+    for (MemoryCell memCell : this.memory.cells()) memory.add(parser.parse(memCell.toString()));
+    
+    JsonObject state = gson.toJsonTree(this).getAsJsonObject();
+    state.add("memory", memory);
+    
+    String stateString = gson.toJson(state);
     
     logger.debug("HARMLESS :: DEBUGGING STATE :: " + stateString);
     
@@ -0,0 +1,18 @@
+/**
+ * Project: STMv2 Package: stm File: TDoubleVar.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 11:41:40 PM
+ */
+package stm;
+
+/**
+ * The transactional variable holding a raw `double`, read and written through
+ * {@link Transaction#getDouble(TDoubleVar)} and {@link Transaction#setDouble(TDoubleVar, double)} without
+ * boxing. Made by {@link STM#newTDoubleVar(double)}.
+ * 
+ * Note: Like a {@link TLongVar}, it can't be read or written through the boxed accessors.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.TDoubleVar
+ */
+public interface TDoubleVar extends TVar {}
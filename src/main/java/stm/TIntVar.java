@@ -0,0 +1,18 @@
+/**
+ * Project: STMv2 Package: stm File: TIntVar.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 11:41:05 PM
+ */
+package stm;
+
+/**
+ * The transactional variable holding a raw `int`, read and written through
+ * {@link Transaction#getInt(TIntVar)} and {@link Transaction#setInt(TIntVar, int)} without
+ * boxing. Made by {@link STM#newTIntVar(int)}.
+ * 
+ * Note: Like a {@link TLongVar}, it can't be read or written through the boxed accessors.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.TIntVar
+ */
+public interface TIntVar extends TVar {}
@@ -0,0 +1,29 @@
+/**
+ * Project: STMv2 Package: stm File: TLongArena.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 12:21:44 AM
+ */
+package stm;
+
+/**
+ * A fixed number of transactional `long` slots, addressed by index and read and written through
+ * {@link Transaction#getLong(TLongArena, int)} and {@link Transaction#setLong(TLongArena, int, long)}.
+ * Made by {@link STM#newLongArena(int)} or, off the heap, by {@link STM#newOffHeapLongArena(int)}.
+ * 
+ * The slots are kept in parallel arrays or direct memory rather than as memory cells of their own,
+ * so an arena of millions of slots is a handful of objects for the GC.
+ * 
+ * Note: The arena is a {@link TVar} as a whole, so it can be deleted and declared in footprints,
+ * but the boxed accessors of {@link Transaction} reject it.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.TLongArena
+ */
+public interface TLongArena extends TVar {
+  
+  /**
+   * @return The number of slots, which an `int` bounds: beyond 2^31 - 1 slots the values are
+   *         spread over several arenas.
+   */
+  int size();
+}
@@ -0,0 +1,20 @@
+/**
+ * Project: STMv2 Package: stm File: TLongVar.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 11:40:12 PM
+ */
+package stm;
+
+/**
+ * The transactional variable holding a raw `long`, read and written through
+ * {@link Transaction#getLong(TLongVar)} and {@link Transaction#setLong(TLongVar, long)} without
+ * boxing. Made by {@link STM#newTLongVar(long)}.
+ * 
+ * Note: It is still a {@link TVar} -- it can be deleted and declared in footprints -- but
+ * {@link Transaction#read(TVar, Class)}, {@link Transaction#peek(TVar, Class)},
+ * {@link Transaction#modify(TVar, Class)} and {@link Transaction#write(TVar, Value)} reject it.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.TLongVar
+ */
+public interface TLongVar extends TVar {}
@@ -0,0 +1,204 @@
+/**
+ * Project: STMv2 Package: stm File: TVarLoader.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 3:42:19 AM
+ */
+package stm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Loads the initial state of an STM from a file, one value per line. The file is memory-mapped and
+ * split into segments at line boundaries, the segments are parsed in parallel and then each
+ * segment's values are made into transactional variables at once, see
+ * {@link STM#newTVars(java.util.stream.Stream)}.
+ * 
+ * * The lines are decoded as UTF-8, a trailing `\r` is dropped and the empty lines are skipped. The
+ * last line needs no newline.
+ * 
+ * * If a line can't be parsed, the load fails before any transactional variable is made.
+ * 
+ * * Every segment is mapped on its own and kept well under the 2 GB limit of a mapping, so files
+ * larger than a single mapping can be loaded.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.TVarLoader
+ */
+public final class TVarLoader {
+  
+  /**
+   * The most bytes a segment is cut at, it extends to the end of the line it was cut in.
+   */
+  private static final long MAX_SEGMENT = 1L << 29;
+  
+  /**
+   * The bytes read at a time while looking for the end of a line.
+   */
+  private static final int SCAN = 8192;
+  
+  private TVarLoader() {}
+  
+  /**
+   * Loads the file into new transactional variables of the STM, in parallel.
+   * 
+   * @param stm
+   *          The STM.
+   * @param file
+   *          The file, one value per line.
+   * @param parser
+   *          Parses a line into its value, called concurrently.
+   * @return The transactional variables, in the order of the lines.
+   * @throws UncheckedIOException
+   *           When the file can't be read.
+   * @throws IllegalArgumentException
+   *           When the parser returns null for a line, the exceptions of the parser itself are
+   *           thrown as they are.
+   */
+  public static List<TVar> load(STM stm, Path file, Function<String, ? extends Value> parser) {
+    return load(stm, file, parser, 0);
+  }
+  
+  /**
+   * Loads the file into new transactional variables of the STM, in parallel, see
+   * {@link #load(STM, Path, Function)}.
+   * 
+   * @param segmentSize
+   *          The bytes a segment is cut at, 0 to cut the file into a few segments per processor.
+   */
+  static List<TVar> load(STM stm, Path file, Function<String, ? extends Value> parser, long segmentSize) {
+    
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      
+      long size = channel.size();
+      int nSegments = Runtime.getRuntime().availableProcessors() * 4;
+      long target = segmentSize > 0 ? segmentSize : Math.max(1, Math.min(MAX_SEGMENT, (size + nSegments - 1) / nSegments));
+      
+      long[] bounds = segments(channel, target);
+      
+      // all the segments are parsed before any is registered, so a bad line leaves the STM as it was
+      //
+      List<List<Value>> parsed = IntStream.range(0, bounds.length - 1).parallel()
+          .mapToObj(i -> parse(channel, bounds[i], bounds[i + 1], parser)).collect(Collectors.toList());
+      
+      List<List<TVar>> loaded = parsed.parallelStream().map(stm::newTVars).collect(Collectors.toList());
+      
+      List<TVar> tVars = new ArrayList<>(loaded.stream().mapToInt(List::size).sum());
+      for (List<TVar> segment : loaded) tVars.addAll(segment);
+      
+      return Collections.unmodifiableList(tVars);
+    
+    } catch (IOException e) {
+      throw new UncheckedIOException("The file couldn't be loaded", e);
+    }
+  }
+  
+  /**
+   * Splits the file into segments that start at the beginnings of lines.
+   * 
+   * @param channel
+   *          The file.
+   * @param target
+   *          The bytes a segment is cut at, it extends to the end of the line it was cut in.
+   * @return The bounds of the segments, the segment i spans from bounds[i] to bounds[i + 1].
+   */
+  private static long[] segments(FileChannel channel, long target) throws IOException {
+    
+    long size = channel.size();
+    
+    List<Long> bounds = new ArrayList<>();
+    bounds.add(0L);
+    
+    long position = 0;
+    while (position < size) {
+      position = nextLine(channel, Math.min(size, position + target));
+      bounds.add(position);
+    }
+    
+    return bounds.stream().mapToLong(Long::longValue).toArray();
+  }
+  
+  /**
+   * @return The position of the first line starting at or after the position, the size of the file
+   *         if there is none.
+   */
+  private static long nextLine(FileChannel channel, long position) throws IOException {
+    
+    if (position == 0) return 0;
+    
+    ByteBuffer buffer = ByteBuffer.allocate(SCAN);
+    
+    // the line starts right after the previous newline
+    //
+    position = position - 1;
+    
+    while (true) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read <= 0) return channel.size();
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') return position + i + 1;
+      }
+      position = position + read;
+    }
+  }
+  
+  /**
+   * Parses the lines of a segment of the file.
+   * 
+   * @return The values of the lines, in order.
+   */
+  private static List<Value> parse(FileChannel channel, long from, long to, Function<String, ? extends Value> parser) {
+    
+    MappedByteBuffer segment;
+    try {
+      segment = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    } catch (IOException e) {
+      throw new UncheckedIOException("The file couldn't be mapped", e);
+    }
+    
+    List<Value> values = new ArrayList<>();
+    byte[] line = new byte[256];
+    
+    // copies the lines out, the segment itself is scanned by index
+    //
+    ByteBuffer reader = segment.duplicate();
+    
+    int start = 0;
+    int limit = segment.limit();
+    
+    for (int i = 0; i <= limit; i++) {
+      
+      if (i < limit && segment.get(i) != '\n') continue;
+      
+      int end = i;
+      if (end > start && segment.get(end - 1) == '\r') end = end - 1;
+      
+      if (end > start) {
+        if (line.length < end - start) line = new byte[Math.max(end - start, 2 * line.length)];
+        reader.position(start);
+        reader.get(line, 0, end - start);
+        Value value = parser.apply(new String(line, 0, end - start, StandardCharsets.UTF_8));
+        if (Objects.isNull(value)) throw new IllegalArgumentException("The parser returned no value at " + (from + start));
+        values.add(value);
+      }
+      
+      start = i + 1;
+    }
+    
+    return values;
+  }
+}
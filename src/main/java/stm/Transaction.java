@@ -5,13 +5,22 @@
  */
 package stm;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.Singular;
 
 /**
@@ -31,6 +41,12 @@ public final class Transaction implements Runnable {
   
   private static final Logger logger = LoggerFactory.getLogger(Transaction.class);
   
+  /**
+   * The number of times a conflicting nested transaction is run before it is merged into its parent
+   * anyway.
+   */
+  private static final int MAX_NESTED_ATTEMPTS = 3;
+  
   /**
    * The latch used for holding the invoking thread (main-thread) till this
    * transaction is done computing.
@@ -74,7 +90,7 @@ public final class Transaction implements Runnable {
    * 
    * All subsequent reads will take place from the readQuarantine.
    */
-  private Map<MemoryCell, Value> readQuarantine;
+  private TxLog readQuarantine;
   
   /**
    * The set of memory cells that the transaction intends to write to. The
@@ -82,7 +98,7 @@ public final class Transaction implements Runnable {
    * only after all the actions of the transaction have been thoroughly validated during the commit
    * phase.
    */
-  private Map<MemoryCell, Value> writeQuarantine;
+  private TxLog writeQuarantine;
   
   /**
    * The reference to the STM object the transaction operates upon.
@@ -94,6 +110,189 @@ public final class Transaction implements Runnable {
    */
   private List<Function<Transaction, Boolean>> actions;
   
+  /**
+   * The number of times the transaction failed to commit.
+   */
+  private @Getter(value = AccessLevel.PACKAGE) int aborts;
+  
+  /**
+   * Flag that indicates that the transaction is irrevocable -- it is guaranteed to commit on its
+   * current attempt since it holds the STM exclusively while it runs. The actions can check it
+   * before performing irreversible I/O.
+   */
+  private @Getter @Setter(value = AccessLevel.PACKAGE) boolean isIrrevocable;
+  
+  /**
+   * Flag that indicates that the transaction has been cancelled through its handle.
+   */
+  private volatile boolean isCancelled;
+  
+  /**
+   * Flag that indicates that the transaction gave up -- it was cancelled or its deadline passed.
+   */
+  private boolean isStopped;
+  
+  /**
+   * Flag that indicates that the transaction has a deadline.
+   */
+  private boolean hasDeadline;
+  
+  /**
+   * The deadline of the transaction, in terms of {@link System#nanoTime()}.
+   */
+  private long deadline;
+  
+  /**
+   * Wakes up the transaction if it is blocked when its deadline passes.
+   */
+  private ScheduledFuture<?> expiry;
+  
+  /**
+   * The outcome of the transaction, null till it is done.
+   */
+  private volatile @Getter(value = AccessLevel.PACKAGE) Outcome outcome;
+  
+  /**
+   * Counted down once the transaction is done, the handle waits on it.
+   */
+  private @Getter(value = AccessLevel.PACKAGE) CountDownLatch completion;
+  
+  /**
+   * The admission controller that admitted the transaction, null if it wasn't admitted by one.
+   */
+  private @Setter(value = AccessLevel.PACKAGE) AdmissionController admission;
+  
+  /**
+   * The time the transaction began its execution, in terms of {@link System#nanoTime()}.
+   */
+  private long startedAt;
+  
+  /**
+   * The time the transaction spent blocked since it began, in nanoseconds. It isn't counted in the
+   * commit latency reported to the admission controller.
+   */
+  private long blockedFor;
+  
+  /**
+   * The scheduler worker executing this transaction, null when the transaction runs on its own
+   * thread.
+   */
+  private @Getter(value = AccessLevel.PACKAGE) @Setter(value = AccessLevel.PACKAGE) ConflictScheduler.Worker worker;
+  
+  /**
+   * The worker of the transaction that last wrote into the memory cell which failed this
+   * transaction's validation. It is null when the last attempt didn't fail because of a conflict or
+   * when the winning transaction wasn't run by a scheduler worker.
+   */
+  private @Getter(value = AccessLevel.PACKAGE) ConflictScheduler.Worker conflictingWriter;
+  
+  /**
+   * The memory cells the transaction declared upfront to operate on. It is only set when the
+   * transaction runs on the worker of the partition owning all of these memory cells.
+   */
+  private @Setter(value = AccessLevel.PACKAGE) Set<MemoryCell> footprint;
+  
+  /**
+   * The partition whose worker runs this transaction, null when the transaction takes the normal
+   * path. The worker holds the partition's lock while the transaction runs, so the memory cells in
+   * the footprint need no validation.
+   */
+  private @Setter(value = AccessLevel.PACKAGE) PartitionedExecutor.Partition partition;
+  
+  /**
+   * The view of the multi-version memory when the transaction is executed as a part of a batch by
+   * the {@link BatchExecutor}, the transaction reads through it instead of the memory cells. It is
+   * null otherwise.
+   */
+  private @Setter(value = AccessLevel.PACKAGE) BatchExecutor.View view;
+  
+  /**
+   * The parent of a nested transaction, null for a top level transaction.
+   */
+  private Transaction parent;
+  
+  /**
+   * The memory cells a forked nested transaction found in the quarantines of its parents or its own,
+   * null for the other transactions. See {@link #fork(Function...)}.
+   */
+  private Set<MemoryCell> parentReads;
+  
+  /**
+   * Flag that indicates that the transaction has begun its execution.
+   */
+  private boolean hasBegun;
+  
+  /**
+   * Flag that indicates that the actions of the current attempt called {@link #retry()}.
+   */
+  private boolean isRetrying;
+  
+  /**
+   * Flag that indicates that the transaction is blocked -- it is waiting for one of the memory
+   * cells it read to be written into by another transaction.
+   */
+  private AtomicBoolean isBlocked;
+  
+  /**
+   * The memory cells the blocked transaction is waiting on. Guarded by the commit lock.
+   */
+  private List<MemoryCell> waitingOn;
+  
+  /**
+   * Resumes the transaction once it has been woken up, the scheduler workers re-queue it. When
+   * null, the transaction is resumed by its own thread waiting on the {@link #wakeupSignal}.
+   */
+  private @Setter(value = AccessLevel.PACKAGE) Consumer<Transaction> resumer;
+  
+  /**
+   * The thread of a blocked transaction waits on this signal till it is woken up.
+   */
+  private Semaphore wakeupSignal;
+  
+  /**
+   * Collects the transactions to wake up after the commit, reused by every commit.
+   */
+  private List<Transaction> wakeups;
+  
+  /**
+   * The effects to run once the transaction commits, registered by the current attempt. Null till
+   * one is registered.
+   */
+  private List<Runnable> commitEffects;
+  
+  /**
+   * The effects to run if the transaction ends without committing, registered by the current
+   * attempt. Null till one is registered.
+   */
+  private List<Runnable> abortEffects;
+  
+  /**
+   * The abort effects of the attempt that has been rolled back last. They run if that attempt
+   * turns out to be the last one -- the transaction got invalidated or stopped.
+   */
+  private List<Runnable> abandonedEffects;
+  
+  /**
+   * The log of each action of the last execution, null when the transaction has a single action or
+   * is run by someone else's attempt -- nested transactions and the batch executor.
+   */
+  private ActionLog[] actionLogs;
+  
+  /**
+   * The log of the action being executed, null outside of {@link #executeActions()}.
+   */
+  private ActionLog currentLog;
+  
+  /**
+   * The values overwritten in the write quarantine by the actions, for undoing them.
+   */
+  private UndoLog undoLog;
+  
+  /**
+   * The index of the action the next execution starts from, the actions before it are reused.
+   */
+  private int resumeFrom;
+  
   /**
    * Creates a new transaction for the given STM.
    * 
@@ -104,11 +303,70 @@ public final class Transaction implements Runnable {
   Transaction(STM stm, @Singular List<Function<Transaction, Boolean>> actions) {
     this.version = 0;
     this.isComplete = false;
-    this.readQuarantine = new HashMap<>();
-    this.writeQuarantine = new HashMap<>();
+    this.readQuarantine = new TxLog();
+    this.writeQuarantine = new TxLog();
     this.stm = stm;
     this.actions = actions;
     this.shouldAbort = false;
+    this.isBlocked = new AtomicBoolean(false);
+    this.waitingOn = Collections.emptyList();
+    this.wakeupSignal = new Semaphore(0);
+    this.wakeups = new ArrayList<>();
+    this.completion = new CountDownLatch(1);
+  }
+  
+  /**
+   * Resets the transaction so that it can perform the action as if it were new, reusing its
+   * quarantines and signals. Only the descriptors of {@link STM#atomically(Function)} are reused,
+   * they are never handed out through a {@link TransactionHandle}.
+   * 
+   * @param stm
+   *          The STM the action operates upon.
+   * @param action
+   *          The action to perform.
+   */
+  void reuse(STM stm, Function<Transaction, Boolean> action) {
+    this.stm = stm;
+    if (!(this.actions instanceof ArrayList)) this.actions = new ArrayList<>(1);
+    this.actions.clear();
+    this.actions.add(action);
+    this.version = 0;
+    this.isComplete = false;
+    this.shouldAbort = false;
+    this.aborts = 0;
+    this.isIrrevocable = false;
+    this.isCancelled = false;
+    this.isStopped = false;
+    this.outcome = null;
+    this.conflictingWriter = null;
+    this.hasBegun = false;
+    this.actionLogs = null;
+    this.undoLog = null;
+    this.takeEffects(false);
+    this.rollback();
+    this.wakeupSignal.drainPermits();
+  }
+  
+  /**
+   * Lets go of everything the descriptor still references once its transaction is over -- the memory
+   * cells and values in its quarantines, its action and its STM -- so that an idle descriptor doesn't
+   * keep them reachable from its thread. The arrays of the quarantines are kept for the next
+   * {@link #reuse(STM, Function)}.
+   */
+  void park() {
+    this.actions.clear();
+    this.conflictingWriter = null;
+    this.rollback();
+    this.abandonedEffects = null;
+    this.hasBegun = false;
+    this.stm = null;
+  }
+  
+  /**
+   * @return true if the transaction has begun but not ended yet.
+   */
+  boolean isActive() {
+    return this.hasBegun && Objects.isNull(this.outcome);
   }
   
   /*
@@ -118,46 +376,285 @@ public final class Transaction implements Runnable {
   @Override
   public void run() {
     
-    logger.debug("Transaction: " + Thread.currentThread().getName() + " has started execution.");
+    this.begin();
     
-    this.isComplete = false; // the transaction has begun execution
+    Attempt attempt = this.attempt();
     
-    while (!this.isComplete && !this.shouldAbort) {
+    // keep attempting till the transaction either commits or gets invalidated
+    //
+    while (attempt != Attempt.DONE) {
       
-      // 1. execute actions
-      //
-      if (!this.executeActions()) {
-        // execution of actions failed, the transaction needs to rollback and start from
-        // the beginning
+      if (attempt == Attempt.BLOCKED) {
+        // consumes no CPU till another transaction writes into one of the memory cells we read,
+        // the slot of the admission controller is given up meanwhile
         //
-        logger.info(Thread.currentThread().getName() + " failed to execute, hence rolling back");
-        this.rollback();
-        continue;
+        long blockedAt = System.nanoTime();
+        if (!Objects.isNull(this.admission)) this.admission.release();
+        this.wakeupSignal.acquireUninterruptibly();
+        if (!Objects.isNull(this.admission)) this.admission.reacquire();
+        this.blockedFor = this.blockedFor + (System.nanoTime() - blockedAt);
       }
       
-      // 2. validate quarantined values and commit
-      //
-      if (!this.commit()) {
-        // if commit failed, rollback and begin execution from the beginning
-        //
-        logger.info(Thread.currentThread().getName() + " failed to commit, hence rolling back");
-        this.rollback();
-        continue;
+      attempt = this.attempt();
+    }
+    
+    this.end();
+  }
+  
+  /**
+   * Marks the beginning of the transaction's execution.
+   */
+  void begin() {
+    
+    if (this.hasBegun) return;
+    
+    this.hasBegun = true;
+    this.startedAt = System.nanoTime();
+    this.blockedFor = 0;
+    
+    if (this.actions.size() > 1) {
+      this.actionLogs = new ActionLog[this.actions.size()];
+      for (int i = 0; i < this.actionLogs.length; i++) {
+        this.actionLogs[i] = new ActionLog();
       }
-      
-      this.isComplete = true; // the transaction is done executing
+      this.undoLog = new UndoLog();
+    }
+    
+    logger.debug("Transaction: {} has started execution.", Thread.currentThread().getName());
+    
+    this.isComplete = false; // the transaction has begun execution
+  }
+  
+  /**
+   * Makes one attempt at executing and committing the actions of the transaction. If the attempt
+   * fails, the transaction is rolled back so that it can be attempted again from the beginning.
+   * 
+   * When the commit fails because of a conflict, the {@link #conflictingWriter} records the worker
+   * of the transaction that won the conflict. Only the actions from the first one whose reads were
+   * invalidated are executed again, see {@link #rollbackInvalidated()}.
+   * 
+   * When the actions call {@link #retry()}, the transaction blocks till another transaction writes
+   * into one of the memory cells it read. It is then resumed through its {@link #resumer}, or its
+   * own thread is signalled.
+   * 
+   * @return DONE if the transaction either committed, was invalidated or had to stop, RETRY if it needs to be
+   *         attempted again, BLOCKED if it needs to be attempted again once it is woken up.
+   */
+  Attempt attempt() {
+    
+    if (this.isComplete || this.shouldAbort || this.isStopped) return Attempt.DONE;
+    
+    if (this.hasToStop()) return this.stop();
+    
+    if (!this.isIrrevocable) return this.runAttempt();
+    
+    // an irrevocable transaction holds the STM exclusively for its whole attempt, no one else can
+    // commit in the meantime. Hence, its commit can't fail.
+    //
+    PartitionedExecutor partitions = this.stm.acquireExclusive();
+    
+    try {
+      return this.runAttempt();
+    } finally {
+      this.stm.releaseExclusive(partitions);
+    }
+  }
+  
+  /**
+   * Runs one attempt of the transaction, see {@link #attempt()}.
+   * 
+   * @return The result of the attempt.
+   */
+  private Attempt runAttempt() {
+    
+    this.conflictingWriter = null;
+    this.abandonedEffects = null;
+    
+    // 1. execute actions
+    //
+    boolean executed = false;
+    
+    try {
+      executed = this.executeActions();
+    } catch (Retry r) {
+      this.isRetrying = true;
+    } catch (Stop e) {
+      return this.stop();
+    }
+    
+    if (this.isRetrying) {
+      // the actions can't proceed with what they read, block till someone changes it
+      //
+      logger.info("{} retries, hence blocking till its reads change", Thread.currentThread().getName());
+      return this.block();
+    }
+    
+    if (!executed) {
+      // execution of actions failed, the transaction needs to rollback and start from
+      // the beginning
+      //
+      logger.info("{} failed to execute, hence rolling back", Thread.currentThread().getName());
+      this.rollback();
+      return Attempt.RETRY;
+    }
+    
+    // no point in committing if the caller has already given up
+    //
+    if (this.hasToStop()) return this.stop();
+    
+    // 2. validate quarantined values and commit
+    //
+    if (!this.commit()) {
+      // if commit failed, rollback the actions whose reads were invalidated and those after them
+      //
+      logger.info("{} failed to commit, hence rolling back", Thread.currentThread().getName());
+      this.aborts = this.aborts + 1;
+      if (!Objects.isNull(this.admission)) this.admission.recordAbort();
+      this.escalateIfStarving();
+      this.rollbackInvalidated();
+      return this.shouldAbort ? Attempt.DONE : Attempt.RETRY;
+    }
+    
+    this.isComplete = true; // the transaction is done executing
+    
+    return Attempt.DONE;
+  }
+  
+  /**
+   * Sets the deadline of the transaction. If the transaction doesn't commit before its deadline, it
+   * aborts cleanly with the {@link Outcome#TIMED_OUT} outcome.
+   * 
+   * @param timeout
+   *          The time from now till the deadline.
+   * @param unit
+   *          The unit of the timeout.
+   */
+  void setTimeout(long timeout, TimeUnit unit) {
+    this.hasDeadline = true;
+    this.deadline = System.nanoTime() + unit.toNanos(timeout);
+    this.expiry = this.stm.schedule(this::interruptWait, timeout, unit);
+  }
+  
+  /**
+   * Cancels the transaction, see {@link TransactionHandle#cancel()}.
+   * 
+   * @return false if the transaction was already done, else true.
+   */
+  boolean cancel() {
+    if (!Objects.isNull(this.outcome)) return false;
+    this.isCancelled = true;
+    this.interruptWait();
+    return true;
+  }
+  
+  /**
+   * Wakes up the transaction if it is blocked, so that it can find out that it has to stop.
+   */
+  private void interruptWait() {
+    
+    if (!this.isBlocked.get()) return;
+    
+    try {
+      this.stm.acquireCommitLock();
+      if (this.isBlocked.get()) this.stopWaiting();
+    } finally {
+      this.stm.releaseCommitLock();
+    }
+    
+    wakeup(Collections.singletonList(this));
+  }
+  
+  /**
+   * Checks if the transaction has to stop since it has been cancelled or its deadline has passed. A
+   * nested transaction checks its top level transaction.
+   * 
+   * @return true if the transaction has to stop.
+   */
+  private boolean hasToStop() {
+    Transaction top = this;
+    while (!Objects.isNull(top.parent)) {
+      top = top.parent;
     }
+    return top.isCancelled || (top.hasDeadline && System.nanoTime() - top.deadline >= 0);
+  }
+  
+  /**
+   * Stops the transaction, it is rolled back and won't be attempted again.
+   * 
+   * @return DONE
+   */
+  private Attempt stop() {
+    logger.info("{} has to stop, hence rolling back", Thread.currentThread().getName());
+    this.rollback();
+    this.isStopped = true;
+    return Attempt.DONE;
+  }
+  
+  /**
+   * Ends the transaction that won't be attempted anymore since its executor has been shut down. It
+   * is rolled back and ends as {@link Outcome#CANCELLED}, which wakes up the threads awaiting it.
+   * 
+   * Note: The transaction must be out of the executor's hands -- queued, or blocked and
+   * unregistered from the memory cells through {@link #cancel()}.
+   */
+  void abandon() {
+    this.isCancelled = true;
+    this.stop();
+    this.end();
+  }
+  
+  /**
+   * Escalates the transaction to the irrevocable mode once it has aborted as many times as the
+   * escalation threshold of the STM. This bounds the number of attempts of a big transaction that
+   * keeps losing to the smaller writers.
+   * 
+   * Note: The transactions run by the partition workers are never escalated, they already hold
+   * their partition's lock and taking the locks of all the partitions could deadlock.
+   */
+  private void escalateIfStarving() {
+    
+    int threshold = this.stm.getEscalationThreshold();
+    
+    if (threshold <= 0 || this.aborts < threshold) return;
+    if (!Objects.isNull(this.partition) || !Objects.isNull(this.parent)) return;
+    
+    logger.info("{} aborted {} times, escalating to irrevocable", Thread.currentThread().getName(), this.aborts);
+    
+    this.isIrrevocable = true;
+  }
+  
+  /**
+   * Marks the end of the transaction's execution and signals the waiting thread, if any.
+   */
+  void end() {
     
     // this.stm.printState(); // for debugging
     
     if (this.shouldAbort) {
-      logger.info(Thread.currentThread().getName() + " has been invalidated!");
+      logger.info("{} has been invalidated!", Thread.currentThread().getName());
       this.isComplete = true;
+      this.outcome = Outcome.INVALIDATED;
+    } else if (this.isStopped) {
+      this.outcome = this.isCancelled ? Outcome.CANCELLED : Outcome.TIMED_OUT;
+      logger.info("{} gave up, {}", Thread.currentThread().getName(), this.outcome);
     } else {
-      logger.debug("Transaction: " + Thread.currentThread().getName() + " has finished execution.");
+      logger.debug("Transaction: {} has finished execution.", Thread.currentThread().getName());
       this.version = this.version + 1;
+      this.outcome = Outcome.COMMITTED;
     }
     
+    if (!Objects.isNull(this.expiry)) this.expiry.cancel(false);
+    
+    if (!Objects.isNull(this.admission)) {
+      if (this.outcome == Outcome.COMMITTED) this.admission.recordCommit(System.nanoTime() - this.startedAt - this.blockedFor);
+      this.admission.release();
+    }
+    
+    List<Runnable> effects = this.takeEffects(this.outcome == Outcome.COMMITTED);
+    if (!Objects.isNull(effects)) this.stm.defer(effects);
+    
+    this.completion.countDown();
+    
     if (!Objects.isNull(this.latch)) this.latch.countDown(); // signal the calling thread that this is done
   }
   
@@ -189,45 +686,182 @@ public final class Transaction implements Runnable {
    * 
    * Note: The clone or copy is a deep copy of the contents.
    * 
+   * Note: The transaction sees its own writes, and a nested transaction sees the writes of its
+   * parents.
+   * 
    * @param tVar
    *          The transactional variable or memory cell to read contents from.
    * @param classz
    *          The concrete type for the Value.
    * 
    * @return The concrete value.
+   * @throws IllegalArgumentException
+   *           When the transactional variable holds a primitive, see {@link #checkBoxed(TVar)}.
    */
   public <T> T read(TVar tVar, Class<T> classz) {
-    
-    try {
-      
-      // The null check!
-      //
-      if (Objects.isNull(tVar)) return null;
-      
-      Value data = null;
-      
-      // Inspired by S.P Jones' log based approach to the STM's actions,
-      // the read action will read the value from the memory cell for the first time
-      // and then it will `quarantine` that value -- store it in the quarantine map --
-      // and then, the subsequent reads for the transaction will all come from the
-      // quarantined memory cell.
-      //
-      if (Objects.isNull(this.readQuarantine.get((MemoryCell) tVar))) {
-        data = ((MemoryCell) tVar).read();
-        this.readQuarantine.put((MemoryCell) tVar, data);
-      } else {
-        data = this.readQuarantine.get((MemoryCell) tVar);
-      }
-      
-      return classz.cast(data.makeCopy());
-      
-    } catch (Exception e) {
-      
-      logger.error(e.getMessage(), e);
-      
-      return null;
+    return this.access(tVar, classz, Access.READ);
+  }
+  
+  /**
+   * Reads the contents of the transactional variable or memory cell without copying them, for the
+   * actions that only inspect the contents. The contents must not be modified, use
+   * {@link #modify(TVar, Class)} for that.
+   * 
+   * @param tVar
+   *          The transactional variable or memory cell to read contents from.
+   * @param classz
+   *          The concrete type for the Value.
+   * 
+   * @return The concrete value, read-only.
+   * @throws IllegalArgumentException
+   *           When the transactional variable holds a primitive, see {@link #checkBoxed(TVar)}.
+   */
+  public <T> T peek(TVar tVar, Class<T> classz) {
+    return this.access(tVar, classz, Access.PEEK);
+  }
+  
+  /**
+   * Gets the contents of the transactional variable or memory cell for modifying them in place. The
+   * contents are copied into the write quarantine the first time, later calls hand out the same
+   * copy, so there is no need to write it back. The reads that only inspect the contents
+   * through {@link #peek(TVar, Class)} don't pay for the copy.
+   * 
+   * Note: An action gets its own copy even if an earlier action of the transaction modified the
+   * contents, so that the action can be rolled back on its own.
+   * 
+   * @param tVar
+   *          The transactional variable or memory cell to modify.
+   * @param classz
+   *          The concrete type for the Value.
+   * 
+   * @return The concrete value, private to the transaction.
+   * @throws IllegalArgumentException
+   *           When the transactional variable holds a primitive, see {@link #checkBoxed(TVar)}.
+   */
+  public <T> T modify(TVar tVar, Class<T> classz) {
+    return this.access(tVar, classz, Access.MODIFY);
+  }
+  
+  /**
+   * Checks that the transactional variable holds a {@link Value}. The {@link TLongVar}s,
+   * {@link TIntVar}s, {@link TDoubleVar}s and {@link TLongArena}s hold raw bits behind a shared
+   * marker value, they are only read and written through their typed accessors -- a boxed write
+   * would be lost and a boxed read would never validate.
+   * 
+   * @param tVar
+   *          The transactional variable, null passes.
+   * @throws IllegalArgumentException
+   *           When the transactional variable holds a primitive.
+   */
+  private static void checkBoxed(TVar tVar) {
+    if (tVar instanceof PrimitiveCell || tVar instanceof ArenaCell) {
+      throw new IllegalArgumentException("The primitive transactional variables are read and written through their typed accessors, like getLong and setLong");
+    }
+  }
+  
+  /**
+   * Accesses the contents of the transactional variable or memory cell, see {@link Access}.
+   * 
+   * @return The concrete value, null if the access failed.
+   */
+  private <T> T access(TVar tVar, Class<T> classz, Access access) {
+    
+    checkBoxed(tVar);
+    
+    try {
       
+      // The null check!
+      //
+      if (Objects.isNull(tVar)) return null;
+      
+      MemoryCell memCell = (MemoryCell) tVar;
+      
+      if (access == Access.MODIFY) {
+        
+        // the copy made by this action is modified in place
+        //
+        int index = this.writeQuarantine.indexOf(memCell);
+        if (index >= 0 && (Objects.isNull(this.currentLog) || index >= this.currentLog.writes)) {
+          return classz.cast(this.writeQuarantine.valueAt(index));
+        }
+        
+        Value copy = MemoryCell.copyOf(this.quarantined(memCell));
+        this.logWrite(memCell, 0);
+        this.writeQuarantine.put(memCell, copy);
+        return classz.cast(copy);
+      }
+      
+      Value data = this.quarantined(memCell);
+      
+      return classz.cast(access == Access.READ ? MemoryCell.copyOf(data) : data);
+    
+    } catch (BatchExecutor.Dependency | Stop e) {
+      
+      // the batch executor needs to know that the transaction read an estimate, and the
+      // transaction needs to know that it has to stop
+      //
+      throw e;
+    
+    } catch (Exception e) {
+      
+      logger.error(e.getMessage(), e);
+      
+      return null;
+      
+    }
+  }
+  
+  /**
+   * Gets the quarantined value of the memory cell, reading it into the read quarantine the first
+   * time. The memory cell's value isn't copied, the values committed into the memory cells are
+   * never modified -- only the copies handed out to the actions are.
+   * 
+   * @param memCell
+   *          The memory cell.
+   * @return The quarantined value.
+   */
+  private Value quarantined(MemoryCell memCell) {
+    
+    // long running actions find out that they have to stop on their next read
+    //
+    if (this.hasToStop()) throw Stop.SIGNAL;
+    
+    // Inspired by S.P Jones' log based approach to the STM's actions,
+    // the read action will read the value from the memory cell for the first time
+    // and then it will `quarantine` that value -- store it in the quarantine map --
+    // and then, the subsequent reads for the transaction will all come from the
+    // quarantined memory cell.
+    //
+    Value data = this.lookup(memCell);
+    
+    if (!Objects.isNull(data) && !Objects.isNull(this.parentReads)) {
+      // a forked nested transaction remembers what it read through its parents, to find its
+      // conflicts with its siblings
+      //
+      this.parentReads.add(memCell);
     }
+    
+    if (Objects.isNull(data)) {
+      data = Objects.isNull(this.view) ? memCell.peek() : this.view.read(memCell);
+      this.readQuarantine.put(memCell, data);
+    }
+    
+    return data;
+  }
+  
+  /**
+   * Looks up the quarantined value of the memory cell -- the write quarantine first and then the read
+   * quarantine. A nested transaction falls back to the quarantines of its parent.
+   * 
+   * @param memCell
+   *          The memory cell.
+   * @return The quarantined value, null if the memory cell hasn't been quarantined yet.
+   */
+  private Value lookup(MemoryCell memCell) {
+    Value data = this.writeQuarantine.get(memCell);
+    if (Objects.isNull(data)) data = this.readQuarantine.get(memCell);
+    if (Objects.isNull(data) && !Objects.isNull(this.parent)) data = this.parent.lookup(memCell);
+    return data;
   }
   
   /**
@@ -245,9 +879,13 @@ public final class Transaction implements Runnable {
    * 
    * @return The status of the write operation, true means success, false means
    *         failure.
+   * @throws IllegalArgumentException
+   *           When the transactional variable holds a primitive, see {@link #checkBoxed(TVar)}.
    */
   public boolean write(TVar tVar, Value newData) {
     
+    checkBoxed(tVar);
+    
     try {
       
       // Inspired by S.P. Jones' log based approach, the newData is written to the
@@ -257,10 +895,11 @@ public final class Transaction implements Runnable {
       // of the transaction. The transaction writes to the memory cell only after a thorough
       // validation.
       //
+      this.logWrite((MemoryCell) tVar, 0);
       this.writeQuarantine.put((MemoryCell) tVar, newData);
       
       return true;
-      
+    
     } catch (Exception e) {
       
       logger.error(e.getMessage(), e);
@@ -270,29 +909,623 @@ public final class Transaction implements Runnable {
     }
   }
   
+  /**
+   * Reads the `long` held by the transactional variable. The raw value is quarantined like any
+   * other value, without boxing it.
+   * 
+   * @param tVar
+   *          The transactional variable to read.
+   * @return The value.
+   */
+  public long getLong(TLongVar tVar) {
+    return this.quarantinedBits((PrimitiveCell) tVar, 0);
+  }
+  
+  /**
+   * Writes the `long` into the transactional variable's quarantine, without boxing it.
+   * 
+   * @param tVar
+   *          The transactional variable to write into.
+   * @param value
+   *          The new value.
+   */
+  public void setLong(TLongVar tVar, long value) {
+    this.writeBits((PrimitiveCell) tVar, 0, value);
+  }
+  
+  /**
+   * Reads the `int` held by the transactional variable, see {@link #getLong(TLongVar)}.
+   * 
+   * @param tVar
+   *          The transactional variable to read.
+   * @return The value.
+   */
+  public int getInt(TIntVar tVar) {
+    return (int) this.quarantinedBits((PrimitiveCell) tVar, 0);
+  }
+  
+  /**
+   * Writes the `int` into the transactional variable's quarantine, see
+   * {@link #setLong(TLongVar, long)}.
+   * 
+   * @param tVar
+   *          The transactional variable to write into.
+   * @param value
+   *          The new value.
+   */
+  public void setInt(TIntVar tVar, int value) {
+    this.writeBits((PrimitiveCell) tVar, 0, value);
+  }
+  
+  /**
+   * Reads the `double` held by the transactional variable, see {@link #getLong(TLongVar)}.
+   * 
+   * @param tVar
+   *          The transactional variable to read.
+   * @return The value.
+   */
+  public double getDouble(TDoubleVar tVar) {
+    return Double.longBitsToDouble(this.quarantinedBits((PrimitiveCell) tVar, 0));
+  }
+  
+  /**
+   * Writes the `double` into the transactional variable's quarantine, see
+   * {@link #setLong(TLongVar, long)}.
+   * 
+   * @param tVar
+   *          The transactional variable to write into.
+   * @param value
+   *          The new value.
+   */
+  public void setDouble(TDoubleVar tVar, double value) {
+    this.writeBits((PrimitiveCell) tVar, 0, Double.doubleToRawLongBits(value));
+  }
+  
+  /**
+   * Reads the `long` in the slot of the arena. The slot is quarantined on its own, like a
+   * {@link TLongVar}.
+   * 
+   * @param arena
+   *          The arena.
+   * @param index
+   *          The index of the slot.
+   * @return The value.
+   */
+  public long getLong(TLongArena arena, int index) {
+    return this.quarantinedBits((ArenaCell) arena, ((ArenaCell) arena).checkIndex(index));
+  }
+  
+  /**
+   * Writes the `long` into the quarantine of the slot of the arena.
+   * 
+   * @param arena
+   *          The arena.
+   * @param index
+   *          The index of the slot.
+   * @param value
+   *          The new value.
+   */
+  public void setLong(TLongArena arena, int index, long value) {
+    this.writeBits((ArenaCell) arena, ((ArenaCell) arena).checkIndex(index), value);
+  }
+  
+  /**
+   * Gets the quarantined bits of the primitive memory cell, reading them into the read quarantine
+   * the first time -- the primitive counterpart of {@link #quarantined(MemoryCell)}.
+   * 
+   * @param memCell
+   *          The primitive memory cell or the arena.
+   * @param slot
+   *          The slot of the arena, 0 for a primitive memory cell.
+   * @return The quarantined bits.
+   */
+  private long quarantinedBits(MemoryCell memCell, int slot) {
+    
+    if (Objects.isNull(memCell)) throw new NullPointerException("The transactional variable can't be null");
+    
+    if (this.hasToStop()) throw Stop.SIGNAL;
+    
+    for (Transaction t = this; !Objects.isNull(t); t = t.parent) {
+      
+      TxLog log = t.writeQuarantine;
+      int index = log.indexOf(memCell, slot);
+      
+      if (index < 0) {
+        log = t.readQuarantine;
+        index = log.indexOf(memCell, slot);
+      }
+      
+      if (index >= 0) {
+        if (!Objects.isNull(this.parentReads)) this.parentReads.add(memCell);
+        return log.bitsAt(index);
+      }
+    }
+    
+    long bits = Objects.isNull(this.view) ? memCell.peekBits(slot) : this.view.readBits(memCell, slot);
+    this.readQuarantine.put(memCell, slot, PrimitiveCell.BITS, bits);
+    
+    return bits;
+  }
+  
+  /**
+   * Writes the bits of the primitive memory cell into the write quarantine.
+   * 
+   * @param memCell
+   *          The primitive memory cell or the arena.
+   * @param slot
+   *          The slot of the arena, 0 for a primitive memory cell.
+   * @param bits
+   *          The new bits.
+   */
+  private void writeBits(MemoryCell memCell, int slot, long bits) {
+    if (Objects.isNull(memCell)) throw new NullPointerException("The transactional variable can't be null");
+    this.logWrite(memCell, slot);
+    this.writeQuarantine.put(memCell, slot, PrimitiveCell.BITS, bits);
+  }
+  
+  /**
+   * Abandons the current attempt of the transaction because its actions can't proceed with the
+   * values they read -- for eg, the balance is too low to withdraw. The transaction is blocked till
+   * another transaction writes into one of the memory cells it read, and then it is attempted
+   * again. The blocked transaction consumes no CPU.
+   * 
+   * Inspired by S.P. Jones' `retry`. It never returns normally, the return type lets the actions
+   * end with `return t.retry();`.
+   * 
+   * Note: The retry unwinds the actions with an {@link Error}, so a `catch (Exception e)` in the
+   * actions lets it through. The actions mustn't catch {@link Error} or {@link Throwable}, that
+   * would swallow the retry -- and the stop of a cancelled or timed out transaction.
+   * 
+   * @return Never returns.
+   */
+  public boolean retry() {
+    this.isRetrying = true;
+    throw Retry.SIGNAL;
+  }
+  
+  /**
+   * Registers an effect to run once the transaction commits, for eg, a notification or a cache
+   * invalidation. The actions can be re-run any number of times, so they mustn't perform I/O
+   * themselves.
+   * 
+   * The registrations of an attempt are discarded when it's rolled back, so the effect runs exactly
+   * once. The effects run in the order of registration on the effect thread of the STM, after the
+   * commit lock has been released.
+   * 
+   * @param effect
+   *          The effect.
+   */
+  public void afterCommit(Runnable effect) {
+    if (Objects.isNull(effect)) throw new NullPointerException("The effect can't be null");
+    if (Objects.isNull(this.commitEffects)) this.commitEffects = new ArrayList<>();
+    this.commitEffects.add(effect);
+  }
+  
+  /**
+   * Registers an effect to run if the transaction ends without committing -- it got invalidated,
+   * cancelled or timed out. The registrations of an attempt are discarded when it's rolled back and
+   * the transaction is attempted again.
+   * 
+   * @param effect
+   *          The effect.
+   */
+  public void afterAbort(Runnable effect) {
+    if (Objects.isNull(effect)) throw new NullPointerException("The effect can't be null");
+    if (Objects.isNull(this.abortEffects)) this.abortEffects = new ArrayList<>();
+    this.abortEffects.add(effect);
+  }
+  
+  /**
+   * The effects to run now that the transaction has ended, depending on its outcome.
+   * 
+   * @param committed
+   *          true if the transaction committed.
+   * @return The effects, null if there are none.
+   */
+  List<Runnable> takeEffects(boolean committed) {
+    List<Runnable> effects = committed ? this.commitEffects
+        : Objects.isNull(this.abortEffects) ? this.abandonedEffects : this.abortEffects;
+    this.commitEffects = null;
+    this.abortEffects = null;
+    this.abandonedEffects = null;
+    return effects;
+  }
+  
+  /**
+   * Composes two alternatives. The first alternative is run as a nested transaction, if it calls
+   * {@link #retry()}, its writes are discarded and the second alternative is run instead. If the
+   * second alternative retries as well, the whole transaction retries -- it blocks till one of the
+   * memory cells read by either of the alternatives changes.
+   * 
+   * Inspired by S.P. Jones' `orElse`.
+   * 
+   * @param first
+   *          The alternative to try first.
+   * @param second
+   *          The alternative to run if the first one retries.
+   * @return The status of the alternative that ran to completion.
+   */
+  @SuppressWarnings("unchecked")
+  public boolean orElse(Function<Transaction, Boolean> first, Function<Transaction, Boolean> second) {
+    
+    try {
+      return this.nested(first);
+    } catch (Retry r) {
+      // the reads of the first alternative have been kept, the transaction needs to wake up when
+      // they change
+      //
+      this.isRetrying = false;
+    }
+    
+    return this.nested(second);
+  }
+  
+  /**
+   * Runs the actions as a closed nested transaction. The nested transaction has its own read and
+   * write quarantines, and sees the quarantined values of this transaction.
+   * 
+   * On success, its quarantines are merged into this transaction's, and they get validated and
+   * committed along with the rest of this transaction. If one of the memory cells it read has
+   * changed in the meantime, only the nested transaction is rolled back and run again -- the earlier
+   * work of this transaction is left intact. If its actions fail, only the nested transaction is
+   * rolled back, and this transaction gets to decide what to do next.
+   * 
+   * A {@link #retry()} inside the nested transaction retries this transaction as well, unless it is
+   * caught by an {@link #orElse(Function, Function)}.
+   * 
+   * @param actions
+   *          The actions of the nested transaction.
+   * @return true if the nested transaction succeeded and has been merged, false if its actions
+   *         failed.
+   */
+  @SuppressWarnings("unchecked")
+  public boolean nested(Function<Transaction, Boolean>... actions) {
+    
+    Transaction child = this.newNested(Arrays.asList(actions));
+    
+    for (int attempt = 1;; attempt++) {
+      
+      boolean executed = false;
+      
+      try {
+        executed = child.executeActions();
+      } catch (Retry r) {
+        child.isRetrying = true;
+      }
+      
+      if (child.isRetrying) {
+        // keep the reads so that this transaction wakes up when they change
+        //
+        child.mergeReadQuarantine();
+        throw Retry.SIGNAL;
+      }
+      
+      if (!executed) {
+        logger.info("{} failed to execute a nested transaction, rolling it back", Thread.currentThread().getName());
+        child.rollback();
+        return false;
+      }
+      
+      // the validation is only an early check, everything gets validated again when this
+      // transaction commits. Hence, a nested transaction that keeps conflicting is merged after a
+      // few attempts.
+      //
+      if (child.validateNested() || attempt >= MAX_NESTED_ATTEMPTS) {
+        child.mergeIntoParent();
+        return true;
+      }
+      
+      logger.info("{} found a conflict in a nested transaction, re-running it", Thread.currentThread().getName());
+      child.rollback();
+    }
+  }
+  
+  /**
+   * Runs the children as nested transactions in parallel on the fork-join pool, and joins them into
+   * this transaction atomically -- either all of them get merged or none of them do. The children see
+   * the quarantined values of this transaction, but not each other's writes.
+   * 
+   * The children are joined in the order they were given. A child that read a memory cell written
+   * by a sibling before it, or one of whose reads has changed, is run again as a nested transaction
+   * on top of the siblings merged before it. Hence, the result is the same as running the children one
+   * after the other in order.
+   * 
+   * If any child fails, none of them are merged. A {@link #retry()} inside any child retries this
+   * transaction as well.
+   * 
+   * @param children
+   *          The actions of the children, each child is a nested transaction of its own.
+   * @return true if all the children succeeded and have been merged, false if any of them failed.
+   */
+  @SuppressWarnings("unchecked")
+  public boolean fork(Function<Transaction, Boolean>... children) {
+    
+    // the children are merged into an intermediate nested transaction first, so that nothing is
+    // merged into this transaction unless all of them succeed
+    //
+    Transaction merged = this.newNested(Collections.emptyList());
+    
+    List<Transaction> forked = new ArrayList<>(children.length);
+    List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(children.length);
+    
+    for (Function<Transaction, Boolean> action : children) {
+      Transaction child = merged.newNested(Collections.singletonList(action));
+      child.parentReads = new HashSet<>();
+      forked.add(child);
+      tasks.add(ForkJoinTask.adapt(child::executeForked));
+    }
+    
+    if (Objects.isNull(this.view)) {
+      ForkJoinTask.invokeAll(tasks);
+    } else {
+      // the view of the batch isn't thread safe, the children of a batch transaction run in order
+      //
+      tasks.forEach(ForkJoinTask::invoke);
+    }
+    
+    for (Transaction child : forked) {
+      if (child.isRetrying) {
+        child.mergeReadQuarantine();
+        merged.mergeReadQuarantine();
+        throw Retry.SIGNAL;
+      }
+    }
+    
+    for (int i = 0; i < children.length; i++) {
+      
+      Transaction child = forked.get(i);
+      boolean executed = tasks.get(i).join();
+      
+      if (!child.readsAnyOf(merged.writeQuarantine)) {
+        
+        if (!executed) return false;
+        
+        if (child.validateNested()) {
+          child.mergeIntoParent();
+          continue;
+        }
+      }
+      
+      // the child conflicts with a sibling before it, or its reads have changed
+      //
+      logger.info("{} found a conflict in a forked transaction, re-running it", Thread.currentThread().getName());
+      
+      if (!merged.nested(children[i])) return false;
+    }
+    
+    merged.mergeIntoParent();
+    
+    return true;
+  }
+  
+  /**
+   * Makes a new nested transaction of this transaction.
+   * 
+   * @param actions
+   *          The actions of the nested transaction.
+   * @return The nested transaction.
+   */
+  private Transaction newNested(List<Function<Transaction, Boolean>> actions) {
+    Transaction child = Transaction.builder().stm(this.stm).actions(actions).build();
+    child.parent = this;
+    child.view = this.view;
+    child.footprint = this.footprint;
+    child.partition = this.partition;
+    if (!Objects.isNull(this.parentReads)) child.parentReads = new HashSet<>();
+    return child;
+  }
+  
+  /**
+   * Executes the actions of a forked nested transaction.
+   * 
+   * @return The result of the execution, false if the actions retried.
+   */
+  private Boolean executeForked() {
+    try {
+      return this.executeActions();
+    } catch (Retry r) {
+      this.isRetrying = true;
+      return false;
+    }
+  }
+  
+  /**
+   * Checks if the forked nested transaction read any of the memory cells, either directly or
+   * through the quarantines of its parents.
+   * 
+   * @param cells
+   *          The log holding the memory cells.
+   * @return true if any of the memory cells were read.
+   */
+  private boolean readsAnyOf(TxLog cells) {
+    if (cells.isEmpty()) return false;
+    for (int i = 0; i < this.readQuarantine.size(); i++) {
+      if (cells.indexOf(this.readQuarantine.keyAt(i), this.readQuarantine.slotAt(i)) >= 0) return true;
+    }
+    for (MemoryCell memCell : this.parentReads) {
+      if (cells.containsAnySlot(memCell)) return true;
+    }
+    return false;
+  }
+  
+  /**
+   * Merges the quarantines of this nested transaction into its parent's.
+   */
+  private void mergeIntoParent() {
+    this.mergeReadQuarantine();
+    for (int i = 0; i < this.writeQuarantine.size(); i++) {
+      this.parent.logWrite(this.writeQuarantine.keyAt(i), this.writeQuarantine.slotAt(i));
+      this.parent.writeQuarantine.put(this.writeQuarantine.keyAt(i), this.writeQuarantine.slotAt(i), this.writeQuarantine.valueAt(i),
+          this.writeQuarantine.bitsAt(i));
+    }
+    if (!Objects.isNull(this.commitEffects)) {
+      if (Objects.isNull(this.parent.commitEffects)) this.parent.commitEffects = new ArrayList<>();
+      this.parent.commitEffects.addAll(this.commitEffects);
+    }
+    if (!Objects.isNull(this.abortEffects)) {
+      if (Objects.isNull(this.parent.abortEffects)) this.parent.abortEffects = new ArrayList<>();
+      this.parent.abortEffects.addAll(this.abortEffects);
+    }
+  }
+  
+  /**
+   * Merges the read quarantine of this nested transaction into its parent's. The values read by the
+   * parent earlier take precedence.
+   */
+  private void mergeReadQuarantine() {
+    for (int i = 0; i < this.readQuarantine.size(); i++) {
+      this.parent.readQuarantine.putIfAbsent(this.readQuarantine.keyAt(i), this.readQuarantine.slotAt(i), this.readQuarantine.valueAt(i),
+          this.readQuarantine.bitsAt(i));
+    }
+    if (!Objects.isNull(this.parentReads) && !Objects.isNull(this.parent.parentReads)) {
+      this.parent.parentReads.addAll(this.parentReads);
+    }
+  }
+  
+  /**
+   * Validates the values the nested transaction read directly from the memory cells against their
+   * current values. The commit lock isn't taken, the parent validates again during its commit phase.
+   * 
+   * @return true if none of the memory cells read by the nested transaction have changed.
+   */
+  private boolean validateNested() {
+    
+    // the multi-version memory of the batch is validated by the batch executor
+    //
+    if (!Objects.isNull(this.view)) return true;
+    
+    for (int i = 0; i < this.readQuarantine.size(); i++) {
+      
+      MemoryCell memCell = this.readQuarantine.keyAt(i);
+      
+      if (!Objects.isNull(this.partition) && this.footprint.contains(memCell)) continue;
+      
+      if (!this.stm.exists(memCell)) return true; // the parent gets invalidated when it commits
+      
+      if (!memCell.holds(this.readQuarantine.slotAt(i), this.readQuarantine.valueAt(i), this.readQuarantine.bitsAt(i))) return false;
+    }
+    
+    return true;
+  }
+  
   /**
    * Executes all the actions of the transaction in-order. Returns true if all
    * actions executed successfully otherwise, returns false.
    * 
    * @return The result of the execution.
    */
-  private boolean executeActions() {
+  boolean executeActions() {
     
     // logger.info("Executing Actions");
     
-    // generate the stats for all the actions of this transaction.
-    //
-    List<Boolean> stats = this.actions.stream().map(action -> action.apply(this)).collect(Collectors.toList());
+    boolean status = true;
     
-    // filter out failed actions
-    //
-    List<Boolean> res = stats.stream().filter(stat -> !stat).collect(Collectors.toList());
+    try {
+      
+      // the actions before resumeFrom are still valid from the previous execution
+      //
+      for (int i = this.resumeFrom; i < this.actions.size(); i++) {
+        
+        if (!Objects.isNull(this.actionLogs)) {
+          this.currentLog = this.actionLogs[i];
+          this.currentLog.mark(this);
+        }
+        
+        // all the actions are executed even if one of them fails
+        //
+        status = this.actions.get(i).apply(this) && status;
+      }
     
-    if (res.size() > 0) {
-      return false; // atleast one operation has failed
+    } finally {
+      this.currentLog = null;
     }
     
-    return true;
+    return status; // false if atleast one operation has failed
+  }
+  
+  /**
+   * Records the value the memory cell had in the write quarantine before the action being executed
+   * overwrote it. Only the memory cells put by the earlier actions are recorded, the ones put by the
+   * action itself are dropped by truncating the write quarantine.
+   * 
+   * @param memCell
+   *          The memory cell about to be written into the write quarantine.
+   * @param slot
+   *          The slot of the memory cell.
+   */
+  private void logWrite(MemoryCell memCell, int slot) {
+    if (Objects.isNull(this.currentLog)) return;
+    int index = this.writeQuarantine.indexOf(memCell, slot);
+    if (index >= 0 && index < this.currentLog.writes) {
+      this.undoLog.push(memCell, slot, this.writeQuarantine.valueAt(index), this.writeQuarantine.bitsAt(index));
+    }
+  }
+  
+  /**
+   * Rolls back the transaction after a failed commit, only as far as needed. The actions are undone
+   * in reverse, down to the first action that read a memory cell whose value has changed. The
+   * actions after it may depend on its writes, so they are undone too. The next execution resumes
+   * from that action and reuses the quarantines of the actions before it.
+   * 
+   * The quarantines are in the order the memory cells were put, so undoing the actions truncates
+   * them back to their sizes before the first undone action, after restoring the overwritten values.
+   * 
+   * The transaction is rolled back completely when it has no action logs, got invalidated or is
+   * going to be run irrevocably.
+   */
+  private void rollbackInvalidated() {
+    
+    if (Objects.isNull(this.actionLogs) || this.shouldAbort || this.isIrrevocable) {
+      this.rollback();
+      return;
+    }
+    
+    int first = this.actionLogs.length;
+    
+    for (int i = 0; i < this.readQuarantine.size(); i++) {
+      
+      MemoryCell memCell = this.readQuarantine.keyAt(i);
+      
+      if (!Objects.isNull(this.partition) && this.footprint.contains(memCell)) continue;
+      
+      if (!memCell.holds(this.readQuarantine.slotAt(i), this.readQuarantine.valueAt(i), this.readQuarantine.bitsAt(i))) {
+        // the stale read belongs to the last action that started before it was put
+        //
+        for (first = this.actionLogs.length - 1; this.actionLogs[first].reads > i; first--);
+        break;
+      }
+    }
+    
+    if (first < this.actionLogs.length) {
+      
+      ActionLog log = this.actionLogs[first];
+      
+      this.readQuarantine.truncate(log.reads);
+      this.undoLog.undo(this.writeQuarantine, log.undos);
+      this.writeQuarantine.truncate(log.writes);
+      
+      if (!Objects.isNull(this.commitEffects)) this.commitEffects.subList(log.commitEffects, this.commitEffects.size()).clear();
+      if (!Objects.isNull(this.abortEffects)) this.abortEffects.subList(log.abortEffects, this.abortEffects.size()).clear();
+    }
+    
+    logger.debug("{} resumes from action {}", Thread.currentThread().getName(), first);
+    
+    this.resumeFrom = first;
+    this.isComplete = false;
+  }
+  
+  /**
+   * @return The size of the list, 0 if it is null.
+   */
+  private static int sizeOf(List<?> list) {
+    return Objects.isNull(list) ? 0 : list.size();
+  }
+  
+  /**
+   * @return The write quarantine of the transaction.
+   */
+  TxLog getWriteQuarantine() {
+    return this.writeQuarantine;
   }
   
   /**
@@ -300,9 +1533,91 @@ public final class Transaction implements Runnable {
    * transaction can retry from the beginning.
    */
   private void rollback() {
-    this.readQuarantine = new HashMap<>();
-    this.writeQuarantine = new HashMap<>();
+    if (!Objects.isNull(this.abortEffects)) this.abandonedEffects = this.abortEffects;
+    this.commitEffects = null;
+    this.abortEffects = null;
+    this.readQuarantine.clear();
+    this.writeQuarantine.clear();
+    if (!Objects.isNull(this.undoLog)) this.undoLog.undo(null, 0);
+    this.resumeFrom = 0;
     this.isComplete = false;
+    this.isRetrying = false;
+  }
+  
+  /**
+   * Blocks the transaction till another transaction writes into one of the memory cells it read.
+   * The transaction registers itself as a waiter on all of those memory cells under the commit lock,
+   * but only after validating them -- if one of them has already changed, there is no need to block.
+   * 
+   * @return BLOCKED if the transaction has been blocked, RETRY if it needs to be attempted again
+   *         right away and DONE if it has been invalidated.
+   */
+  private Attempt block() {
+    
+    try {
+      
+      this.stm.acquireCommitLock();
+      
+      if (!this.validateReadQuarantined()) {
+        this.rollback();
+        return this.shouldAbort ? Attempt.DONE : Attempt.RETRY;
+      }
+      
+      if (this.readQuarantine.isEmpty()) {
+        logger.warn("{} retries without reading anything, it will never wake up", Thread.currentThread().getName());
+      }
+      
+      // an arena is waited on once, however many of its slots were read
+      //
+      this.waitingOn = new ArrayList<>(new LinkedHashSet<>(this.readQuarantine.keys()));
+      for (MemoryCell memCell : this.waitingOn) {
+        memCell.addWaiter(this);
+      }
+      
+      this.isBlocked.set(true);
+      this.rollback();
+      
+      // the cancellation or the expiry may have missed the transaction blocking
+      //
+      if (this.hasToStop() && this.isBlocked.compareAndSet(true, false)) {
+        this.stopWaiting();
+        return this.stop();
+      }
+      
+      return Attempt.BLOCKED;
+    
+    } finally {
+      this.stm.releaseCommitLock();
+    }
+  }
+  
+  /**
+   * Removes the blocked transaction from the waiters of all the memory cells it is waiting on.
+   * The caller holds the commit lock.
+   */
+  void stopWaiting() {
+    for (MemoryCell memCell : this.waitingOn) {
+      memCell.removeWaiter(this);
+    }
+    this.waitingOn = Collections.emptyList();
+  }
+  
+  /**
+   * Wakes up the blocked transactions. Must be called after releasing the commit lock.
+   * 
+   * @param waiters
+   *          The transactions taken from the waiters of the memory cells.
+   */
+  static void wakeup(List<Transaction> waiters) {
+    for (int i = 0; i < waiters.size(); i++) {
+      Transaction waiter = waiters.get(i);
+      if (!waiter.isBlocked.compareAndSet(true, false)) continue;
+      if (Objects.isNull(waiter.resumer)) {
+        waiter.wakeupSignal.release();
+      } else {
+        waiter.resumer.accept(waiter);
+      }
+    }
   }
   
   /**
@@ -315,25 +1630,42 @@ public final class Transaction implements Runnable {
    */
   private boolean commit() {
     
+    // the writers into the memory cells owned by the partitions wait for the transactions that
+    // are running on those partitions
+    //
+    PartitionedExecutor partitions = this.stm.getPartitions();
+    List<PartitionedExecutor.Partition> lockedPartitions = null;
+    
+    if (!Objects.isNull(partitions)) {
+      lockedPartitions = partitions.lockPartitions(this.writeQuarantine.keys(), this.partition);
+      if (Objects.isNull(lockedPartitions)) return false;
+    }
+    
+    List<Transaction> waiters = this.wakeups;
+    
     try {
       
-      logger.info(Thread.currentThread().getName() + " begins its commit phase");
+      logger.info("{} begins its commit phase", Thread.currentThread().getName());
       
       this.stm.acquireCommitLock(); // for serializability
       
-      logger.info(Thread.currentThread().getName()
-          + " begins validating its read quarantined values in the commit phase");
+      logger.info("{} begins validating its read quarantined values in the commit phase", Thread.currentThread().getName());
       
       Boolean validationStatus = this.validateReadQuarantined();
       
       if (!validationStatus) return false;
       
-      return this.flushWriteQuarantined();
+      return this.flushWriteQuarantined(waiters);
     } finally {
       
       this.stm.releaseCommitLock();
       
-      logger.info(Thread.currentThread().getName() + " ends its commit phase");
+      if (!Objects.isNull(lockedPartitions)) partitions.unlockPartitions(lockedPartitions);
+      
+      wakeup(waiters);
+      waiters.clear();
+      
+      logger.info("{} ends its commit phase", Thread.currentThread().getName());
     }
   }
   
@@ -349,22 +1681,30 @@ public final class Transaction implements Runnable {
    * Incase the transaction doesn't find the memory cell, it will abort since the
    * logic of its actions are no longer valid.
    * 
+   * The memory cells in the footprint of a transaction running on its partition's worker are not
+   * validated, no one else could have committed into them.
+   * 
    * @return true if validated, else false.
    */
   private Boolean validateReadQuarantined() {
     
-    for (Map.Entry<MemoryCell, Value> member : this.readQuarantine.entrySet()) {
+    for (int i = 0; i < this.readQuarantine.size(); i++) {
       
-      if (!this.stm.exists(member.getKey())) {
+      MemoryCell memCell = this.readQuarantine.keyAt(i);
+      
+      if (!this.stm.exists(memCell)) {
         // for protection against deletion
         this.shouldAbort = true;
         return false;
       }
       
-      Value currentValue = member.getKey().read();
-      Value quarantinedValue = member.getValue();
+      if (!Objects.isNull(this.partition) && this.footprint.contains(memCell)) continue;
       
-      if (!quarantinedValue.isEqual(currentValue)) return false;
+      if (!memCell.holds(this.readQuarantine.slotAt(i), this.readQuarantine.valueAt(i), this.readQuarantine.bitsAt(i))) {
+        // remember who won the conflict so that the scheduler can serialize us behind it
+        this.conflictingWriter = memCell.getLastWriter();
+        return false;
+      }
       
     }
     
@@ -373,24 +1713,217 @@ public final class Transaction implements Runnable {
   }
   
   /**
-   * Flushes the write quarantined values into the STM.
+   * Flushes the write quarantined values into the STM. The transactions blocked on the memory cells
+   * written into are collected so that they can be woken up after the commit lock is released.
    * 
+   * @param waiters
+   *          Collects the transactions waiting on the memory cells written into.
    * @return true if successfully flushed the values into the STM, else false.
    */
-  private Boolean flushWriteQuarantined() {
+  private Boolean flushWriteQuarantined(List<Transaction> waiters) {
     
-    for (Map.Entry<MemoryCell, Value> member : this.writeQuarantine.entrySet()) {
+    for (int i = 0; i < this.writeQuarantine.size(); i++) {
+      
+      MemoryCell memCell = this.writeQuarantine.keyAt(i);
       
-      if (!this.stm.exists(member.getKey())) {
+      if (!this.stm.exists(memCell)) {
         // for protection against deletion
         this.shouldAbort = true;
         return false;
       }
       
-      member.getKey().write(member.getValue());
+      memCell.write(this.writeQuarantine.slotAt(i), this.writeQuarantine.valueAt(i), this.writeQuarantine.bitsAt(i), this.worker);
+      memCell.takeWaiters(waiters);
       
     }
     
     return true;
   }
+  
+  /**
+   * The result of an attempt of the transaction.
+   * 
+   * Qualified Name: stm.Transaction.Attempt
+   */
+  enum Attempt {
+    
+    /**
+     * The transaction either committed, was invalidated or had to stop.
+     */
+    DONE,
+    
+    /**
+     * The transaction needs to be attempted again.
+     */
+    RETRY,
+    
+    /**
+     * The transaction needs to be attempted again once it has been woken up.
+     */
+    BLOCKED
+  }
+  
+  /**
+   * What {@link Transaction#access(TVar, Class, Access)} hands out.
+   * 
+   * Qualified Name: stm.Transaction.Access
+   */
+  private enum Access {
+    
+    /**
+     * A copy of the quarantined value.
+     */
+    READ,
+    
+    /**
+     * The quarantined value itself, read-only.
+     */
+    PEEK,
+    
+    /**
+     * The copy in the write quarantine, made on first access.
+     */
+    MODIFY
+  }
+  
+  /**
+   * Where the logs of the transaction stood when an action started during the last execution, so
+   * that the action can be undone without undoing the actions before it.
+   * 
+   * Qualified Name: stm.Transaction.ActionLog
+   */
+  private static final class ActionLog {
+    
+    /**
+     * The size of the read quarantine before the action.
+     */
+    private int reads;
+    
+    /**
+     * The size of the write quarantine before the action.
+     */
+    private int writes;
+    
+    /**
+     * The size of the undo log before the action.
+     */
+    private int undos;
+    
+    /**
+     * The number of commit effects registered before the action.
+     */
+    private int commitEffects;
+    
+    /**
+     * The number of abort effects registered before the action.
+     */
+    private int abortEffects;
+    
+    /**
+     * Marks where the logs of the transaction stand.
+     */
+    void mark(Transaction t) {
+      this.reads = t.readQuarantine.size();
+      this.writes = t.writeQuarantine.size();
+      this.undos = t.undoLog.size;
+      this.commitEffects = sizeOf(t.commitEffects);
+      this.abortEffects = sizeOf(t.abortEffects);
+    }
+  }
+  
+  /**
+   * The stack of the values overwritten in the write quarantine. A memory cell may be pushed many
+   * times, popping restores the oldest value last.
+   * 
+   * Qualified Name: stm.Transaction.UndoLog
+   */
+  private static final class UndoLog {
+    
+    private MemoryCell[] cells = new MemoryCell[8];
+    
+    private int[] slots = new int[8];
+    
+    private Value[] values = new Value[8];
+    
+    private long[] bits = new long[8];
+    
+    private int size;
+    
+    void push(MemoryCell memCell, int slot, Value value, long bits) {
+      if (this.size == this.cells.length) {
+        this.cells = Arrays.copyOf(this.cells, this.size * 2);
+        this.slots = Arrays.copyOf(this.slots, this.size * 2);
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+        this.bits = Arrays.copyOf(this.bits, this.size * 2);
+      }
+      this.cells[this.size] = memCell;
+      this.slots[this.size] = slot;
+      this.values[this.size] = value;
+      this.bits[this.size] = bits;
+      this.size = this.size + 1;
+    }
+    
+    /**
+     * Pops the values down to the given size, restoring them into the write quarantine.
+     * 
+     * @param writeQuarantine
+     *          The write quarantine, null only discards the values.
+     * @param size
+     *          The size to go back to.
+     */
+    void undo(TxLog writeQuarantine, int size) {
+      while (this.size > size) {
+        this.size = this.size - 1;
+        if (!Objects.isNull(writeQuarantine)) writeQuarantine.put(this.cells[this.size], this.slots[this.size], this.values[this.size], this.bits[this.size]);
+        this.cells[this.size] = null;
+        this.values[this.size] = null;
+      }
+    }
+  }
+  
+  /**
+   * Thrown when the transaction has to stop -- it has been cancelled or its deadline has passed -- to
+   * unwind its actions.
+   * 
+   * An {@link Error}, like {@link Retry}, so that the actions' `catch (Exception e)` don't swallow
+   * it.
+   * 
+   * Qualified Name: stm.Transaction.Stop
+   */
+  static final class Stop extends Error {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * The signal carries no information, so it is shared.
+     */
+    static final Stop SIGNAL = new Stop();
+    
+    private Stop() {
+      super(null, null, false, false);
+    }
+  }
+  
+  /**
+   * Thrown by {@link Transaction#retry()} to unwind the actions of the transaction.
+   * 
+   * It is an {@link Error} and not an exception since the actions commonly wrap their work in
+   * `catch (Exception e)` -- a caught signal would let the action go on with values it has just
+   * rejected.
+   * 
+   * Qualified Name: stm.Transaction.Retry
+   */
+  static final class Retry extends Error {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * The signal carries no information, so it is shared.
+     */
+    static final Retry SIGNAL = new Retry();
+    
+    private Retry() {
+      super(null, null, false, false);
+    }
+  }
 }
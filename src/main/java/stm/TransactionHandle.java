@@ -0,0 +1,90 @@
+/**
+ * Project: STMv2 Package: stm File: TransactionHandle.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 4:05:37 PM
+ */
+package stm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The handle of a transaction submitted to the STM. It lets the submitter wait for the transaction
+ * to be done, find its outcome and cancel it.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.TransactionHandle
+ */
+public final class TransactionHandle {
+  
+  /**
+   * The transaction this is a handle of.
+   */
+  private Transaction transaction;
+  
+  /**
+   * Makes a new handle for the transaction.
+   * 
+   * @param transaction
+   *          The transaction.
+   */
+  TransactionHandle(Transaction transaction) {
+    this.transaction = transaction;
+  }
+  
+  /**
+   * Cancels the transaction. The transaction checks for the cancellation between its attempts and
+   * on its reads, and aborts cleanly with the {@link Outcome#CANCELLED} outcome. A blocked
+   * transaction is woken up right away.
+   * 
+   * Note: A transaction that has already begun its commit phase can't be cancelled anymore, it may
+   * still commit.
+   * 
+   * @return false if the transaction was already done, else true.
+   */
+  public boolean cancel() {
+    return this.transaction.cancel();
+  }
+  
+  /**
+   * @return true if the transaction is done executing.
+   */
+  public boolean isDone() {
+    return this.transaction.getOutcome() != null;
+  }
+  
+  /**
+   * @return The outcome of the transaction, null if it isn't done yet.
+   */
+  public Outcome getOutcome() {
+    return this.transaction.getOutcome();
+  }
+  
+  /**
+   * Waits for the transaction to be done.
+   * 
+   * @return The outcome of the transaction.
+   * @throws InterruptedException
+   *           If the waiting thread is interrupted.
+   */
+  public Outcome await() throws InterruptedException {
+    this.transaction.getCompletion().await();
+    return this.transaction.getOutcome();
+  }
+  
+  /**
+   * Waits for the transaction to be done, at most till the timeout. The transaction isn't affected
+   * when the wait times out.
+   * 
+   * @param timeout
+   *          The maximum time to wait.
+   * @param unit
+   *          The unit of the timeout.
+   * @return The outcome of the transaction, null if it wasn't done before the timeout.
+   * @throws InterruptedException
+   *           If the waiting thread is interrupted.
+   */
+  public Outcome await(long timeout, TimeUnit unit) throws InterruptedException {
+    this.transaction.getCompletion().await(timeout, unit);
+    return this.transaction.getOutcome();
+  }
+}
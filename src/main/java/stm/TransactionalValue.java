@@ -0,0 +1,60 @@
+/**
+ * Project: STMv2 Package: stm File: TransactionalValue.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 10:58:21 PM
+ */
+package stm;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link Value} whose {@link Value#makeCopy()} and {@link Value#isEqual(Value)} are
+ * generated at compile time by the {@code stm.processor.TransactionalValueProcessor}, so that they
+ * can't go out of sync with the fields of the value and don't use reflection at runtime.
+ * 
+ * The processor isn't in the STM's jar, it ships in the separate `processor` jar built by the
+ * `processorJar` task. The code using the annotation puts that jar on its `annotationProcessor`
+ * configuration, or on the `-processorpath` of javac.
+ * 
+ * For a value `AccountState` the processor generates the package-private class
+ * `AccountStateValues`, and the value delegates to it:
+ * 
+ * <pre>
+ * &#64;TransactionalValue
+ * public class AccountState implements Value {
+ * 
+ *   int balance;
+ * 
+ *   public Value makeCopy() {
+ *     return AccountStateValues.copy(this);
+ *   }
+ * 
+ *   public Boolean isEqual(Value v) {
+ *     return AccountStateValues.isEqual(this, v);
+ *   }
+ * }
+ * </pre>
+ * 
+ * * The copy is deep: nested {@link Value}s are copied with their own `makeCopy`, arrays are
+ * copied element by element, and the primitives, the strings, the boxed primitives, the enums and
+ * the {@link ImmutableValue}s are shared.
+ * 
+ * * The equality compares the primitive fields first and the arrays last, and returns at the first
+ * difference.
+ * 
+ * * The fields, including the inherited ones, can't be private or final, the generated class
+ * assigns them directly. Transient fields are neither copied nor compared. A field of any other
+ * type is a compile error, it should be made a {@link Value} or an {@link ImmutableValue}.
+ * 
+ * * The value needs a no-arg constructor, and can't be abstract or generic.
+ * 
+ * Qualified Name: stm.TransactionalValue
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface TransactionalValue {}
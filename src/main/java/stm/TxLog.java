@@ -0,0 +1,417 @@
+/**
+ * Project: STMv2 Package: stm File: TxLog.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 8:03:17 PM
+ */
+package stm;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The read or write quarantine of a transaction -- a map from the memory cells to their
+ * quarantined values, purpose built so that a transaction doesn't allocate while it reads and
+ * writes.
+ * 
+ * * The memory cells are compared by identity and hashed by their IDs.
+ * 
+ * * The entries are kept in the order they were put, in parallel arrays. Small logs are searched
+ * linearly, an open-addressed index with linear probing is only built once the log outgrows
+ * {@link #LINEAR_LIMIT} entries.
+ * 
+ * * A 64 bit Bloom filter answers most of the lookups of memory cells that aren't in the log without
+ * searching it, the read-after-write lookups of the write quarantine mostly miss.
+ * 
+ * * The log is cleared in place, and truncated back to an earlier size when the actions that put
+ * the later entries are rolled back.
+ * 
+ * * The values of the {@link PrimitiveCell}s are their raw bits, kept in a third parallel array
+ * next to the shared {@link PrimitiveCell#BITS} marker, so logging a primitive boxes nothing.
+ * 
+ * * An entry is keyed by the memory cell and a slot. The slot is the index into an
+ * {@link ArenaCell}, whose slots are logged separately, and 0 for the other memory cells.
+ * 
+ * Entries can't be removed otherwise, and the values can't be null.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.TxLog
+ */
+final class TxLog {
+  
+  /**
+   * The logs up to this size are searched linearly.
+   */
+  private static final int LINEAR_LIMIT = 8;
+  
+  /**
+   * The initial capacity of the entry arrays.
+   */
+  private static final int INITIAL_CAPACITY = 8;
+  
+  /**
+   * The memory cells, in the order they were put.
+   */
+  private MemoryCell[] keys;
+  
+  /**
+   * The slots of the memory cells, parallel to the {@link #keys}.
+   */
+  private int[] slots;
+  
+  /**
+   * The quarantined values, parallel to the {@link #keys}.
+   */
+  private Value[] values;
+  
+  /**
+   * The raw bits of the primitive values, parallel to the {@link #keys}. 0 for the other values.
+   */
+  private long[] bits;
+  
+  /**
+   * The number of entries.
+   */
+  private int size;
+  
+  /**
+   * The open-addressed index, each bucket holds the position of an entry plus 1, 0 when it is
+   * empty. Null while the log is searched linearly.
+   */
+  private int[] table;
+  
+  /**
+   * The Bloom filter of the entries in the log, one bit per entry.
+   */
+  private long bloom;
+  
+  /**
+   * The view of the memory cells, made on first use.
+   */
+  private List<MemoryCell> keyView;
+  
+  /**
+   * Makes an empty log.
+   */
+  TxLog() {
+    this.keys = new MemoryCell[INITIAL_CAPACITY];
+    this.slots = new int[INITIAL_CAPACITY];
+    this.values = new Value[INITIAL_CAPACITY];
+    this.bits = new long[INITIAL_CAPACITY];
+  }
+  
+  /**
+   * @return The number of entries.
+   */
+  int size() {
+    return this.size;
+  }
+  
+  /**
+   * @return true if the log has no entries.
+   */
+  boolean isEmpty() {
+    return this.size == 0;
+  }
+  
+  /**
+   * @param index
+   *          The position of the entry, in the order the entries were put.
+   * @return The memory cell of the entry.
+   */
+  MemoryCell keyAt(int index) {
+    return this.keys[index];
+  }
+  
+  /**
+   * @param index
+   *          The position of the entry, in the order the entries were put.
+   * @return The slot of the entry, 0 unless the memory cell is an {@link ArenaCell}.
+   */
+  int slotAt(int index) {
+    return this.slots[index];
+  }
+  
+  /**
+   * @param index
+   *          The position of the entry, in the order the entries were put.
+   * @return The quarantined value of the entry.
+   */
+  Value valueAt(int index) {
+    return this.values[index];
+  }
+  
+  /**
+   * @param index
+   *          The position of the entry, in the order the entries were put.
+   * @return The raw bits of the entry, 0 unless the memory cell is a {@link PrimitiveCell} or an
+   *         {@link ArenaCell}.
+   */
+  long bitsAt(int index) {
+    return this.bits[index];
+  }
+  
+  /**
+   * @return The read-only view of the memory cells in the log, in the order they were put. An
+   *         arena appears once for every slot logged.
+   */
+  List<MemoryCell> keys() {
+    if (Objects.isNull(this.keyView)) {
+      this.keyView = new AbstractList<MemoryCell>() {
+        
+        @Override
+        public MemoryCell get(int index) {
+          if (index >= TxLog.this.size) throw new IndexOutOfBoundsException();
+          return TxLog.this.keys[index];
+        }
+        
+        @Override
+        public int size() {
+          return TxLog.this.size;
+        }
+      };
+    }
+    return this.keyView;
+  }
+  
+  /**
+   * @param memCell
+   *          The memory cell.
+   * @return The quarantined value of the memory cell, null if it isn't in the log.
+   */
+  Value get(MemoryCell memCell) {
+    int index = this.indexOf(memCell, 0);
+    return index < 0 ? null : this.values[index];
+  }
+  
+  /**
+   * @param memCell
+   *          The memory cell.
+   * @return true if the memory cell is in the log.
+   */
+  boolean containsKey(MemoryCell memCell) {
+    return this.indexOf(memCell, 0) >= 0;
+  }
+  
+  /**
+   * @param memCell
+   *          The memory cell.
+   * @return true if any slot of the memory cell is in the log. Searches the log linearly.
+   */
+  boolean containsAnySlot(MemoryCell memCell) {
+    for (int i = 0; i < this.size; i++) {
+      if (this.keys[i] == memCell) return true;
+    }
+    return false;
+  }
+  
+  /**
+   * @param memCell
+   *          The memory cell.
+   * @return The position of the memory cell's entry, -1 if it isn't in the log.
+   */
+  int indexOf(MemoryCell memCell) {
+    return this.indexOf(memCell, 0);
+  }
+  
+  /**
+   * @param memCell
+   *          The memory cell.
+   * @param slot
+   *          The slot of the memory cell.
+   * @return The position of the entry, -1 if it isn't in the log.
+   */
+  int indexOf(MemoryCell memCell, int slot) {
+    
+    long mix = mix(memCell, slot);
+    
+    if ((this.bloom & bit(mix)) == 0) return -1;
+    
+    if (Objects.isNull(this.table)) {
+      for (int i = 0; i < this.size; i++) {
+        if (this.keys[i] == memCell && this.slots[i] == slot) return i;
+      }
+      return -1;
+    }
+    
+    int mask = this.table.length - 1;
+    for (int bucket = hash(mix, mask);; bucket = (bucket + 1) & mask) {
+      int entry = this.table[bucket];
+      if (entry == 0) return -1;
+      if (this.keys[entry - 1] == memCell && this.slots[entry - 1] == slot) return entry - 1;
+    }
+  }
+  
+  /**
+   * Puts the value of the memory cell, replacing its earlier value if any.
+   * 
+   * @param memCell
+   *          The memory cell.
+   * @param value
+   *          The quarantined value, not null.
+   * @return The earlier value, null if the memory cell wasn't in the log.
+   */
+  Value put(MemoryCell memCell, Value value) {
+    return this.put(memCell, 0, value, 0L);
+  }
+  
+  /**
+   * Puts the value of the slot of the memory cell together with its raw bits, replacing its earlier
+   * value if any.
+   * 
+   * @param memCell
+   *          The memory cell.
+   * @param slot
+   *          The slot of the memory cell.
+   * @param value
+   *          The quarantined value, not null.
+   * @param bits
+   *          The raw bits of a primitive value.
+   * @return The earlier value, null if the entry wasn't in the log.
+   */
+  Value put(MemoryCell memCell, int slot, Value value, long bits) {
+    int index = this.indexOf(memCell, slot);
+    if (index >= 0) {
+      Value previous = this.values[index];
+      this.values[index] = value;
+      this.bits[index] = bits;
+      return previous;
+    }
+    this.append(memCell, slot, value, bits);
+    return null;
+  }
+  
+  /**
+   * Puts the value of the slot of the memory cell unless it is already in the log.
+   * 
+   * @param memCell
+   *          The memory cell.
+   * @param slot
+   *          The slot of the memory cell.
+   * @param value
+   *          The quarantined value, not null.
+   * @param bits
+   *          The raw bits of a primitive value.
+   * @return The value already in the log, null if the value has been put.
+   */
+  Value putIfAbsent(MemoryCell memCell, int slot, Value value, long bits) {
+    int index = this.indexOf(memCell, slot);
+    if (index >= 0) return this.values[index];
+    this.append(memCell, slot, value, bits);
+    return null;
+  }
+  
+  /**
+   * Drops the entries put after the log had the given size. The entries are dropped latest first,
+   * so clearing their buckets never breaks the probe sequences of the remaining entries.
+   * 
+   * @param size
+   *          The size to go back to.
+   */
+  void truncate(int size) {
+    
+    if (size >= this.size) return;
+    
+    if (!Objects.isNull(this.table)) {
+      int mask = this.table.length - 1;
+      for (int i = this.size - 1; i >= size; i--) {
+        int bucket = hash(mix(this.keys[i], this.slots[i]), mask);
+        while (this.table[bucket] != i + 1) {
+          bucket = (bucket + 1) & mask;
+        }
+        this.table[bucket] = 0;
+      }
+    }
+    
+    Arrays.fill(this.keys, size, this.size, null);
+    Arrays.fill(this.values, size, this.size, null);
+    this.size = size;
+    
+    this.bloom = 0;
+    for (int i = 0; i < this.size; i++) {
+      this.bloom |= bit(mix(this.keys[i], this.slots[i]));
+    }
+  }
+  
+  /**
+   * Drops all the entries, keeping the arrays for reuse.
+   */
+  void clear() {
+    Arrays.fill(this.keys, 0, this.size, null);
+    Arrays.fill(this.values, 0, this.size, null);
+    if (!Objects.isNull(this.table)) Arrays.fill(this.table, 0);
+    this.size = 0;
+    this.bloom = 0;
+  }
+  
+  /**
+   * Appends a new entry.
+   */
+  private void append(MemoryCell memCell, int slot, Value value, long bits) {
+    
+    if (this.size == this.keys.length) {
+      this.keys = Arrays.copyOf(this.keys, this.size * 2);
+      this.slots = Arrays.copyOf(this.slots, this.size * 2);
+      this.values = Arrays.copyOf(this.values, this.size * 2);
+      this.bits = Arrays.copyOf(this.bits, this.size * 2);
+    }
+    
+    this.keys[this.size] = memCell;
+    this.slots[this.size] = slot;
+    this.values[this.size] = value;
+    this.bits[this.size] = bits;
+    this.size = this.size + 1;
+    this.bloom |= bit(mix(memCell, slot));
+    
+    if (!Objects.isNull(this.table) && this.size * 2 <= this.table.length) {
+      this.index(this.size - 1);
+    } else if (this.size > LINEAR_LIMIT) {
+      this.rebuildIndex();
+    }
+  }
+  
+  /**
+   * Rebuilds the index with room for twice the entries, keeping it at most half full.
+   */
+  private void rebuildIndex() {
+    this.table = new int[Integer.highestOneBit(this.size * 4 - 1) << 1];
+    for (int i = 0; i < this.size; i++) {
+      this.index(i);
+    }
+  }
+  
+  /**
+   * Puts the entry into the index.
+   */
+  private void index(int index) {
+    int mask = this.table.length - 1;
+    int bucket = hash(mix(this.keys[index], this.slots[index]), mask);
+    while (this.table[bucket] != 0) {
+      bucket = (bucket + 1) & mask;
+    }
+    this.table[bucket] = index + 1;
+  }
+  
+  /**
+   * Fibonacci hashing of the memory cell's ID and the slot, the sequential IDs and slots spread
+   * over the high bits.
+   */
+  private static long mix(MemoryCell memCell, int slot) {
+    return memCell.getID() * 0x9E3779B97F4A7C15L + slot * 0xC2B2AE3D27D4EB4FL;
+  }
+  
+  /**
+   * The bucket of the entry in the index.
+   */
+  private static int hash(long mix, int mask) {
+    return (int) (mix >>> 40) & mask;
+  }
+  
+  /**
+   * The bit of the entry in the Bloom filter.
+   */
+  private static long bit(long mix) {
+    return 1L << (mix >>> 58);
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * Project: STMv2 Package: stm.persistent File: Elements.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 2:06:13 PM
+ */
+package stm.persistent;
+
+import java.util.Objects;
+
+import stm.Value;
+
+/**
+ * Compares the elements of the persistent collections when comparing the collections.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.persistent.Elements
+ */
+final class Elements {
+  
+  private Elements() {}
+  
+  /**
+   * Compares two elements, the {@link Value}s by their {@link Value#isEqual(Value)} -- they
+   * needn't override `equals` -- and the rest by their `equals`.
+   * 
+   * @param element
+   *          An element, can be null.
+   * @param other
+   *          The other element, can be null.
+   * @return true if the elements are equal.
+   */
+  static boolean isEqual(Object element, Object other) {
+    if (element == other) return true;
+    if (element instanceof Value && other instanceof Value) return ((Value) element).isEqual((Value) other);
+    return Objects.equals(element, other);
+  }
+}
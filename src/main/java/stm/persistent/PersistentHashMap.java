@@ -0,0 +1,412 @@
+/**
+ * Project: STMv2 Package: stm.persistent File: PersistentHashMap.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 10:11:40 PM
+ */
+package stm.persistent;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import stm.ImmutableValue;
+import stm.Value;
+
+/**
+ * An immutable hash map that shares its structure with the maps it was derived from, so that it can
+ * be held in a memory cell without ever being copied. It is a hash array mapped trie (HAMT), after
+ * Bagwell.
+ * 
+ * * Every level of the trie consumes 5 bits of the key's hash. A node only has slots for the
+ * children it has, a bitmap tells which of the 32 possible children they are.
+ * 
+ * * {@link #get(Object)}, {@link #put(Object, Object)} and {@link #remove(Object)} are O(log32 n).
+ * An update copies only the nodes on the path to the key, the rest of the trie is shared.
+ * 
+ * * {@link #makeCopy()} is O(1), it returns the map itself.
+ * 
+ * The keys can't be null. The keys and the values should be immutable themselves, the map only
+ * protects its own structure.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.persistent.PersistentHashMap
+ */
+public final class PersistentHashMap<K, V> implements ImmutableValue {
+  
+  private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(0, null);
+  
+  /**
+   * The number of entries.
+   */
+  private final int size;
+  
+  /**
+   * The root of the trie, null when the map is empty.
+   */
+  private final Node root;
+  
+  private PersistentHashMap(int size, Node root) {
+    this.size = size;
+    this.root = root;
+  }
+  
+  /**
+   * @return The empty map.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentHashMap<K, V> empty() {
+    return (PersistentHashMap<K, V>) EMPTY;
+  }
+  
+  /**
+   * @return The number of entries.
+   */
+  public int size() {
+    return this.size;
+  }
+  
+  /**
+   * @return true if the map has no entries.
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+  
+  /**
+   * @param key
+   *          The key.
+   * @return The value of the key, null if the map doesn't have the key.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    if (Objects.isNull(this.root) || Objects.isNull(key)) return null;
+    Object value = this.root.find(0, hash(key), key);
+    return value == Node.NOT_FOUND ? null : (V) value;
+  }
+  
+  /**
+   * @param key
+   *          The key.
+   * @return true if the map has the key.
+   */
+  public boolean containsKey(Object key) {
+    if (Objects.isNull(this.root) || Objects.isNull(key)) return false;
+    return this.root.find(0, hash(key), key) != Node.NOT_FOUND;
+  }
+  
+  /**
+   * @param key
+   *          The key, not null.
+   * @param value
+   *          The value.
+   * @return The map with the value of the key replaced.
+   */
+  public PersistentHashMap<K, V> put(K key, V value) {
+    if (Objects.isNull(key)) throw new NullPointerException("The key can't be null");
+    boolean[] added = new boolean[1];
+    Node base = Objects.isNull(this.root) ? BitmapNode.EMPTY : this.root;
+    Node newRoot = base.put(0, hash(key), key, value, added);
+    if (newRoot == this.root) return this;
+    return new PersistentHashMap<>(added[0] ? this.size + 1 : this.size, newRoot);
+  }
+  
+  /**
+   * @param key
+   *          The key.
+   * @return The map without the key.
+   */
+  public PersistentHashMap<K, V> remove(Object key) {
+    if (Objects.isNull(this.root) || Objects.isNull(key)) return this;
+    Node newRoot = this.root.remove(0, hash(key), key);
+    if (newRoot == this.root) return this;
+    return Objects.isNull(newRoot) ? empty() : new PersistentHashMap<>(this.size - 1, newRoot);
+  }
+  
+  /**
+   * Performs the action for every entry, in no particular order.
+   * 
+   * @param action
+   *          The action.
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    if (!Objects.isNull(this.root)) this.root.forEach((BiConsumer<Object, Object>) action);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.Value#isEqual(stm.Value)
+   */
+  @Override
+  public Boolean isEqual(Value v) {
+    
+    if (this == v) return true;
+    
+    if (!(v instanceof PersistentHashMap)) return false;
+    
+    PersistentHashMap<?, ?> other = (PersistentHashMap<?, ?>) v;
+    
+    if (this.size != other.size) return false;
+    
+    // derived from the same map without changes
+    //
+    if (this.root == other.root) return true;
+    
+    boolean[] equal = { true };
+    this.forEach((key, value) -> {
+      if (equal[0] && (!other.containsKey(key) || !Elements.isEqual(value, other.get(key)))) equal[0] = false;
+    });
+    
+    return equal[0];
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    this.forEach((key, value) -> {
+      if (builder.length() > 1) builder.append(", ");
+      builder.append(key).append("=").append(value);
+    });
+    return builder.append("}").toString();
+  }
+  
+  /**
+   * Spreads the higher bits of the hash code into the lower ones, the trie consumes the lower bits
+   * first.
+   */
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+  
+  /**
+   * A node of the trie.
+   */
+  private abstract static class Node {
+    
+    /**
+     * Returned by {@link #find(int, int, Object)} when the key isn't in the trie.
+     */
+    static final Object NOT_FOUND = new Object();
+    
+    /**
+     * @return The value of the key, {@link #NOT_FOUND} if the key isn't under this node.
+     */
+    abstract Object find(int shift, int hash, Object key);
+    
+    /**
+     * @return The node with the value of the key replaced, this node if nothing changed.
+     */
+    abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+    
+    /**
+     * @return The node without the key, this node if nothing changed, null if it became empty.
+     */
+    abstract Node remove(int shift, int hash, Object key);
+    
+    abstract void forEach(BiConsumer<Object, Object> action);
+  }
+  
+  /**
+   * A node with upto 32 children. Its array holds a key and a value for every child, the key is
+   * null when the child is a sub-node, held in place of the value.
+   */
+  private static final class BitmapNode extends Node {
+    
+    static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+    
+    private final int bitmap;
+    
+    private final Object[] array;
+    
+    BitmapNode(int bitmap, Object[] array) {
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+    
+    @Override
+    Object find(int shift, int hash, Object key) {
+      int bit = bit(hash, shift);
+      if ((this.bitmap & bit) == 0) return NOT_FOUND;
+      int index = this.index(bit);
+      Object childKey = this.array[2 * index];
+      Object childValue = this.array[2 * index + 1];
+      if (Objects.isNull(childKey)) return ((Node) childValue).find(shift + 5, hash, key);
+      return key.equals(childKey) ? childValue : NOT_FOUND;
+    }
+    
+    @Override
+    Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+      
+      int bit = bit(hash, shift);
+      int index = this.index(bit);
+      
+      if ((this.bitmap & bit) == 0) {
+        Object[] newArray = new Object[this.array.length + 2];
+        System.arraycopy(this.array, 0, newArray, 0, 2 * index);
+        newArray[2 * index] = key;
+        newArray[2 * index + 1] = value;
+        System.arraycopy(this.array, 2 * index, newArray, 2 * index + 2, this.array.length - 2 * index);
+        added[0] = true;
+        return new BitmapNode(this.bitmap | bit, newArray);
+      }
+      
+      Object childKey = this.array[2 * index];
+      Object childValue = this.array[2 * index + 1];
+      
+      if (Objects.isNull(childKey)) {
+        Node child = ((Node) childValue).put(shift + 5, hash, key, value, added);
+        if (child == childValue) return this;
+        return new BitmapNode(this.bitmap, copyAndSet(this.array, 2 * index + 1, child));
+      }
+      
+      if (key.equals(childKey)) {
+        if (childValue == value) return this;
+        return new BitmapNode(this.bitmap, copyAndSet(this.array, 2 * index + 1, value));
+      }
+      
+      // two keys share the slot, they move down into a sub-node
+      //
+      added[0] = true;
+      Node child = newNode(shift + 5, childKey, childValue, hash, key, value);
+      Object[] newArray = copyAndSet(this.array, 2 * index, null);
+      newArray[2 * index + 1] = child;
+      return new BitmapNode(this.bitmap, newArray);
+    }
+    
+    @Override
+    Node remove(int shift, int hash, Object key) {
+      
+      int bit = bit(hash, shift);
+      if ((this.bitmap & bit) == 0) return this;
+      
+      int index = this.index(bit);
+      Object childKey = this.array[2 * index];
+      Object childValue = this.array[2 * index + 1];
+      
+      if (Objects.isNull(childKey)) {
+        Node child = ((Node) childValue).remove(shift + 5, hash, key);
+        if (child == childValue) return this;
+        if (!Objects.isNull(child)) return new BitmapNode(this.bitmap, copyAndSet(this.array, 2 * index + 1, child));
+      } else if (!key.equals(childKey)) {
+        return this;
+      }
+      
+      if (this.bitmap == bit) return null;
+      
+      Object[] newArray = new Object[this.array.length - 2];
+      System.arraycopy(this.array, 0, newArray, 0, 2 * index);
+      System.arraycopy(this.array, 2 * index + 2, newArray, 2 * index, newArray.length - 2 * index);
+      return new BitmapNode(this.bitmap ^ bit, newArray);
+    }
+    
+    @Override
+    void forEach(BiConsumer<Object, Object> action) {
+      for (int i = 0; i < this.array.length; i = i + 2) {
+        if (Objects.isNull(this.array[i])) {
+          ((Node) this.array[i + 1]).forEach(action);
+        } else {
+          action.accept(this.array[i], this.array[i + 1]);
+        }
+      }
+    }
+    
+    private int index(int bit) {
+      return Integer.bitCount(this.bitmap & (bit - 1));
+    }
+    
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & 31);
+    }
+    
+    /**
+     * Makes the node holding both the keys.
+     */
+    private static Node newNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+      int hash1 = hash(key1);
+      if (hash1 == hash2) return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+      boolean[] added = new boolean[1];
+      return EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+    }
+  }
+  
+  /**
+   * A node holding the keys whose hashes are equal.
+   */
+  private static final class CollisionNode extends Node {
+    
+    private final int hash;
+    
+    private final Object[] array;
+    
+    CollisionNode(int hash, Object[] array) {
+      this.hash = hash;
+      this.array = array;
+    }
+    
+    @Override
+    Object find(int shift, int hash, Object key) {
+      int index = this.indexOf(key);
+      return index < 0 ? NOT_FOUND : this.array[index + 1];
+    }
+    
+    @Override
+    Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+      
+      if (hash != this.hash) {
+        // the new key differs on this level, this node moves down into a bitmap node
+        //
+        Node parent = new BitmapNode(BitmapNode.bit(this.hash, shift), new Object[] { null, this });
+        return parent.put(shift, hash, key, value, added);
+      }
+      
+      int index = this.indexOf(key);
+      
+      if (index >= 0) {
+        if (this.array[index + 1] == value) return this;
+        return new CollisionNode(hash, copyAndSet(this.array, index + 1, value));
+      }
+      
+      Object[] newArray = Arrays.copyOf(this.array, this.array.length + 2);
+      newArray[this.array.length] = key;
+      newArray[this.array.length + 1] = value;
+      added[0] = true;
+      return new CollisionNode(hash, newArray);
+    }
+    
+    @Override
+    Node remove(int shift, int hash, Object key) {
+      int index = this.indexOf(key);
+      if (index < 0) return this;
+      if (this.array.length == 2) return null;
+      Object[] newArray = new Object[this.array.length - 2];
+      System.arraycopy(this.array, 0, newArray, 0, index);
+      System.arraycopy(this.array, index + 2, newArray, index, newArray.length - index);
+      return new CollisionNode(this.hash, newArray);
+    }
+    
+    @Override
+    void forEach(BiConsumer<Object, Object> action) {
+      for (int i = 0; i < this.array.length; i = i + 2) {
+        action.accept(this.array[i], this.array[i + 1]);
+      }
+    }
+    
+    private int indexOf(Object key) {
+      for (int i = 0; i < this.array.length; i = i + 2) {
+        if (key.equals(this.array[i])) return i;
+      }
+      return -1;
+    }
+  }
+  
+  private static Object[] copyAndSet(Object[] array, int index, Object element) {
+    Object[] copy = array.clone();
+    copy[index] = element;
+    return copy;
+  }
+}
@@ -0,0 +1,387 @@
+/**
+ * Project: STMv2 Package: stm.persistent File: PersistentSortedMap.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 10:34:52 PM
+ */
+package stm.persistent;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import stm.ImmutableValue;
+import stm.Value;
+
+/**
+ * An immutable sorted map that shares its structure with the maps it was derived from, so that it
+ * can be held in a memory cell without ever being copied. It is an AVL tree.
+ * 
+ * * {@link #get(Object)}, {@link #put(Object, Object)} and {@link #remove(Object)} are O(log2 n).
+ * An update copies only the nodes on the path to the key (and the few nodes the rebalancing
+ * rotates), the rest of the tree is shared.
+ * 
+ * * {@link #makeCopy()} is O(1), it returns the map itself.
+ * 
+ * The keys can't be null. The keys and the values should be immutable themselves, the map only
+ * protects its own structure.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.persistent.PersistentSortedMap
+ */
+public final class PersistentSortedMap<K, V> implements ImmutableValue {
+  
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static final PersistentSortedMap<?, ?> EMPTY = new PersistentSortedMap<>((Comparator) Comparator.naturalOrder(), 0, null);
+  
+  /**
+   * The ordering of the keys.
+   */
+  private final Comparator<? super K> comparator;
+  
+  /**
+   * The number of entries.
+   */
+  private final int size;
+  
+  /**
+   * The root of the tree, null when the map is empty.
+   */
+  private final Node<K, V> root;
+  
+  private PersistentSortedMap(Comparator<? super K> comparator, int size, Node<K, V> root) {
+    this.comparator = comparator;
+    this.size = size;
+    this.root = root;
+  }
+  
+  /**
+   * @return The empty map, ordered by the natural ordering of the keys.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+    return (PersistentSortedMap<K, V>) EMPTY;
+  }
+  
+  /**
+   * @param comparator
+   *          The ordering of the keys.
+   * @return The empty map, ordered by the comparator.
+   */
+  public static <K, V> PersistentSortedMap<K, V> empty(Comparator<? super K> comparator) {
+    if (Objects.isNull(comparator)) throw new NullPointerException("The comparator can't be null");
+    return new PersistentSortedMap<>(comparator, 0, null);
+  }
+  
+  /**
+   * @return The number of entries.
+   */
+  public int size() {
+    return this.size;
+  }
+  
+  /**
+   * @return true if the map has no entries.
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+  
+  /**
+   * @param key
+   *          The key.
+   * @return The value of the key, null if the map doesn't have the key.
+   */
+  public V get(K key) {
+    Node<K, V> node = this.find(key);
+    return Objects.isNull(node) ? null : node.value;
+  }
+  
+  /**
+   * @param key
+   *          The key.
+   * @return true if the map has the key.
+   */
+  public boolean containsKey(K key) {
+    return !Objects.isNull(this.find(key));
+  }
+  
+  /**
+   * @return The height of the tree, 0 when the map is empty. An AVL tree of n entries is less than
+   *         1.44 log2(n + 2) high.
+   */
+  int height() {
+    return height(this.root);
+  }
+  
+  /**
+   * @return The least key, null if the map is empty.
+   */
+  public K firstKey() {
+    Node<K, V> node = this.root;
+    while (!Objects.isNull(node) && !Objects.isNull(node.left)) {
+      node = node.left;
+    }
+    return Objects.isNull(node) ? null : node.key;
+  }
+  
+  /**
+   * @return The greatest key, null if the map is empty.
+   */
+  public K lastKey() {
+    Node<K, V> node = this.root;
+    while (!Objects.isNull(node) && !Objects.isNull(node.right)) {
+      node = node.right;
+    }
+    return Objects.isNull(node) ? null : node.key;
+  }
+  
+  /**
+   * @param key
+   *          The key.
+   * @return The greatest key less than or equal to the key, null if there is none.
+   */
+  public K floorKey(K key) {
+    K floor = null;
+    for (Node<K, V> node = this.root; !Objects.isNull(node);) {
+      int c = this.comparator.compare(key, node.key);
+      if (c == 0) return node.key;
+      if (c < 0) {
+        node = node.left;
+      } else {
+        floor = node.key;
+        node = node.right;
+      }
+    }
+    return floor;
+  }
+  
+  /**
+   * @param key
+   *          The key.
+   * @return The least key greater than or equal to the key, null if there is none.
+   */
+  public K ceilingKey(K key) {
+    K ceiling = null;
+    for (Node<K, V> node = this.root; !Objects.isNull(node);) {
+      int c = this.comparator.compare(key, node.key);
+      if (c == 0) return node.key;
+      if (c > 0) {
+        node = node.right;
+      } else {
+        ceiling = node.key;
+        node = node.left;
+      }
+    }
+    return ceiling;
+  }
+  
+  /**
+   * @param key
+   *          The key, not null.
+   * @param value
+   *          The value.
+   * @return The map with the value of the key replaced.
+   */
+  public PersistentSortedMap<K, V> put(K key, V value) {
+    if (Objects.isNull(key)) throw new NullPointerException("The key can't be null");
+    boolean[] added = new boolean[1];
+    Node<K, V> newRoot = this.put(this.root, key, value, added);
+    if (newRoot == this.root) return this;
+    return new PersistentSortedMap<>(this.comparator, added[0] ? this.size + 1 : this.size, newRoot);
+  }
+  
+  /**
+   * @param key
+   *          The key.
+   * @return The map without the key.
+   */
+  public PersistentSortedMap<K, V> remove(K key) {
+    if (Objects.isNull(key) || !this.containsKey(key)) return this;
+    return new PersistentSortedMap<>(this.comparator, this.size - 1, this.remove(this.root, key));
+  }
+  
+  /**
+   * Performs the action for every entry, in the order of the keys.
+   * 
+   * @param action
+   *          The action.
+   */
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    forEach(this.root, action);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.Value#isEqual(stm.Value)
+   */
+  @Override
+  public Boolean isEqual(Value v) {
+    
+    if (this == v) return true;
+    
+    if (!(v instanceof PersistentSortedMap)) return false;
+    
+    PersistentSortedMap<?, ?> other = (PersistentSortedMap<?, ?>) v;
+    
+    if (this.size != other.size) return false;
+    
+    // derived from the same map without changes
+    //
+    if (this.root == other.root) return true;
+    
+    // both are in order, the entries are compared pairwise
+    //
+    Object[] entries = new Object[2 * this.size];
+    int[] index = { 0 };
+    other.forEach((key, value) -> {
+      entries[index[0]++] = key;
+      entries[index[0]++] = value;
+    });
+    
+    boolean[] equal = { true };
+    index[0] = 0;
+    this.forEach((key, value) -> {
+      if (equal[0] && (!Objects.equals(key, entries[index[0]]) || !Elements.isEqual(value, entries[index[0] + 1]))) equal[0] = false;
+      index[0] = index[0] + 2;
+    });
+    
+    return equal[0];
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    this.forEach((key, value) -> {
+      if (builder.length() > 1) builder.append(", ");
+      builder.append(key).append("=").append(value);
+    });
+    return builder.append("}").toString();
+  }
+  
+  private Node<K, V> find(K key) {
+    if (Objects.isNull(key)) return null;
+    Node<K, V> node = this.root;
+    while (!Objects.isNull(node)) {
+      int c = this.comparator.compare(key, node.key);
+      if (c == 0) return node;
+      node = c < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+  
+  /**
+   * @return The subtree with the value of the key replaced, the same subtree if nothing changed.
+   */
+  private Node<K, V> put(Node<K, V> node, K key, V value, boolean[] added) {
+    
+    if (Objects.isNull(node)) {
+      added[0] = true;
+      return new Node<>(key, value, null, null);
+    }
+    
+    int c = this.comparator.compare(key, node.key);
+    
+    if (c == 0) {
+      if (node.value == value) return node;
+      return new Node<>(node.key, value, node.left, node.right);
+    }
+    
+    if (c < 0) {
+      Node<K, V> left = this.put(node.left, key, value, added);
+      return left == node.left ? node : balance(node.key, node.value, left, node.right);
+    }
+    
+    Node<K, V> right = this.put(node.right, key, value, added);
+    return right == node.right ? node : balance(node.key, node.value, node.left, right);
+  }
+  
+  /**
+   * @return The subtree without the key, the key must be in the subtree.
+   */
+  private Node<K, V> remove(Node<K, V> node, K key) {
+    
+    int c = this.comparator.compare(key, node.key);
+    
+    if (c < 0) return balance(node.key, node.value, this.remove(node.left, key), node.right);
+    
+    if (c > 0) return balance(node.key, node.value, node.left, this.remove(node.right, key));
+    
+    if (Objects.isNull(node.left)) return node.right;
+    
+    if (Objects.isNull(node.right)) return node.left;
+    
+    // the least node of the right subtree takes the place of the node
+    //
+    Node<K, V> successor = node.right;
+    while (!Objects.isNull(successor.left)) {
+      successor = successor.left;
+    }
+    
+    return balance(successor.key, successor.value, node.left, this.remove(node.right, successor.key));
+  }
+  
+  /**
+   * Makes the node, rotating it when the heights of its subtrees differ by more than 1.
+   */
+  private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+    
+    int difference = height(left) - height(right);
+    
+    if (difference > 1) {
+      if (height(left.left) >= height(left.right)) {
+        return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+      }
+      return new Node<>(left.right.key, left.right.value, new Node<>(left.key, left.value, left.left, left.right.left),
+          new Node<>(key, value, left.right.right, right));
+    }
+    
+    if (difference < -1) {
+      if (height(right.right) >= height(right.left)) {
+        return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+      }
+      return new Node<>(right.left.key, right.left.value, new Node<>(key, value, left, right.left.left),
+          new Node<>(right.key, right.value, right.left.right, right.right));
+    }
+    
+    return new Node<>(key, value, left, right);
+  }
+  
+  private static int height(Node<?, ?> node) {
+    return Objects.isNull(node) ? 0 : node.height;
+  }
+  
+  private static <K, V> void forEach(Node<K, V> node, BiConsumer<? super K, ? super V> action) {
+    if (Objects.isNull(node)) return;
+    forEach(node.left, action);
+    action.accept(node.key, node.value);
+    forEach(node.right, action);
+  }
+  
+  /**
+   * A node of the tree.
+   */
+  private static final class Node<K, V> {
+    
+    final K key;
+    
+    final V value;
+    
+    final Node<K, V> left;
+    
+    final Node<K, V> right;
+    
+    final int height;
+    
+    Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+      this.key = key;
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      this.height = Math.max(height(left), height(right)) + 1;
+    }
+  }
+}
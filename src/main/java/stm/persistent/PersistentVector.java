@@ -0,0 +1,355 @@
+/**
+ * Project: STMv2 Package: stm.persistent File: PersistentVector.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 9:48:05 PM
+ */
+package stm.persistent;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import stm.ImmutableValue;
+import stm.Value;
+
+/**
+ * An immutable vector that shares its structure with the vectors it was derived from, so that it
+ * can be held in a memory cell without ever being copied. Inspired by Clojure's vector -- a bit
+ * partitioned trie with 32 way branching.
+ * 
+ * * The elements are kept in the leaves of the trie, and the last (upto 32) elements in a separate
+ * tail. Appending to the tail doesn't touch the trie.
+ * 
+ * * {@link #get(int)} and {@link #set(int, Object)} walk down the trie, O(log32 n). An update copies
+ * only the nodes on the path to the element, the rest of the trie is shared.
+ * 
+ * * {@link #makeCopy()} is O(1), it returns the vector itself.
+ * 
+ * The elements should be immutable themselves, the vector only protects its own structure.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.persistent.PersistentVector
+ */
+public final class PersistentVector<E> implements ImmutableValue, Iterable<E> {
+  
+  private static final int BITS = 5;
+  
+  private static final int WIDTH = 1 << BITS;
+  
+  private static final int MASK = WIDTH - 1;
+  
+  private static final Object[] EMPTY_NODE = new Object[WIDTH];
+  
+  private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+  
+  /**
+   * The number of elements.
+   */
+  private final int size;
+  
+  /**
+   * The shift of the root's level, BITS times the depth of the trie.
+   */
+  private final int shift;
+  
+  /**
+   * The root of the trie, the inner nodes and the leaves are arrays of 32 slots.
+   */
+  private final Object[] root;
+  
+  /**
+   * The last elements, not in the trie yet.
+   */
+  private final Object[] tail;
+  
+  private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+  
+  /**
+   * @return The empty vector.
+   */
+  @SuppressWarnings("unchecked")
+  public static <E> PersistentVector<E> empty() {
+    return (PersistentVector<E>) EMPTY;
+  }
+  
+  /**
+   * @param elements
+   *          The elements of the vector, in order.
+   * @return The vector of the elements.
+   */
+  @SafeVarargs
+  public static <E> PersistentVector<E> of(E... elements) {
+    PersistentVector<E> vector = empty();
+    for (E element : elements) {
+      vector = vector.append(element);
+    }
+    return vector;
+  }
+  
+  /**
+   * @return The number of elements.
+   */
+  public int size() {
+    return this.size;
+  }
+  
+  /**
+   * @return true if the vector has no elements.
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+  
+  /**
+   * @param index
+   *          The index of the element.
+   * @return The element.
+   */
+  @SuppressWarnings("unchecked")
+  public E get(int index) {
+    this.checkIndex(index);
+    return (E) this.leafOf(index)[index & MASK];
+  }
+  
+  /**
+   * @param index
+   *          The index of the element, {@link #size()} appends the element.
+   * @param element
+   *          The new element.
+   * @return The vector with the element at the index replaced.
+   */
+  public PersistentVector<E> set(int index, E element) {
+    
+    if (index == this.size) return this.append(element);
+    
+    this.checkIndex(index);
+    
+    if (index >= this.tailOffset()) {
+      Object[] newTail = this.tail.clone();
+      newTail[index & MASK] = element;
+      return new PersistentVector<>(this.size, this.shift, this.root, newTail);
+    }
+    
+    return new PersistentVector<>(this.size, this.shift, set(this.shift, this.root, index, element), this.tail);
+  }
+  
+  /**
+   * @param element
+   *          The element to append.
+   * @return The vector with the element appended.
+   */
+  public PersistentVector<E> append(E element) {
+    
+    // room in the tail
+    //
+    if (this.size - this.tailOffset() < WIDTH) {
+      Object[] newTail = Arrays.copyOf(this.tail, this.tail.length + 1);
+      newTail[this.tail.length] = element;
+      return new PersistentVector<>(this.size + 1, this.shift, this.root, newTail);
+    }
+    
+    // the full tail is pushed into the trie, the trie grows a level when the root is full
+    //
+    Object[] newRoot;
+    int newShift = this.shift;
+    
+    if ((this.size >>> BITS) > (1 << this.shift)) {
+      newRoot = new Object[WIDTH];
+      newRoot[0] = this.root;
+      newRoot[1] = newPath(this.shift, this.tail);
+      newShift = newShift + BITS;
+    } else {
+      newRoot = this.pushTail(this.shift, this.root, this.tail);
+    }
+    
+    return new PersistentVector<>(this.size + 1, newShift, newRoot, new Object[] { element });
+  }
+  
+  /**
+   * @return The vector without its last element.
+   */
+  public PersistentVector<E> removeLast() {
+    
+    if (this.size == 0) throw new IllegalStateException("Can't remove from an empty vector");
+    
+    if (this.size == 1) return empty();
+    
+    if (this.size - this.tailOffset() > 1) {
+      return new PersistentVector<>(this.size - 1, this.shift, this.root, Arrays.copyOf(this.tail, this.tail.length - 1));
+    }
+    
+    // the last leaf of the trie becomes the tail
+    //
+    Object[] newTail = this.leafOf(this.size - 2);
+    Object[] newRoot = this.popTail(this.shift, this.root);
+    int newShift = this.shift;
+    
+    if (Objects.isNull(newRoot)) newRoot = EMPTY_NODE;
+    
+    if (this.shift > BITS && Objects.isNull(newRoot[1])) {
+      newRoot = (Object[]) newRoot[0];
+      newShift = newShift - BITS;
+    }
+    
+    return new PersistentVector<>(this.size - 1, newShift, newRoot, newTail);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Iterable#iterator()
+   */
+  @Override
+  public Iterator<E> iterator() {
+    
+    return new Iterator<E>() {
+      
+      private int index;
+      
+      private Object[] leaf;
+      
+      @Override
+      public boolean hasNext() {
+        return this.index < PersistentVector.this.size;
+      }
+      
+      @Override
+      @SuppressWarnings("unchecked")
+      public E next() {
+        if (!this.hasNext()) throw new NoSuchElementException();
+        if ((this.index & MASK) == 0 || Objects.isNull(this.leaf)) this.leaf = PersistentVector.this.leafOf(this.index);
+        E element = (E) this.leaf[this.index & MASK];
+        this.index = this.index + 1;
+        return element;
+      }
+    };
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see stm.Value#isEqual(stm.Value)
+   */
+  @Override
+  public Boolean isEqual(Value v) {
+    
+    if (this == v) return true;
+    
+    if (!(v instanceof PersistentVector)) return false;
+    
+    PersistentVector<?> other = (PersistentVector<?>) v;
+    
+    if (this.size != other.size) return false;
+    
+    // derived from the same vector without changes
+    //
+    if (this.root == other.root && this.tail == other.tail) return true;
+    
+    Iterator<?> others = other.iterator();
+    for (E element : this) {
+      if (!Elements.isEqual(element, others.next())) return false;
+    }
+    
+    return true;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (E element : this) {
+      if (builder.length() > 1) builder.append(", ");
+      builder.append(element);
+    }
+    return builder.append("]").toString();
+  }
+  
+  /**
+   * @return The index of the first element in the tail.
+   */
+  private int tailOffset() {
+    return this.size < WIDTH ? 0 : ((this.size - 1) >>> BITS) << BITS;
+  }
+  
+  private void checkIndex(int index) {
+    if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+  }
+  
+  /**
+   * @return The leaf or the tail holding the element at the index.
+   */
+  private Object[] leafOf(int index) {
+    if (index >= this.tailOffset()) return this.tail;
+    Object[] node = this.root;
+    for (int level = this.shift; level > 0; level = level - BITS) {
+      node = (Object[]) node[(index >>> level) & MASK];
+    }
+    return node;
+  }
+  
+  /**
+   * Copies the path to the element, replacing the element.
+   */
+  private static Object[] set(int level, Object[] node, int index, Object element) {
+    Object[] copy = node.clone();
+    if (level == 0) {
+      copy[index & MASK] = element;
+    } else {
+      int child = (index >>> level) & MASK;
+      copy[child] = set(level - BITS, (Object[]) node[child], index, element);
+    }
+    return copy;
+  }
+  
+  /**
+   * Copies the path to the last leaf, adding the tail as the last leaf.
+   */
+  private Object[] pushTail(int level, Object[] node, Object[] tailNode) {
+    int child = ((this.size - 1) >>> level) & MASK;
+    Object[] copy = node.clone();
+    if (level == BITS) {
+      copy[child] = tailNode;
+    } else {
+      Object[] childNode = (Object[]) node[child];
+      copy[child] = Objects.isNull(childNode) ? newPath(level - BITS, tailNode) : this.pushTail(level - BITS, childNode, tailNode);
+    }
+    return copy;
+  }
+  
+  /**
+   * Makes the chain of nodes down to the leaf.
+   */
+  private static Object[] newPath(int level, Object[] leaf) {
+    if (level == 0) return leaf;
+    Object[] node = new Object[WIDTH];
+    node[0] = newPath(level - BITS, leaf);
+    return node;
+  }
+  
+  /**
+   * Copies the path to the last leaf, dropping the last leaf.
+   * 
+   * @return The new node, null if it became empty.
+   */
+  private Object[] popTail(int level, Object[] node) {
+    int child = ((this.size - 2) >>> level) & MASK;
+    if (level > BITS) {
+      Object[] newChild = this.popTail(level - BITS, (Object[]) node[child]);
+      if (Objects.isNull(newChild) && child == 0) return null;
+      Object[] copy = node.clone();
+      copy[child] = newChild;
+      return copy;
+    }
+    if (child == 0) return null;
+    Object[] copy = node.clone();
+    copy[child] = null;
+    return copy;
+  }
+}
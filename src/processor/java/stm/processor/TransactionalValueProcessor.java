@@ -0,0 +1,487 @@
+/**
+ * Project: STMv2 Package: stm.processor File: TransactionalValueProcessor.java
+ * 
+ * @author sidmishraw Last modified: Oct 18, 2026 11:26:09 PM
+ */
+package stm.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Generates the `makeCopy` and `isEqual` of the values annotated with
+ * {@link stm.TransactionalValue}. For a value `X` it generates the package-private class
+ * `XValues` with the static methods `copy(X)` and `isEqual(X, Value)`, straight-line code that
+ * reads and assigns the fields directly -- no reflection at runtime.
+ * 
+ * The processor is registered in `META-INF/services/javax.annotation.processing.Processor` of the
+ * `processor` jar, built by the `processorJar` task apart from the STM's jar. The projects using
+ * the annotation put that jar on their `annotationProcessor` configuration.
+ * 
+ * A value the generated code can't copy or compare correctly -- a private or final field, a field
+ * of a mutable type that isn't a {@link stm.Value}, no accessible no-arg constructor -- is reported
+ * as a compile error on the offending element.
+ * 
+ * @author sidmishraw
+ *         Qualified Name: stm.processor.TransactionalValueProcessor
+ */
+public final class TransactionalValueProcessor extends AbstractProcessor {
+  
+  private static final String ANNOTATION = "stm.TransactionalValue";
+  
+  /**
+   * The immutable types whose instances are shared by the copies.
+   */
+  private static final Set<String> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList("java.lang.String", "java.lang.Boolean",
+      "java.lang.Byte", "java.lang.Short", "java.lang.Character", "java.lang.Integer", "java.lang.Long", "java.lang.Float",
+      "java.lang.Double", "java.math.BigInteger", "java.math.BigDecimal", "java.util.UUID", "java.time.Instant",
+      "java.time.Duration", "java.time.LocalDate", "java.time.LocalTime", "java.time.LocalDateTime"));
+  
+  /*
+   * (non-Javadoc)
+   * @see javax.annotation.processing.AbstractProcessor#getSupportedAnnotationTypes()
+   */
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(ANNOTATION);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+   */
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set,
+   * javax.annotation.processing.RoundEnvironment)
+   */
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    
+    TypeElement annotation = this.processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+    
+    if (Objects.isNull(annotation)) return false;
+    
+    for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+      if (element.getKind() != ElementKind.CLASS) {
+        this.error(element, "@TransactionalValue can only be put on a class");
+        continue;
+      }
+      new Generator((TypeElement) element).generate();
+    }
+    
+    return true;
+  }
+  
+  private void error(Element element, String message) {
+    this.processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+  }
+  
+  /**
+   * How a field is copied and compared, in the order the fields are compared.
+   */
+  private enum Shape {
+    
+    /**
+     * Copied by value, compared with `==`.
+     */
+    PRIMITIVE,
+    
+    /**
+     * Shared by the copies, compared with `equals`.
+     */
+    IMMUTABLE,
+    
+    /**
+     * Copied with `makeCopy`, compared with `isEqual`.
+     */
+    VALUE,
+    
+    /**
+     * Copied and compared element by element.
+     */
+    ARRAY
+  }
+  
+  /**
+   * Generates the class for one value.
+   */
+  private final class Generator {
+    
+    private final TypeElement value;
+    
+    private final String packageName;
+    
+    /**
+     * The name of the value in the generated source, `Outer.Inner` for a nested value.
+     */
+    private final String valueName;
+    
+    private final String className;
+    
+    private final TypeMirror valueType;
+    
+    private final TypeMirror immutableValueType;
+    
+    /**
+     * The helper methods copying and comparing the arrays whose elements need more than a clone.
+     */
+    private final StringBuilder helpers = new StringBuilder();
+    
+    private int helperCount;
+    
+    private boolean failed;
+    
+    Generator(TypeElement value) {
+      this.value = value;
+      this.packageName = packageOf(value).getQualifiedName().toString();
+      String qualifiedName = value.getQualifiedName().toString();
+      this.valueName = this.packageName.isEmpty() ? qualifiedName : qualifiedName.substring(this.packageName.length() + 1);
+      this.className = this.valueName.replace('.', '_') + "Values";
+      this.valueType = TransactionalValueProcessor.this.processingEnv.getElementUtils().getTypeElement("stm.Value").asType();
+      this.immutableValueType = TransactionalValueProcessor.this.processingEnv.getElementUtils().getTypeElement("stm.ImmutableValue")
+          .asType();
+    }
+    
+    void generate() {
+      
+      this.checkValue();
+      
+      List<VariableElement> fields = this.fields();
+      
+      if (this.failed) return;
+      
+      // the cheap comparisons first
+      //
+      List<VariableElement> ordered = new ArrayList<>();
+      for (Shape shape : Shape.values()) {
+        for (VariableElement field : fields) {
+          if (this.shapeOf(field.asType()) == shape) ordered.add(field);
+        }
+      }
+      
+      StringBuilder copy = new StringBuilder();
+      StringBuilder isEqual = new StringBuilder();
+      
+      for (VariableElement field : ordered) {
+        String name = field.getSimpleName().toString();
+        copy.append("    copy.").append(name).append(" = ").append(this.copyOf("value." + name, field.asType())).append(";\n");
+        isEqual.append("    if (!").append(this.equalityOf("value." + name, "other." + name, field.asType())).append(") return false;\n");
+      }
+      
+      StringBuilder source = new StringBuilder();
+      source.append("// Generated by stm.processor.TransactionalValueProcessor from ").append(this.value.getQualifiedName())
+          .append(", don't edit.\n");
+      if (!this.packageName.isEmpty()) source.append("package ").append(this.packageName).append(";\n");
+      source.append("\n");
+      source.append("/**\n");
+      source.append(" * The makeCopy and isEqual of {@link ").append(this.valueName).append("}.\n");
+      source.append(" */\n");
+      source.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+      source.append("final class ").append(this.className).append(" {\n");
+      source.append("\n");
+      source.append("  private ").append(this.className).append("() {}\n");
+      source.append("\n");
+      source.append("  /**\n");
+      source.append("   * @return The deep copy of the value.\n");
+      source.append("   */\n");
+      source.append("  static ").append(this.valueName).append(" copy(").append(this.valueName).append(" value) {\n");
+      source.append("    ").append(this.valueName).append(" copy = new ").append(this.valueName).append("();\n");
+      source.append(copy);
+      source.append("    return copy;\n");
+      source.append("  }\n");
+      source.append("\n");
+      source.append("  /**\n");
+      source.append("   * @return true if both the values have equal fields.\n");
+      source.append("   */\n");
+      source.append("  static Boolean isEqual(").append(this.valueName).append(" value, stm.Value v) {\n");
+      source.append("    if (value == v) return true;\n");
+      source.append("    if (!(v instanceof ").append(this.valueName).append(")) return false;\n");
+      source.append("    ").append(this.valueName).append(" other = (").append(this.valueName).append(") v;\n");
+      source.append(isEqual);
+      source.append("    return true;\n");
+      source.append("  }\n");
+      source.append(this.helpers);
+      source.append("}\n");
+      
+      String generatedName = this.packageName.isEmpty() ? this.className : this.packageName + "." + this.className;
+      
+      try (Writer writer = TransactionalValueProcessor.this.processingEnv.getFiler().createSourceFile(generatedName, this.value)
+          .openWriter()) {
+        writer.write(source.toString());
+      } catch (IOException e) {
+        TransactionalValueProcessor.this.error(this.value, "Couldn't generate " + generatedName + ": " + e.getMessage());
+      }
+    }
+    
+    /**
+     * Checks that the generated class can make and access the value.
+     */
+    private void checkValue() {
+      
+      if (!TransactionalValueProcessor.this.processingEnv.getTypeUtils().isAssignable(this.value.asType(), this.valueType)) {
+        this.error(this.value, "A @TransactionalValue must implement stm.Value");
+      }
+      
+      if (this.value.getModifiers().contains(Modifier.ABSTRACT)) {
+        this.error(this.value, "A @TransactionalValue can't be abstract");
+      }
+      
+      if (!this.value.getTypeParameters().isEmpty()) {
+        this.error(this.value, "A @TransactionalValue can't be generic");
+      }
+      
+      for (Element type = this.value; type.getKind().isClass(); type = type.getEnclosingElement()) {
+        TypeElement typeElement = (TypeElement) type;
+        if (typeElement.getModifiers().contains(Modifier.PRIVATE)
+            || (typeElement.getNestingKind() == NestingKind.MEMBER && !typeElement.getModifiers().contains(Modifier.STATIC))) {
+          this.error(this.value, "A @TransactionalValue must be a top level or a static nested class, and not private");
+          break;
+        }
+      }
+      
+      boolean hasConstructor = false;
+      for (ExecutableElement constructor : ElementFilter.constructorsIn(this.value.getEnclosedElements())) {
+        if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) hasConstructor = true;
+      }
+      
+      if (!hasConstructor) this.error(this.value, "A @TransactionalValue needs a non-private no-arg constructor");
+    }
+    
+    /**
+     * @return The instance fields of the value and its superclasses, the transient ones excluded.
+     */
+    private List<VariableElement> fields() {
+      
+      List<VariableElement> fields = new ArrayList<>();
+      
+      for (TypeElement type = this.value; !Objects.isNull(type)
+          && !type.getQualifiedName().contentEquals("java.lang.Object"); type = superclassOf(type)) {
+        
+        boolean samePackage = packageOf(type).getQualifiedName().contentEquals(this.packageName);
+        
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+          
+          Set<Modifier> modifiers = field.getModifiers();
+          
+          if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+          
+          if (modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC))) {
+            this.error(field, "The field " + field.getSimpleName() + " of a @TransactionalValue must be accessible from "
+                + this.className + ", it can't be private");
+          } else if (modifiers.contains(Modifier.FINAL)) {
+            this.error(field, "The field " + field.getSimpleName() + " of a @TransactionalValue can't be final");
+          } else if (Objects.isNull(this.shapeOf(field.asType()))) {
+            this.error(field, "The field " + field.getSimpleName() + " of a @TransactionalValue has the type " + field.asType()
+                + ", which can't be copied -- make it a stm.Value, a stm.ImmutableValue or transient");
+          } else {
+            fields.add(field);
+          }
+        }
+      }
+      
+      return fields;
+    }
+    
+    /**
+     * @return How the values of the type are copied and compared, null if they can't be.
+     */
+    private Shape shapeOf(TypeMirror type) {
+      
+      if (type.getKind().isPrimitive()) return Shape.PRIMITIVE;
+      
+      if (type.getKind() == TypeKind.ARRAY) {
+        return Objects.isNull(this.shapeOf(((ArrayType) type).getComponentType())) ? null : Shape.ARRAY;
+      }
+      
+      if (type.getKind() != TypeKind.DECLARED) return null;
+      
+      TypeMirror erasure = TransactionalValueProcessor.this.processingEnv.getTypeUtils().erasure(type);
+      
+      if (TransactionalValueProcessor.this.processingEnv.getTypeUtils().isAssignable(erasure, this.immutableValueType)) {
+        return Shape.VALUE;
+      }
+      
+      TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+      
+      if (element.getKind() == ElementKind.ENUM || IMMUTABLE_TYPES.contains(element.getQualifiedName().toString())) {
+        return Shape.IMMUTABLE;
+      }
+      
+      if (TransactionalValueProcessor.this.processingEnv.getTypeUtils().isAssignable(erasure, this.valueType)) return Shape.VALUE;
+      
+      return null;
+    }
+    
+    /**
+     * @return true if the values of the type are never copied.
+     */
+    private boolean isShared(TypeMirror type) {
+      Shape shape = this.shapeOf(type);
+      return shape == Shape.PRIMITIVE || shape == Shape.IMMUTABLE
+          || (shape == Shape.VALUE
+              && TransactionalValueProcessor.this.processingEnv.getTypeUtils().isAssignable(this.erasureOf(type), this.immutableValueType));
+    }
+    
+    /**
+     * @return The expression copying the expression of the type.
+     */
+    private String copyOf(String expression, TypeMirror type) {
+      
+      if (this.isShared(type)) return expression;
+      
+      if (this.shapeOf(type) == Shape.VALUE) {
+        return "(" + expression + " == null ? null : (" + this.nameOf(type) + ") " + expression + ".makeCopy())";
+      }
+      
+      TypeMirror component = ((ArrayType) type).getComponentType();
+      
+      if (this.isShared(component)) return "(" + expression + " == null ? null : " + expression + ".clone())";
+      
+      // the elements need a copy of their own
+      //
+      String element = this.copyOf("array[i]", component);
+      String helper = "copy" + this.helperCount++;
+      String arrayName = this.nameOf(type);
+      this.helpers.append("\n");
+      this.helpers.append("  private static ").append(arrayName).append(" ").append(helper).append("(").append(arrayName)
+          .append(" array) {\n");
+      this.helpers.append("    if (array == null) return null;\n");
+      this.helpers.append("    ").append(arrayName).append(" copy = ").append(this.newArrayOf(type, "array.length")).append(";\n");
+      this.helpers.append("    for (int i = 0; i < array.length; i++) {\n");
+      this.helpers.append("      copy[i] = ").append(element).append(";\n");
+      this.helpers.append("    }\n");
+      this.helpers.append("    return copy;\n");
+      this.helpers.append("  }\n");
+      
+      return helper + "(" + expression + ")";
+    }
+    
+    /**
+     * @return The boolean expression comparing the expressions of the type.
+     */
+    private String equalityOf(String left, String right, TypeMirror type) {
+      
+      switch (this.shapeOf(type)) {
+        
+        case PRIMITIVE:
+          if (type.getKind() == TypeKind.FLOAT) return "(Float.floatToIntBits(" + left + ") == Float.floatToIntBits(" + right + "))";
+          if (type.getKind() == TypeKind.DOUBLE) {
+            return "(Double.doubleToLongBits(" + left + ") == Double.doubleToLongBits(" + right + "))";
+          }
+          return "(" + left + " == " + right + ")";
+        
+        case IMMUTABLE:
+          return "java.util.Objects.equals(" + left + ", " + right + ")";
+        
+        case VALUE:
+          return "(" + left + " == " + right + " || (" + left + " != null && " + right + " != null && Boolean.TRUE.equals(" + left
+              + ".isEqual(" + right + "))))";
+        
+        default:
+          break;
+      }
+      
+      TypeMirror component = ((ArrayType) type).getComponentType();
+      Shape componentShape = this.shapeOf(component);
+      
+      if (componentShape == Shape.PRIMITIVE || componentShape == Shape.IMMUTABLE) {
+        return "java.util.Arrays.equals(" + left + ", " + right + ")";
+      }
+      
+      // the elements are compared with isEqual
+      //
+      String elements = this.equalityOf("left[i]", "right[i]", component);
+      String helper = "isEqual" + this.helperCount++;
+      String arrayName = this.nameOf(type);
+      this.helpers.append("\n");
+      this.helpers.append("  private static boolean ").append(helper).append("(").append(arrayName).append(" left, ").append(arrayName)
+          .append(" right) {\n");
+      this.helpers.append("    if (left == right) return true;\n");
+      this.helpers.append("    if (left == null || right == null || left.length != right.length) return false;\n");
+      this.helpers.append("    for (int i = 0; i < left.length; i++) {\n");
+      this.helpers.append("      if (!").append(elements).append(") return false;\n");
+      this.helpers.append("    }\n");
+      this.helpers.append("    return true;\n");
+      this.helpers.append("  }\n");
+      
+      return helper + "(" + left + ", " + right + ")";
+    }
+    
+    /**
+     * @return The array creation expression of the type, `new X[length][]` for a 2-dimensional
+     *         array.
+     */
+    private String newArrayOf(TypeMirror type, String length) {
+      int dimensions = 0;
+      TypeMirror component = type;
+      while (component.getKind() == TypeKind.ARRAY) {
+        component = ((ArrayType) component).getComponentType();
+        dimensions++;
+      }
+      StringBuilder expression = new StringBuilder("new ").append(this.nameOf(component)).append("[").append(length).append("]");
+      for (int i = 1; i < dimensions; i++) {
+        expression.append("[]");
+      }
+      return expression.toString();
+    }
+    
+    /**
+     * @return The source name of the erasure of the type, the generated code uses raw types.
+     */
+    private String nameOf(TypeMirror type) {
+      return this.erasureOf(type).toString();
+    }
+    
+    private TypeMirror erasureOf(TypeMirror type) {
+      return TransactionalValueProcessor.this.processingEnv.getTypeUtils().erasure(type);
+    }
+    
+    private void error(Element element, String message) {
+      this.failed = true;
+      TransactionalValueProcessor.this.error(element, message);
+    }
+  }
+  
+  private static PackageElement packageOf(Element element) {
+    while (element.getKind() != ElementKind.PACKAGE) {
+      element = element.getEnclosingElement();
+    }
+    return (PackageElement) element;
+  }
+  
+  private static TypeElement superclassOf(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+  }
+}
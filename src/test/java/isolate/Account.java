@@ -30,6 +30,9 @@
  */
 package isolate;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 import com.google.gson.GsonBuilder;
@@ -104,7 +107,7 @@ public class Account {
   @SuppressWarnings("unchecked")
   public void deposit(Integer amount) {
     
-    this.stm.perform((Transaction t) -> {
+    this.stm.perform(Collections.singletonList(this.accountState), (Transaction t) -> {
       
       AccountState as = t.read(this.accountState, AccountState.class);
       
@@ -124,7 +127,7 @@ public class Account {
   @SuppressWarnings("unchecked")
   public void withdraw(Integer amount) {
     
-    this.stm.perform((Transaction t) -> {
+    this.stm.perform(Collections.singletonList(this.accountState), (Transaction t) -> {
       
       AccountState as = t.read(this.accountState, AccountState.class);
       
@@ -136,7 +139,9 @@ public class Account {
         
       } catch (Exception e) {
         
-        return false;
+        // the balance is too low, wait till someone deposits into the account
+        //
+        return t.retry();
         
       }
     });
@@ -154,7 +159,10 @@ public class Account {
   @SuppressWarnings("unchecked")
   public void transfer(Account destination, Integer amt) {
     
-    this.stm.perform((Transaction t) -> {
+    // the transfer only touches the states of the two accounts, declaring them lets the STM
+    // route the transfer to the partition owning both of them
+    //
+    this.stm.perform(Arrays.asList(this.accountState, destination.accountState), (Transaction t) -> {
       
       AccountState srcState = t.read(this.accountState, AccountState.class);
       AccountState destState = t.read(destination.accountState, AccountState.class);
@@ -171,7 +179,9 @@ public class Account {
         
       } catch (Exception e) {
         
-        return false;
+        // the balance is too low, wait till someone deposits into the account
+        //
+        return t.retry();
         
       }
       
@@ -197,7 +207,7 @@ public class Account {
         
         switch (f.getName()) {
           case "stm":
-          case "memCellLock":
+          case "lockWord":
           case "commitLock":
             return true;
           default:
@@ -37,6 +37,7 @@ import com.google.gson.FieldAttributes;
 import com.google.gson.GsonBuilder;
 
 import lombok.Getter;
+import stm.TransactionalValue;
 import stm.Value;
 
 /**
@@ -47,15 +48,20 @@ import stm.Value;
  * across multiple threads is a cause for
  * concern.
  * 
+ * The makeCopy and isEqual are generated from its fields, see {@link TransactionalValue}.
+ * 
  * Qualified Name: isolate.AccountState
  */
+@TransactionalValue
 public class AccountState extends State {
   
   /**
    * The balance of the account. For simplicity's sake, lets assume the balance is
    * an integer.
+   * 
+   * Package-private, the generated {@link AccountStateValues} copies and compares it.
    */
-  private @Getter int balance;
+  @Getter int balance;
   
   /**
    * Creates a 0 balance account state.
@@ -80,9 +86,7 @@ public class AccountState extends State {
    */
   @Override
   public Value makeCopy() {
-    AccountState copy = new AccountState();
-    copy.balance = this.balance;
-    return copy;
+    return AccountStateValues.copy(this);
   }
   
   /*
@@ -91,11 +95,7 @@ public class AccountState extends State {
    */
   @Override
   public Boolean isEqual(Value v) {
-    if (Objects.isNull(v)) return false;
-    if (!(v instanceof AccountState)) return false;
-    AccountState other = (AccountState) v;
-    if (this.balance != other.balance) return false;
-    return true;
+    return AccountStateValues.isEqual(this, v);
   }
   
   /**
@@ -140,7 +140,7 @@ public class AccountState extends State {
       
       @Override
       public boolean shouldSkipField(FieldAttributes f) {
-        if (f.getName().equals("memCellLock")) return true;
+        if (f.getName().equals("lockWord")) return true;
         return false;
       }
       
@@ -0,0 +1,120 @@
+/**
+ * Project: STMv2 Package: stm File: AdmissionControllerTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 12:14:51 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the adjustments of the {@link AdmissionController}'s limit.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.AdmissionControllerTest
+ */
+public class AdmissionControllerTest {
+  
+  @Test
+  public void aWindowOfAbortsDecreasesTheLimitMultiplicatively() {
+    AdmissionController admission = new AdmissionController(16, 32);
+    for (int i = 0; i < 16; i++) admission.recordAbort();
+    assertEquals(12, admission.getLimit());
+  }
+  
+  @Test
+  public void aQuietWindowIncreasesTheLimit() {
+    AdmissionController admission = new AdmissionController(16, 32);
+    for (int i = 0; i < 16; i++) admission.recordCommit(1000);
+    assertEquals(17, admission.getLimit());
+  }
+  
+  @Test
+  public void theWaitingTransactionsStartOutsideTheMonitor() {
+    
+    AdmissionController admission = new AdmissionController(1, 32);
+    List<Boolean> heldTheMonitor = new ArrayList<>();
+    
+    admission.admit(() -> {});
+    admission.admit(() -> heldTheMonitor.add(Thread.holdsLock(admission)));
+    admission.admit(() -> heldTheMonitor.add(Thread.holdsLock(admission)));
+    assertEquals(2, admission.getQueued());
+    
+    // the first start is let in by the release, the second by the raised limit
+    //
+    admission.release();
+    for (int i = 0; i < 16; i++) admission.recordCommit(1000);
+    
+    assertEquals(0, admission.getQueued());
+    assertEquals(2, heldTheMonitor.size());
+    assertFalse(heldTheMonitor.contains(true));
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void theCrossPartitionTransactionsAreAdmitted() throws InterruptedException {
+    
+    STM stm = new STM();
+    PartitionedExecutor executor = new PartitionedExecutor(stm, 4);
+    
+    // a pair of accounts in different partitions, found through the workers running them
+    //
+    Map<String, TVar> byHome = new HashMap<>();
+    while (byHome.size() < 2) {
+      TVar account = stm.newTVar(new AccountState(50));
+      String[] home = new String[1];
+      executor.submit(Collections.singletonList(account), t -> {
+        home[0] = Thread.currentThread().getName();
+        return true;
+      }).await(5, TimeUnit.SECONDS);
+      byHome.putIfAbsent(home[0], account);
+    }
+    TVar[] pair = byHome.values().toArray(new TVar[2]);
+    
+    AdmissionController admission = new AdmissionController(1, 32);
+    stm.setAdmissionController(admission);
+    
+    // the only slot is taken by a running transaction
+    //
+    AtomicBoolean isReleased = new AtomicBoolean();
+    TransactionHandle running = stm.perform(t -> {
+      while (!isReleased.get()) Thread.onSpinWait();
+      return true;
+    });
+    
+    TransactionHandle crossing = executor.submit(Arrays.asList(pair), t -> t.write(pair[0], new AccountState(0))
+        && t.write(pair[1], new AccountState(100)));
+    
+    Thread.sleep(200);
+    assertEquals(1, admission.getQueued());
+    assertFalse(crossing.isDone());
+    
+    // the single partition transactions aren't held back
+    //
+    assertEquals(Outcome.COMMITTED, executor.submit(Collections.singletonList(pair[1]),
+        t -> t.write(pair[1], new AccountState(75))).await(5, TimeUnit.SECONDS));
+    
+    isReleased.set(true);
+    assertEquals(Outcome.COMMITTED, running.await(5, TimeUnit.SECONDS));
+    assertEquals(Outcome.COMMITTED, crossing.await(5, TimeUnit.SECONDS));
+    assertEquals(0, admission.getInFlight());
+    assertEquals(100, ((AccountState) ((MemoryCell) pair[1]).peek()).getBalance());
+    
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Project: STMv2 Package: stm File: BatchExecutorTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 11:02:15 AM
+ */
+package stm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Runs batches of conflicting transfers through the {@link BatchExecutor} and checks them against
+ * running the same transfers one after the other.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.BatchExecutorTest
+ */
+public class BatchExecutorTest {
+  
+  private static final int ACCOUNTS = 8;
+  
+  private static final int TRANSFERS = 2000;
+  
+  private static final int RUNS = 20;
+  
+  @Test
+  public void conflictingBatchesMatchTheSequentialRun() {
+    
+    for (int run = 0; run < RUNS; run++) {
+      
+      STM stm = new STM();
+      BatchExecutor executor = new BatchExecutor(stm, 8);
+      
+      TVar[] accounts = new TVar[ACCOUNTS];
+      int[] balances = new int[ACCOUNTS];
+      for (int i = 0; i < ACCOUNTS; i++) {
+        accounts[i] = stm.newTVar(new AccountState(50));
+        balances[i] = 50;
+      }
+      
+      // the sequential run is worked out on the side, a transfer fails when the balance is too low
+      //
+      Random random = new Random(run);
+      List<Function<Transaction, Boolean>> batch = new ArrayList<>();
+      List<Boolean> statuses = new ArrayList<>();
+      
+      for (int i = 0; i < TRANSFERS; i++) {
+        
+        int from = random.nextInt(ACCOUNTS);
+        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        int amount = 1 + random.nextInt(30);
+        
+        batch.add(transfer(accounts[from], accounts[to], amount));
+        
+        statuses.add(balances[from] >= amount);
+        if (balances[from] >= amount) {
+          balances[from] = balances[from] - amount;
+          balances[to] = balances[to] + amount;
+        }
+      }
+      
+      assertEquals("run " + run, statuses, executor.execute(batch));
+      assertArrayEquals("run " + run, balances, balancesOf(accounts));
+      
+      executor.shutdown();
+    }
+  }
+  
+  @Test(timeout = 10000)
+  public void aFailingWorkerStopsTheBatch() {
+    
+    STM stm = new STM();
+    BatchExecutor executor = new BatchExecutor(stm, 4);
+    
+    TVar[] accounts = { stm.newTVar(new AccountState(50)), stm.newTVar(new AccountState(50)) };
+    
+    List<Function<Transaction, Boolean>> batch = new ArrayList<>();
+    for (int i = 0; i < 100; i++) batch.add(transfer(accounts[0], accounts[1], 1));
+    batch.set(50, t -> {
+      throw new AssertionError("broken");
+    });
+    
+    try {
+      executor.execute(batch);
+      fail("The batch should have been abandoned");
+    } catch (IllegalStateException e) {
+      // expected, nothing was written
+    }
+    
+    assertArrayEquals(new int[] { 50, 50 }, balancesOf(accounts));
+    
+    // the STM was released
+    //
+    batch.remove(50);
+    executor.execute(batch);
+    assertArrayEquals(new int[] { 0, 100 }, balancesOf(accounts));
+    
+    executor.shutdown();
+  }
+  
+  @Test(timeout = 10000)
+  public void anInterruptedCallerKeepsItsInterrupt() {
+    
+    STM stm = new STM();
+    BatchExecutor executor = new BatchExecutor(stm, 4);
+    
+    TVar[] accounts = { stm.newTVar(new AccountState(50)), stm.newTVar(new AccountState(50)) };
+    List<Function<Transaction, Boolean>> batch = new ArrayList<>();
+    for (int i = 0; i < 100; i++) batch.add(transfer(accounts[0], accounts[1], 1));
+    
+    Thread.currentThread().interrupt();
+    try {
+      executor.execute(batch);
+      fail("The batch should have been abandoned");
+    } catch (IllegalStateException e) {
+      assertTrue(Thread.interrupted());
+    }
+    
+    assertArrayEquals(new int[] { 50, 50 }, balancesOf(accounts));
+    
+    executor.execute(batch.subList(0, 10));
+    assertArrayEquals(new int[] { 40, 60 }, balancesOf(accounts));
+    
+    executor.shutdown();
+  }
+  
+  private static Function<Transaction, Boolean> transfer(TVar from, TVar to, int amount) {
+    return t -> {
+      AccountState source = t.read(from, AccountState.class);
+      AccountState destination = t.read(to, AccountState.class);
+      try {
+        source.withdraw(amount);
+      } catch (Exception e) {
+        return false;
+      }
+      destination.deposit(amount);
+      return t.write(from, source) && t.write(to, destination);
+    };
+  }
+  
+  private static int[] balancesOf(TVar[] accounts) {
+    return Arrays.stream(accounts).mapToInt(a -> ((AccountState) ((MemoryCell) a).peek()).getBalance()).toArray();
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Project: STMv2 Package: stm File: ConflictSchedulerTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 4:12:31 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks that the {@link ConflictScheduler} serializes the conflicting transactions by moving the
+ * losers behind the winners, and that its shut down leaves no handle waiting.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.ConflictSchedulerTest
+ */
+public class ConflictSchedulerTest {
+  
+  private static final int INCREMENTS = 2000;
+  
+  @Test(timeout = 30000)
+  @SuppressWarnings("unchecked")
+  public void contendedIncrementsAreSerializedBehindTheWinners() throws InterruptedException {
+    
+    STM stm = new STM();
+    ConflictScheduler scheduler = new ConflictScheduler(stm, 4);
+    TVar counter = stm.newTVar(new AccountState(0));
+    
+    List<TransactionHandle> handles = new ArrayList<>();
+    for (int i = 0; i < INCREMENTS; i++) {
+      handles.add(scheduler.submit(t -> {
+        AccountState state = t.read(counter, AccountState.class);
+        
+        // widens the window between the read and the commit, so the workers keep conflicting
+        //
+        long until = System.nanoTime() + 20_000;
+        while (System.nanoTime() < until) Thread.onSpinWait();
+        
+        state.deposit(1);
+        return t.write(counter, state);
+      }));
+    }
+    
+    for (TransactionHandle handle : handles) assertEquals(Outcome.COMMITTED, handle.await(10, TimeUnit.SECONDS));
+    
+    assertEquals(INCREMENTS, balanceOf(counter));
+    assertTrue("steals " + scheduler.getSteals(), scheduler.getSteals() > 0);
+    
+    scheduler.shutdown();
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void theShutdownCancelsTheQueuedAndBlockedTransactions() throws InterruptedException {
+    
+    STM stm = new STM();
+    ConflictScheduler scheduler = new ConflictScheduler(stm, 1);
+    TVar account = stm.newTVar(new AccountState(0));
+    
+    // blocks till the account is written into, which never happens
+    //
+    TransactionHandle blocked = scheduler.submit(t -> {
+      if (t.read(account, AccountState.class).getBalance() == 0) return t.retry();
+      return true;
+    });
+    
+    // keeps the only worker busy so that the next transaction stays queued
+    //
+    AtomicBoolean isReleased = new AtomicBoolean();
+    TransactionHandle running = scheduler.submit(t -> {
+      while (!isReleased.get()) Thread.onSpinWait();
+      return true;
+    });
+    
+    TransactionHandle queued = scheduler.submit(t -> t.write(account, new AccountState(100)));
+    
+    Thread shutdown = new Thread(scheduler::shutdown);
+    shutdown.start();
+    Thread.sleep(200);
+    isReleased.set(true);
+    shutdown.join();
+    
+    assertEquals(Outcome.COMMITTED, running.await(5, TimeUnit.SECONDS));
+    assertEquals(Outcome.CANCELLED, queued.await(5, TimeUnit.SECONDS));
+    assertEquals(Outcome.CANCELLED, blocked.await(5, TimeUnit.SECONDS));
+    assertEquals(0, balanceOf(account));
+    
+    // the transactions submitted after the shut down are cancelled right away
+    //
+    assertEquals(Outcome.CANCELLED, scheduler.submit(t -> true).await(5, TimeUnit.SECONDS));
+  }
+  
+  private static int balanceOf(TVar tVar) {
+    return ((AccountState) ((MemoryCell) tVar).peek()).getBalance();
+  }
+}
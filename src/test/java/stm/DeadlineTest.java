@@ -0,0 +1,99 @@
+/**
+ * Project: STMv2 Package: stm File: DeadlineTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 5:52:20 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks that a transaction whose deadline passes while it is blocked ends as
+ * {@link Outcome#TIMED_OUT} without writing anything, whichever path runs it.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.DeadlineTest
+ */
+public class DeadlineTest {
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void aBlockedTransactionTimesOut() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(50));
+    
+    long start = System.nanoTime();
+    TransactionHandle handle = stm.perform(100, TimeUnit.MILLISECONDS, withdraw(account, 80));
+    
+    assertEquals(Outcome.TIMED_OUT, handle.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals(50, balanceOf(account));
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void aTransactionCommittingBeforeItsDeadlineIsntAffected() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(50));
+    
+    TransactionHandle handle = stm.perform(5, TimeUnit.SECONDS, withdraw(account, 80));
+    Thread.sleep(100);
+    stm.atomically(t -> t.write(account, new AccountState(100)));
+    
+    assertEquals(Outcome.COMMITTED, handle.await(5, TimeUnit.SECONDS));
+    assertEquals(20, balanceOf(account));
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void theExecutorsTimeOutTheirBlockedTransactions() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(50));
+    
+    ConflictScheduler scheduler = new ConflictScheduler(stm, 2);
+    PartitionedExecutor executor = new PartitionedExecutor(stm, 2);
+    
+    TransactionHandle scheduled = scheduler.submit(100, TimeUnit.MILLISECONDS, withdraw(account, 80));
+    TransactionHandle partitioned = executor.submit(100, TimeUnit.MILLISECONDS, Collections.singletonList(account),
+        withdraw(account, 80));
+    
+    assertEquals(Outcome.TIMED_OUT, scheduled.await(5, TimeUnit.SECONDS));
+    assertEquals(Outcome.TIMED_OUT, partitioned.await(5, TimeUnit.SECONDS));
+    assertEquals(50, balanceOf(account));
+    
+    scheduler.shutdown();
+    executor.shutdown();
+  }
+  
+  /**
+   * @return The action withdrawing the amount, blocked till the balance covers it.
+   */
+  private static Function<Transaction, Boolean> withdraw(TVar account, int amount) {
+    return t -> {
+      AccountState state = t.read(account, AccountState.class);
+      try {
+        state.withdraw(amount);
+      } catch (Exception e) {
+        return t.retry();
+      }
+      return t.write(account, state);
+    };
+  }
+  
+  private static int balanceOf(TVar tVar) {
+    return ((AccountState) ((MemoryCell) tVar).peek()).getBalance();
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Project: STMv2 Package: stm File: DescriptorTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 1:41:30 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks that the thread's descriptor of {@link STM#atomically(java.util.function.Function)} doesn't
+ * keep the STM or its memory cells reachable once the transaction is over.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.DescriptorTest
+ */
+public class DescriptorTest {
+  
+  @Test
+  public void anIdleDescriptorLetsGoOfItsSTMAndCells() throws InterruptedException {
+    
+    WeakReference<STM> stm = new WeakReference<>(new STM());
+    WeakReference<TVar> tVar = new WeakReference<>(stm.get().newTVar(new AccountState(50)));
+    
+    assertEquals(Outcome.COMMITTED, stm.get().atomically(t -> {
+      AccountState state = t.read(tVar.get(), AccountState.class);
+      state.deposit(10);
+      return t.write(tVar.get(), state);
+    }));
+    
+    for (int i = 0; i < 50 && (!isNull(stm) || !isNull(tVar)); i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    
+    assertNull(tVar.get());
+    assertNull(stm.get());
+  }
+  
+  @Test
+  public void theDescriptorIsReusedAfterItIsParked() {
+    
+    STM stm = new STM();
+    TVar tVar = stm.newTVar(new AccountState(50));
+    
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+        AccountState state = t.read(tVar, AccountState.class);
+        state.deposit(1);
+        return t.write(tVar, state);
+      }));
+    }
+    
+    assertEquals(60, ((AccountState) ((MemoryCell) tVar).peek()).getBalance());
+  }
+  
+  private static boolean isNull(WeakReference<?> ref) {
+    return ref.get() == null;
+  }
+}
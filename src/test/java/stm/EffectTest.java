@@ -0,0 +1,191 @@
+/**
+ * Project: STMv2 Package: stm File: EffectTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 6:18:42 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the effects registered through {@link Transaction#afterCommit(Runnable)} and
+ * {@link Transaction#afterAbort(Runnable)}: which of them run depending on the outcome, that the
+ * rolled back attempts don't leave theirs behind, and that the effect thread outlives the failing
+ * effects and stops with the STM.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.EffectTest
+ */
+public class EffectTest {
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void theCommitEffectsRunOnceAfterTheCommit() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(0));
+    AtomicInteger runs = new AtomicInteger();
+    List<String> ran = new CopyOnWriteArrayList<>();
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      int run = runs.incrementAndGet();
+      AccountState state = t.read(account, AccountState.class);
+      
+      // the first attempt loses to a concurrent writer and is rolled back with its effects
+      //
+      if (run == 1) commitConcurrently(stm, account, 10);
+      
+      t.afterCommit(() -> ran.add("commit " + run + " saw " + balanceOf(account)));
+      t.afterAbort(() -> ran.add("abort " + run));
+      state.deposit(5);
+      return t.write(account, state);
+    }));
+    
+    awaitEffects(stm);
+    
+    assertEquals(2, runs.get());
+    assertEquals(Collections.singletonList("commit 2 saw 15"), ran);
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void theAbortEffectsRunWhenTheTransactionGivesUp() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(0));
+    List<String> ran = new CopyOnWriteArrayList<>();
+    
+    TransactionHandle handle = stm.perform(100, TimeUnit.MILLISECONDS, t -> {
+      t.afterCommit(() -> ran.add("commit"));
+      t.afterAbort(() -> ran.add("abort"));
+      if (t.read(account, AccountState.class).getBalance() == 0) return t.retry();
+      return true;
+    });
+    
+    assertEquals(Outcome.TIMED_OUT, handle.await(5, TimeUnit.SECONDS));
+    awaitEffects(stm);
+    
+    assertEquals(Collections.singletonList("abort"), ran);
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void theMergedChildrenHandTheirEffectsToTheParent() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(0));
+    List<String> ran = new CopyOnWriteArrayList<>();
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      t.afterCommit(() -> ran.add("parent"));
+      t.nested(child -> {
+        child.afterCommit(() -> ran.add("merged child"));
+        return child.write(account, new AccountState(1));
+      });
+      t.nested(child -> {
+        child.afterCommit(() -> ran.add("failed child"));
+        return false;
+      });
+      return t.fork(child -> {
+        child.afterCommit(() -> ran.add("forked child"));
+        return true;
+      });
+    }));
+    
+    awaitEffects(stm);
+    
+    assertEquals(Arrays.asList("parent", "merged child", "forked child"), ran);
+  }
+  
+  @Test(timeout = 10000)
+  public void aFailingEffectDoesntStopTheLaterOnes() throws InterruptedException {
+    
+    STM stm = new STM();
+    
+    stm.atomically(t -> {
+      t.afterCommit(() -> {
+        throw new AssertionError("broken");
+      });
+      t.afterCommit(() -> {
+        throw new IllegalStateException("broken");
+      });
+      return true;
+    });
+    
+    awaitEffects(stm);
+  }
+  
+  @Test(timeout = 10000)
+  public void theShutdownStopsTheThreadsOfTheSTM() throws InterruptedException {
+    
+    STM stm = new STM();
+    
+    Thread[] threads = new Thread[2];
+    CountDownLatch started = new CountDownLatch(2);
+    stm.schedule(() -> {
+      threads[0] = Thread.currentThread();
+      started.countDown();
+    }, 0, TimeUnit.MILLISECONDS);
+    stm.atomically(t -> {
+      t.afterCommit(() -> {
+        threads[1] = Thread.currentThread();
+        started.countDown();
+      });
+      return true;
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    
+    stm.shutdown();
+    
+    for (Thread thread : threads) {
+      thread.join(5000);
+      assertFalse(thread.getName(), thread.isAlive());
+    }
+    
+    // the STM is still usable, the threads are started again
+    //
+    awaitEffects(stm);
+    stm.shutdown();
+  }
+  
+  /**
+   * Waits for the effects handed over so far, the effects run in order on a single thread.
+   */
+  private static void awaitEffects(STM stm) throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    stm.atomically(t -> {
+      t.afterCommit(latch::countDown);
+      return true;
+    });
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+  
+  private static void commitConcurrently(STM stm, TVar tVar, int balance) {
+    Thread thread = new Thread(() -> stm.atomically(t -> t.write(tVar, new AccountState(balance))));
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static int balanceOf(TVar tVar) {
+    return ((AccountState) ((MemoryCell) tVar).peek()).getBalance();
+  }
+}
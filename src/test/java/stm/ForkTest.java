@@ -0,0 +1,107 @@
+/**
+ * Project: STMv2 Package: stm File: ForkTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 5:21:09 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks that the children of {@link Transaction#fork(java.util.function.Function...)} are joined as
+ * if they had run one after the other in order, and all or none of them are merged.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.ForkTest
+ */
+public class ForkTest {
+  
+  @Test
+  @SuppressWarnings("unchecked")
+  public void independentChildrenAreAllMergedAfterASingleRun() {
+    
+    STM stm = new STM();
+    TVar[] accounts = { stm.newTVar(new AccountState(0)), stm.newTVar(new AccountState(0)),
+        stm.newTVar(new AccountState(0)) };
+    AtomicInteger runs = new AtomicInteger();
+    boolean[] joined = { false };
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      joined[0] = t.fork(deposit(accounts[0], 1, runs), deposit(accounts[1], 2, runs), deposit(accounts[2], 3, runs));
+      return joined[0];
+    }));
+    
+    assertTrue(joined[0]);
+    assertEquals(3, runs.get());
+    assertEquals(1, balanceOf(accounts[0]));
+    assertEquals(2, balanceOf(accounts[1]));
+    assertEquals(3, balanceOf(accounts[2]));
+  }
+  
+  @Test
+  @SuppressWarnings("unchecked")
+  public void aChildReadingASiblingsWriteIsRunAgainOnTopOfIt() {
+    
+    STM stm = new STM();
+    TVar x = stm.newTVar(new AccountState(0));
+    TVar y = stm.newTVar(new AccountState(0));
+    AtomicInteger secondRuns = new AtomicInteger();
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> t.fork(first -> first.write(x, new AccountState(10)), second -> {
+      secondRuns.incrementAndGet();
+      int balance = second.read(x, AccountState.class).getBalance();
+      return second.write(y, new AccountState(balance + 1));
+    })));
+    
+    // the same as running the first child and then the second
+    //
+    assertEquals(2, secondRuns.get());
+    assertEquals(10, balanceOf(x));
+    assertEquals(11, balanceOf(y));
+  }
+  
+  @Test
+  @SuppressWarnings("unchecked")
+  public void aFailingChildMergesNoneOfTheChildren() {
+    
+    STM stm = new STM();
+    TVar x = stm.newTVar(new AccountState(0));
+    TVar y = stm.newTVar(new AccountState(0));
+    boolean[] joined = { true };
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      joined[0] = t.fork(first -> first.write(x, new AccountState(10)), second -> {
+        second.write(y, new AccountState(20));
+        return false;
+      });
+      return true;
+    }));
+    
+    assertFalse(joined[0]);
+    assertEquals(0, balanceOf(x));
+    assertEquals(0, balanceOf(y));
+  }
+  
+  private static Function<Transaction, Boolean> deposit(TVar account, int amount, AtomicInteger runs) {
+    return t -> {
+      runs.incrementAndGet();
+      AccountState state = t.read(account, AccountState.class);
+      state.deposit(amount);
+      return t.write(account, state);
+    };
+  }
+  
+  private static int balanceOf(TVar tVar) {
+    return ((AccountState) ((MemoryCell) tVar).peek()).getBalance();
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Project: STMv2 Package: stm File: IrrevocableTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 5:37:55 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks that an irrevocable transaction commits on its first attempt while holding off the other
+ * writers, and that a starving transaction is escalated to the irrevocable mode.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.IrrevocableTest
+ */
+public class IrrevocableTest {
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void anIrrevocableTransactionCommitsOnItsFirstAttempt() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(50));
+    AtomicInteger runs = new AtomicInteger();
+    boolean[] wasIrrevocable = { false };
+    int[] seenByTheWriter = { -1 };
+    
+    Thread[] writer = new Thread[1];
+    
+    TransactionHandle handle = stm.performIrrevocably(t -> {
+      
+      runs.incrementAndGet();
+      wasIrrevocable[0] = t.isIrrevocable();
+      AccountState state = t.read(account, AccountState.class);
+      
+      // a concurrent writer can't commit while the transaction holds the STM
+      //
+      writer[0] = new Thread(() -> stm.atomically(w -> {
+        AccountState other = w.read(account, AccountState.class);
+        seenByTheWriter[0] = other.getBalance();
+        other.deposit(1);
+        return w.write(account, other);
+      }));
+      writer[0].start();
+      try {
+        Thread.sleep(200);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      
+      state.deposit(100);
+      return t.write(account, state);
+    });
+    
+    assertEquals(Outcome.COMMITTED, handle.await(5, TimeUnit.SECONDS));
+    writer[0].join();
+    
+    assertEquals(1, runs.get());
+    assertTrue(wasIrrevocable[0]);
+    
+    // the writer committed on top of the irrevocable transaction
+    //
+    assertEquals(150, seenByTheWriter[0]);
+    assertEquals(151, balanceOf(account));
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void aStarvingTransactionIsEscalated() {
+    
+    STM stm = new STM();
+    stm.setEscalationThreshold(2);
+    TVar account = stm.newTVar(new AccountState(0));
+    AtomicInteger runs = new AtomicInteger();
+    boolean[] wasIrrevocable = new boolean[3];
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      
+      int run = runs.getAndIncrement();
+      wasIrrevocable[run] = t.isIrrevocable();
+      AccountState state = t.read(account, AccountState.class);
+      
+      // the first two attempts lose to a concurrent writer, the escalated one can't
+      //
+      if (run < 2) commitConcurrently(stm, account, run + 1);
+      
+      state.deposit(100);
+      return t.write(account, state);
+    }));
+    
+    assertEquals(3, runs.get());
+    assertArrayEquals(new boolean[] { false, false, true }, wasIrrevocable);
+    assertEquals(102, balanceOf(account));
+  }
+  
+  private static void commitConcurrently(STM stm, TVar tVar, int balance) {
+    Thread thread = new Thread(() -> stm.atomically(t -> t.write(tVar, new AccountState(balance))));
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static int balanceOf(TVar tVar) {
+    return ((AccountState) ((MemoryCell) tVar).peek()).getBalance();
+  }
+}
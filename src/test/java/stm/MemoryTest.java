@@ -0,0 +1,90 @@
+/**
+ * Project: STMv2 Package: stm File: MemoryTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 3:48:10 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the additions and removals of the {@link Memory}, and that its directory of pages follows
+ * the IDs in use.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.MemoryTest
+ */
+public class MemoryTest {
+  
+  /**
+   * The IDs in a page of the memory.
+   */
+  private static final int PAGE_SIZE = 4096;
+  
+  /**
+   * The memory cells in use at any time, a few pages worth.
+   */
+  private static final int LIVE = 3 * PAGE_SIZE;
+  
+  @Test
+  public void theDirectoryStaysFlatWhenOldCellsGo() {
+    
+    Memory memory = new Memory();
+    Value value = new AccountState();
+    Deque<MemoryCell> live = new ArrayDeque<>();
+    
+    // a sliding window of memory cells, far past the pages the window spans
+    //
+    for (long ID = 0; ID < 200L * PAGE_SIZE; ID++) {
+      MemoryCell memCell = new MemoryCell(ID, value);
+      memory.add(memCell);
+      live.addLast(memCell);
+      if (live.size() > LIVE) assertTrue(memory.remove(live.removeFirst()));
+    }
+    
+    assertTrue("directory of " + memory.directorySize(), memory.directorySize() <= 16);
+    assertEquals(new ArrayList<>(live), memory.cells());
+    
+    // the memory cells of the dropped pages aren't found, the live ones are
+    //
+    assertFalse(memory.remove(new MemoryCell(0, value)));
+    for (MemoryCell memCell : live) assertTrue(memory.remove(memCell));
+    assertTrue(memory.cells().isEmpty());
+  }
+  
+  @Test
+  public void aPageStaysWhileOneOfItsCellsIsLeft() {
+    
+    Memory memory = new Memory();
+    Value value = new AccountState();
+    List<MemoryCell> kept = new ArrayList<>();
+    
+    // the first cell of every page stays, so no page is released
+    //
+    for (long ID = 0; ID < 64L * PAGE_SIZE; ID++) {
+      MemoryCell memCell = new MemoryCell(ID, value);
+      memory.add(memCell);
+      if (ID % PAGE_SIZE == 0) {
+        kept.add(memCell);
+      } else {
+        assertTrue(memory.remove(memCell));
+      }
+    }
+    
+    assertEquals(kept, memory.cells());
+    for (MemoryCell memCell : kept) assertTrue(memory.remove(memCell));
+    assertTrue(memory.cells().isEmpty());
+  }
+}
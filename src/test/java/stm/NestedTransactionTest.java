@@ -0,0 +1,123 @@
+/**
+ * Project: STMv2 Package: stm File: NestedTransactionTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 5:02:48 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the partial rollbacks of {@link Transaction#nested(java.util.function.Function...)}: a
+ * failing or conflicting nested transaction is rolled back on its own, and one that keeps
+ * conflicting is merged after a bounded number of runs.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.NestedTransactionTest
+ */
+public class NestedTransactionTest {
+  
+  @Test
+  @SuppressWarnings("unchecked")
+  public void aFailingChildOnlyRollsBackItself() {
+    
+    STM stm = new STM();
+    TVar x = stm.newTVar(new AccountState(0));
+    TVar y = stm.newTVar(new AccountState(0));
+    boolean[] merged = { true };
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      t.write(x, new AccountState(10));
+      merged[0] = t.nested(child -> {
+        child.write(y, new AccountState(20));
+        return false;
+      });
+      return true;
+    }));
+    
+    assertFalse(merged[0]);
+    assertEquals(10, balanceOf(x));
+    assertEquals(0, balanceOf(y));
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void aConflictingChildIsRunAgainWithoutItsParent() {
+    
+    STM stm = new STM();
+    TVar x = stm.newTVar(new AccountState(0));
+    TVar y = stm.newTVar(new AccountState(1));
+    TVar z = stm.newTVar(new AccountState(0));
+    AtomicInteger parentRuns = new AtomicInteger();
+    AtomicInteger childRuns = new AtomicInteger();
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      parentRuns.incrementAndGet();
+      t.write(x, new AccountState(10));
+      return t.nested(child -> {
+        int balance = child.read(y, AccountState.class).getBalance();
+        
+        // y changes under the first run of the child
+        //
+        if (childRuns.incrementAndGet() == 1) commitConcurrently(stm, y, 5);
+        return child.write(z, new AccountState(balance * 100));
+      });
+    }));
+    
+    assertEquals(1, parentRuns.get());
+    assertEquals(2, childRuns.get());
+    assertEquals(10, balanceOf(x));
+    assertEquals(500, balanceOf(z));
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void aChildThatKeepsConflictingIsMergedAfterBoundedRuns() {
+    
+    STM stm = new STM();
+    TVar y = stm.newTVar(new AccountState(0));
+    TVar z = stm.newTVar(new AccountState(0));
+    AtomicInteger parentRuns = new AtomicInteger();
+    AtomicInteger childRuns = new AtomicInteger();
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      parentRuns.incrementAndGet();
+      return t.nested(child -> {
+        int balance = child.read(y, AccountState.class).getBalance();
+        
+        // y changes under each of the three runs of the child the parent allows, the merged
+        // child then fails the parent's commit and the whole transaction runs again
+        //
+        int run = childRuns.incrementAndGet();
+        if (run <= 3) commitConcurrently(stm, y, run);
+        return child.write(z, new AccountState(balance));
+      });
+    }));
+    
+    assertEquals(2, parentRuns.get());
+    assertEquals(4, childRuns.get());
+    assertEquals(3, balanceOf(z));
+  }
+  
+  private static void commitConcurrently(STM stm, TVar tVar, int balance) {
+    Thread thread = new Thread(() -> stm.atomically(t -> t.write(tVar, new AccountState(balance))));
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static int balanceOf(TVar tVar) {
+    return ((AccountState) ((MemoryCell) tVar).peek()).getBalance();
+  }
+}
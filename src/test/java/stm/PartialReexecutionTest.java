@@ -0,0 +1,178 @@
+/**
+ * Project: STMv2 Package: stm File: PartialReexecutionTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 12:37:26 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks that a transaction of many actions whose commit failed only re-executes the actions from
+ * the first one whose reads were invalidated, and the copy-on-first-write accesses
+ * {@link Transaction#peek(TVar, Class)} and {@link Transaction#modify(TVar, Class)} that the undo log
+ * restores on such a partial rollback.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.PartialReexecutionTest
+ */
+public class PartialReexecutionTest {
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void onlyTheInvalidatedActionsAreReexecuted() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar x = stm.newTVar(new AccountState(10));
+    TVar y = stm.newTVar(new AccountState(20));
+    TVar w = stm.newTVar(new AccountState(0));
+    TVar z = stm.newTVar(new AccountState(0));
+    TVar total = stm.newTVar(new AccountState(0));
+    
+    AtomicInteger[] executions = { new AtomicInteger(), new AtomicInteger(), new AtomicInteger() };
+    
+    TransactionHandle handle = stm.perform(t -> {
+      
+      // the prefix, its reads stay valid
+      //
+      executions[0].incrementAndGet();
+      int balance = t.read(x, AccountState.class).getBalance();
+      return t.write(w, new AccountState(balance * 10)) && t.write(z, new AccountState(1));
+    
+    }, t -> {
+      
+      // reads y, which is changed under it, and overwrites the z of the prefix
+      //
+      executions[1].incrementAndGet();
+      int balance = t.read(y, AccountState.class).getBalance();
+      AccountState state = t.read(z, AccountState.class);
+      state.deposit(balance);
+      return t.write(z, state);
+    
+    }, t -> {
+      
+      // the first execution lets a concurrent transaction commit into y before the commit
+      //
+      if (executions[2].incrementAndGet() == 1) commitConcurrently(stm, y, 25);
+      int sum = t.read(w, AccountState.class).getBalance() + t.read(z, AccountState.class).getBalance();
+      return t.write(total, new AccountState(sum));
+    });
+    
+    assertEquals(Outcome.COMMITTED, handle.await(5, TimeUnit.SECONDS));
+    
+    assertEquals(1, executions[0].get());
+    assertEquals(2, executions[1].get());
+    assertEquals(2, executions[2].get());
+    
+    // the same as running the whole transaction again after y changed
+    //
+    assertEquals(10, balanceOf(x));
+    assertEquals(25, balanceOf(y));
+    assertEquals(100, balanceOf(w));
+    assertEquals(26, balanceOf(z));
+    assertEquals(126, balanceOf(total));
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void modifyCopiesOnTheFirstWriteOfEachActionAndPeekDoesntCopy() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar x = stm.newTVar(new AccountState(10));
+    Value committed = ((MemoryCell) x).peek();
+    Object[] seen = new Object[5];
+    
+    TransactionHandle handle = stm.perform(t -> {
+      seen[0] = t.peek(x, AccountState.class);
+      AccountState first = t.modify(x, AccountState.class);
+      first.deposit(1);
+      seen[1] = first;
+      seen[2] = t.modify(x, AccountState.class);
+      seen[3] = t.peek(x, AccountState.class);
+      return true;
+    }, t -> {
+      AccountState second = t.modify(x, AccountState.class);
+      second.deposit(1);
+      seen[4] = second;
+      return true;
+    });
+    
+    assertEquals(Outcome.COMMITTED, handle.await(5, TimeUnit.SECONDS));
+    
+    // the peek hands out the committed value, the modify a single copy per action
+    //
+    assertSame(committed, seen[0]);
+    assertNotSame(committed, seen[1]);
+    assertSame(seen[1], seen[2]);
+    assertSame(seen[1], seen[3]);
+    assertNotSame(seen[1], seen[4]);
+    
+    assertEquals(12, balanceOf(x));
+    assertEquals(10, ((AccountState) committed).getBalance());
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void theUndoLogRestoresAValueModifiedAcrossActions() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar y = stm.newTVar(new AccountState(20));
+    TVar w = stm.newTVar(new AccountState(0));
+    TVar total = stm.newTVar(new AccountState(0));
+    
+    AtomicInteger[] executions = { new AtomicInteger(), new AtomicInteger(), new AtomicInteger() };
+    
+    TransactionHandle handle = stm.perform(t -> {
+      executions[0].incrementAndGet();
+      t.modify(w, AccountState.class).deposit(1);
+      return true;
+    }, t -> {
+      
+      // modifies the w of the first action, from a y that is changed under it
+      //
+      executions[1].incrementAndGet();
+      int balance = t.peek(y, AccountState.class).getBalance();
+      t.modify(w, AccountState.class).deposit(balance);
+      return true;
+    
+    }, t -> {
+      if (executions[2].incrementAndGet() == 1) commitConcurrently(stm, y, 25);
+      return t.write(total, new AccountState(t.peek(w, AccountState.class).getBalance()));
+    });
+    
+    assertEquals(Outcome.COMMITTED, handle.await(5, TimeUnit.SECONDS));
+    
+    assertEquals(1, executions[0].get());
+    assertEquals(2, executions[1].get());
+    assertEquals(2, executions[2].get());
+    
+    // the second action ran again on the w left by the first, not on its own earlier deposit
+    //
+    assertEquals(26, balanceOf(w));
+    assertEquals(26, balanceOf(total));
+  }
+  
+  private static void commitConcurrently(STM stm, TVar tVar, int balance) {
+    Thread thread = new Thread(() -> stm.atomically(t -> t.write(tVar, new AccountState(balance))));
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static int balanceOf(TVar tVar) {
+    return ((AccountState) ((MemoryCell) tVar).peek()).getBalance();
+  }
+}
@@ -0,0 +1,209 @@
+/**
+ * Project: STMv2 Package: stm File: PartitionedExecutorTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 4:40:17 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the routing of the {@link PartitionedExecutor}: the single partition transfers run on the
+ * worker of their partition without ever being re-executed, the cross partition ones fall back to
+ * their own threads, and neither loses money. Also checks that its shut down leaves no handle
+ * waiting.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.PartitionedExecutorTest
+ */
+public class PartitionedExecutorTest {
+  
+  private static final int PARTITIONS = 4;
+  
+  private static final int ACCOUNTS = 32;
+  
+  private static final int TRANSFERS = 2000;
+  
+  private static final int BALANCE = 1000;
+  
+  @Test(timeout = 30000)
+  @SuppressWarnings("unchecked")
+  public void singleAndCrossPartitionTransfersConserveTheBalances() throws InterruptedException {
+    
+    STM stm = new STM();
+    PartitionedExecutor executor = new PartitionedExecutor(stm, PARTITIONS);
+    
+    TVar[] accounts = new TVar[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) accounts[i] = stm.newTVar(new AccountState(BALANCE));
+    
+    // the worker running a transaction on a single account is the account's partition
+    //
+    String[] homes = new String[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      int account = i;
+      executor.submit(Collections.singletonList(accounts[i]), t -> {
+        homes[account] = Thread.currentThread().getName();
+        return true;
+      }).await(5, TimeUnit.SECONDS);
+      assertTrue(homes[i], homes[i].startsWith("stm-partition-"));
+    }
+    
+    // the single partition transfers are run by their partition, once, even while the cross
+    // partition transfers commit into the same accounts
+    //
+    Random random = new Random(42);
+    int[] balances = new int[ACCOUNTS];
+    Arrays.fill(balances, BALANCE);
+    Set<String> misrouted = ConcurrentHashMap.newKeySet();
+    AtomicInteger singleExecutions = new AtomicInteger();
+    int singles = 0;
+    List<TransactionHandle> handles = new ArrayList<>();
+    
+    for (int i = 0; i < TRANSFERS; i++) {
+      
+      int from = random.nextInt(ACCOUNTS);
+      int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+      boolean isSingle = homes[from].equals(homes[to]);
+      String home = isSingle ? homes[from] : null;
+      
+      Function<Transaction, Boolean> transfer = transfer(accounts[from], accounts[to], 1);
+      handles.add(executor.submit(Arrays.asList(accounts[from], accounts[to]), t -> {
+        String thread = Thread.currentThread().getName();
+        if (isSingle) {
+          singleExecutions.incrementAndGet();
+          if (!thread.equals(home)) misrouted.add(thread);
+        } else if (thread.startsWith("stm-partition-")) {
+          misrouted.add(thread);
+        }
+        return transfer.apply(t);
+      }));
+      
+      if (isSingle) singles = singles + 1;
+      balances[from] = balances[from] - 1;
+      balances[to] = balances[to] + 1;
+    }
+    
+    for (TransactionHandle handle : handles) assertEquals(Outcome.COMMITTED, handle.await(10, TimeUnit.SECONDS));
+    
+    // the random pairs land in both kinds
+    //
+    assertTrue(singles > 0 && singles < TRANSFERS);
+    assertEquals(singles, singleExecutions.get());
+    assertTrue(misrouted.toString(), misrouted.isEmpty());
+    
+    int[] actual = new int[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) actual[i] = balanceOf(accounts[i]);
+    assertEquals(Arrays.toString(balances), Arrays.toString(actual));
+    assertEquals(ACCOUNTS * BALANCE, Arrays.stream(actual).sum());
+    
+    executor.shutdown();
+  }
+  
+  @Test(timeout = 30000)
+  @SuppressWarnings("unchecked")
+  public void crossPartitionTransfersInBothDirectionsDontDeadlock() throws InterruptedException {
+    
+    STM stm = new STM();
+    PartitionedExecutor executor = new PartitionedExecutor(stm, PARTITIONS);
+    
+    // a pair of accounts in different partitions, found through the workers running them
+    //
+    Map<String, TVar> byHome = new HashMap<>();
+    while (byHome.size() < 2) {
+      TVar account = stm.newTVar(new AccountState(BALANCE));
+      String[] home = new String[1];
+      executor.submit(Collections.singletonList(account), t -> {
+        home[0] = Thread.currentThread().getName();
+        return true;
+      }).await(5, TimeUnit.SECONDS);
+      byHome.putIfAbsent(home[0], account);
+    }
+    TVar[] pair = byHome.values().toArray(new TVar[2]);
+    
+    List<TransactionHandle> handles = new ArrayList<>();
+    for (int i = 0; i < TRANSFERS; i++) {
+      TVar from = pair[i % 2];
+      TVar to = pair[(i + 1) % 2];
+      handles.add(executor.submit(Arrays.asList(from, to), transfer(from, to, 1 + i % 7)));
+    }
+    
+    for (TransactionHandle handle : handles) assertEquals(Outcome.COMMITTED, handle.await(10, TimeUnit.SECONDS));
+    assertEquals(2 * BALANCE, balanceOf(pair[0]) + balanceOf(pair[1]));
+    
+    executor.shutdown();
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void theShutdownCancelsTheQueuedAndBlockedTransactions() throws InterruptedException {
+    
+    STM stm = new STM();
+    PartitionedExecutor executor = new PartitionedExecutor(stm, 1);
+    TVar account = stm.newTVar(new AccountState(0));
+    List<TVar> footprint = Collections.singletonList(account);
+    
+    TransactionHandle blocked = executor.submit(footprint, t -> {
+      if (t.read(account, AccountState.class).getBalance() == 0) return t.retry();
+      return true;
+    });
+    
+    AtomicBoolean isReleased = new AtomicBoolean();
+    TransactionHandle running = executor.submit(footprint, t -> {
+      while (!isReleased.get()) Thread.onSpinWait();
+      return true;
+    });
+    
+    TransactionHandle queued = executor.submit(footprint, t -> t.write(account, new AccountState(100)));
+    
+    Thread shutdown = new Thread(executor::shutdown);
+    shutdown.start();
+    Thread.sleep(200);
+    isReleased.set(true);
+    shutdown.join();
+    
+    assertEquals(Outcome.COMMITTED, running.await(5, TimeUnit.SECONDS));
+    assertEquals(Outcome.CANCELLED, queued.await(5, TimeUnit.SECONDS));
+    assertEquals(Outcome.CANCELLED, blocked.await(5, TimeUnit.SECONDS));
+    assertEquals(0, balanceOf(account));
+    
+    assertEquals(Outcome.CANCELLED, executor.submit(footprint, t -> true).await(5, TimeUnit.SECONDS));
+  }
+  
+  private static Function<Transaction, Boolean> transfer(TVar from, TVar to, int amount) {
+    return t -> {
+      AccountState source = t.read(from, AccountState.class);
+      AccountState destination = t.read(to, AccountState.class);
+      try {
+        source.withdraw(amount);
+      } catch (Exception e) {
+        return false;
+      }
+      destination.deposit(amount);
+      return t.write(from, source) && t.write(to, destination);
+    };
+  }
+  
+  private static int balanceOf(TVar tVar) {
+    return ((AccountState) ((MemoryCell) tVar).peek()).getBalance();
+  }
+}
@@ -0,0 +1,161 @@
+/**
+ * Project: STMv2 Package: stm File: PrimitiveVarTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 3:22:36 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the typed accessors of the primitive transactional variables and the arenas, and that the
+ * boxed accessors reject them.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.PrimitiveVarTest
+ */
+public class PrimitiveVarTest {
+  
+  private static final int THREADS = 4;
+  
+  private static final int INCREMENTS = 1000;
+  
+  @Test
+  public void theTypedAccessorsRoundTrip() {
+    
+    STM stm = new STM();
+    TLongVar longVar = stm.newTLongVar(Long.MIN_VALUE);
+    TIntVar intVar = stm.newTIntVar(-7);
+    TDoubleVar doubleVar = stm.newTDoubleVar(-0.0);
+    
+    long[] read = new long[1];
+    int[] readInt = new int[1];
+    double[] readDouble = new double[1];
+    
+    stm.atomically(t -> {
+      read[0] = t.getLong(longVar);
+      readInt[0] = t.getInt(intVar);
+      readDouble[0] = t.getDouble(doubleVar);
+      return true;
+    });
+    
+    assertEquals(Long.MIN_VALUE, read[0]);
+    assertEquals(-7, readInt[0]);
+    assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(readDouble[0]));
+    
+    stm.atomically(t -> {
+      t.setLong(longVar, Long.MAX_VALUE);
+      t.setInt(intVar, Integer.MIN_VALUE);
+      t.setDouble(doubleVar, Double.NaN);
+      
+      // the transaction sees its own writes
+      //
+      return t.getLong(longVar) == Long.MAX_VALUE && t.getInt(intVar) == Integer.MIN_VALUE && Double.isNaN(t.getDouble(doubleVar));
+    });
+    
+    stm.atomically(t -> {
+      read[0] = t.getLong(longVar);
+      readInt[0] = t.getInt(intVar);
+      readDouble[0] = t.getDouble(doubleVar);
+      return true;
+    });
+    
+    assertEquals(Long.MAX_VALUE, read[0]);
+    assertEquals(Integer.MIN_VALUE, readInt[0]);
+    assertEquals(Double.NaN, readDouble[0], 0.0);
+  }
+  
+  @Test
+  public void concurrentIncrementsOfAVariableAndTheArenasAreAllKept() throws InterruptedException {
+    
+    STM stm = new STM();
+    TLongVar counter = stm.newTLongVar(0);
+    TLongArena onHeap = stm.newLongArena(4);
+    TLongArena offHeap = stm.newOffHeapLongArena(4);
+    
+    run(THREADS, () -> {
+      for (int i = 0; i < INCREMENTS; i++) {
+        int slot = i % 4;
+        stm.atomically(t -> {
+          t.setLong(counter, t.getLong(counter) + 1);
+          t.setLong(onHeap, slot, t.getLong(onHeap, slot) + 1);
+          t.setLong(offHeap, slot, t.getLong(offHeap, slot) + 1);
+          return true;
+        });
+      }
+    });
+    
+    long[] totals = new long[3];
+    stm.atomically(t -> {
+      totals[0] = t.getLong(counter);
+      for (int slot = 0; slot < 4; slot++) {
+        totals[1] = totals[1] + t.getLong(onHeap, slot);
+        totals[2] = totals[2] + t.getLong(offHeap, slot);
+      }
+      return true;
+    });
+    
+    assertEquals(THREADS * INCREMENTS, totals[0]);
+    assertEquals(THREADS * INCREMENTS, totals[1]);
+    assertEquals(THREADS * INCREMENTS, totals[2]);
+  }
+  
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void theArenaChecksItsIndices() {
+    STM stm = new STM();
+    TLongArena arena = stm.newLongArena(4);
+    stm.atomically(t -> t.getLong(arena, 4) == 0);
+  }
+  
+  @Test
+  public void theBoxedAccessorsRejectThePrimitives() {
+    
+    STM stm = new STM();
+    TVar[] primitives = { stm.newTLongVar(1), stm.newTIntVar(1), stm.newTDoubleVar(1), stm.newLongArena(1), stm.newOffHeapLongArena(1) };
+    
+    List<Function<TVar, Function<Transaction, Boolean>>> accesses = new ArrayList<>();
+    accesses.add(tVar -> t -> t.read(tVar, Value.class) != null);
+    accesses.add(tVar -> t -> t.peek(tVar, Value.class) != null);
+    accesses.add(tVar -> t -> t.modify(tVar, Value.class) != null);
+    accesses.add(tVar -> t -> t.write(tVar, new AccountState(1)));
+    
+    for (TVar tVar : primitives) {
+      for (Function<TVar, Function<Transaction, Boolean>> access : accesses) {
+        try {
+          stm.atomically(access.apply(tVar));
+          fail("The boxed access of " + tVar + " should have been rejected");
+        } catch (IllegalArgumentException e) {
+          // expected
+        }
+      }
+    }
+    
+    // the rejected writes didn't touch the variables
+    //
+    long[] read = new long[1];
+    stm.atomically(t -> {
+      read[0] = t.getLong((TLongVar) primitives[0]) + t.getLong((TLongArena) primitives[3], 0);
+      return true;
+    });
+    assertEquals(1, read[0]);
+  }
+  
+  private static void run(int nThreads, Runnable work) throws InterruptedException {
+    Thread[] threads = new Thread[nThreads];
+    for (int i = 0; i < nThreads; i++) {
+      threads[i] = new Thread(work);
+      threads[i].start();
+    }
+    for (Thread thread : threads) thread.join();
+  }
+}
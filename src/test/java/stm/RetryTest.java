@@ -0,0 +1,105 @@
+/**
+ * Project: STMv2 Package: stm File: RetryTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 11:40:08 AM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the blocking of {@link Transaction#retry()} and the alternatives of
+ * {@link Transaction#orElse(java.util.function.Function, java.util.function.Function)}.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.RetryTest
+ */
+public class RetryTest {
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void aBlockedWithdrawWakesUpOnALaterDeposit() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(50));
+    
+    TransactionHandle withdraw = stm.perform(t -> {
+      AccountState state = t.read(account, AccountState.class);
+      try {
+        state.withdraw(80);
+      } catch (Exception e) {
+        return t.retry();
+      }
+      return t.write(account, state);
+    });
+    
+    Thread.sleep(200);
+    assertFalse(withdraw.isDone());
+    assertEquals(50, balanceOf(account));
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> {
+      AccountState state = t.read(account, AccountState.class);
+      state.deposit(40);
+      return t.write(account, state);
+    }));
+    
+    assertEquals(Outcome.COMMITTED, withdraw.await(5, TimeUnit.SECONDS));
+    assertEquals(10, balanceOf(account));
+  }
+  
+  @Test(timeout = 10000)
+  @SuppressWarnings("unchecked")
+  public void aCatchOfExceptionDoesntSwallowTheRetry() throws InterruptedException {
+    
+    STM stm = new STM();
+    TVar account = stm.newTVar(new AccountState(50));
+    
+    TransactionHandle handle = stm.perform(t -> {
+      try {
+        return t.retry();
+      } catch (Exception e) {
+        return t.write(account, new AccountState(0));
+      }
+    });
+    
+    Thread.sleep(200);
+    assertFalse(handle.isDone());
+    assertEquals(50, balanceOf(account));
+    
+    handle.cancel();
+    assertEquals(Outcome.CANCELLED, handle.await(5, TimeUnit.SECONDS));
+    assertEquals(50, balanceOf(account));
+  }
+  
+  @Test
+  public void orElseDiscardsTheWritesOfTheFirstAlternative() {
+    
+    STM stm = new STM();
+    TVar first = stm.newTVar(new AccountState(50));
+    TVar second = stm.newTVar(new AccountState(50));
+    
+    assertEquals(Outcome.COMMITTED, stm.atomically(t -> t.orElse(t1 -> {
+      t1.write(first, new AccountState(1000));
+      return t1.retry();
+    }, t2 -> {
+      AccountState state = t2.read(second, AccountState.class);
+      state.deposit(5);
+      return t2.write(second, state);
+    })));
+    
+    assertEquals(50, balanceOf(first));
+    assertEquals(55, balanceOf(second));
+  }
+  
+  private static int balanceOf(TVar account) {
+    return ((AccountState) ((MemoryCell) account).peek()).getBalance();
+  }
+}
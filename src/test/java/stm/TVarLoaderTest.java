@@ -0,0 +1,128 @@
+/**
+ * Project: STMv2 Package: stm File: TVarLoaderTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 7:04:36 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the {@link TVarLoader} against a sequential parse of the same file, cut into segments of
+ * many sizes, and the bulk registration of {@link STM#newTVars(Stream)}.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.TVarLoaderTest
+ */
+public class TVarLoaderTest {
+  
+  private static final Function<String, Value> PARSER = line -> new AccountState(Integer.parseInt(line.trim()));
+  
+  /**
+   * The segment sizes, from a byte -- a segment per line -- to more than the file, 0 picks the
+   * default.
+   */
+  private static final long[] SEGMENTS = { 1, 2, 7, 64, 4096, 1L << 20, 0 };
+  
+  @Test
+  public void theSegmentsMatchTheSequentialParse() throws IOException {
+    
+    // lines of random lengths, with \r\n endings and empty lines here and there
+    //
+    Random random = new Random(7);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      text.append(random.nextInt(1 + random.nextInt(Integer.MAX_VALUE)) - (1 << 20));
+      text.append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+      if (random.nextInt(20) == 0) text.append("\n");
+    }
+    
+    for (String content : new String[] { text.toString(), text.toString() + "42", "42", "42\n", "" }) {
+      
+      Path file = write(content);
+      List<Integer> expected = sequential(file);
+      
+      for (long segmentSize : SEGMENTS) {
+        STM stm = new STM();
+        List<TVar> tVars = TVarLoader.load(stm, file, PARSER, segmentSize);
+        assertEquals("segments of " + segmentSize, expected, balancesOf(tVars));
+        for (TVar tVar : tVars) assertTrue(stm.exists(tVar));
+      }
+      
+      Files.delete(file);
+    }
+  }
+  
+  @Test
+  public void aBadLineFailsTheLoadBeforeAnyRegistration() throws IOException {
+    
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) text.append(i == 700 ? "oops" : Integer.toString(i)).append('\n');
+    Path file = write(text.toString());
+    
+    STM stm = new STM();
+    try {
+      TVarLoader.load(stm, file, PARSER, 64);
+      fail("The bad line should have failed the load");
+    } catch (NumberFormatException e) {
+      // expected
+    }
+    
+    // no ID was handed out
+    //
+    assertEquals(0, ((MemoryCell) stm.newTVar(new AccountState())).getID());
+    
+    Files.delete(file);
+  }
+  
+  @Test
+  public void theBulkRegistrationKeepsTheOrderOfTheValues() {
+    
+    STM stm = new STM();
+    stm.newTVar(new AccountState());
+    
+    List<TVar> tVars = stm.newTVars(Stream.iterate(0, i -> i + 1).limit(10000).parallel().map(AccountState::new));
+    
+    assertEquals(10000, tVars.size());
+    for (int i = 0; i < tVars.size(); i++) {
+      assertEquals(i, ((AccountState) ((MemoryCell) tVars.get(i)).peek()).getBalance());
+      assertEquals(i + 1, ((MemoryCell) tVars.get(i)).getID());
+      assertTrue(stm.exists(tVars.get(i)));
+    }
+    
+    assertEquals(0, stm.newTVars(new ArrayList<Value>().iterator()).size());
+  }
+  
+  private static Path write(String content) throws IOException {
+    Path file = Files.createTempFile("tvars", ".txt");
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+  
+  private static List<Integer> sequential(Path file) throws IOException {
+    return Files.readAllLines(file, StandardCharsets.UTF_8).stream().filter(line -> !line.isEmpty())
+        .map(line -> Integer.parseInt(line.trim())).collect(Collectors.toList());
+  }
+  
+  private static List<Integer> balancesOf(List<TVar> tVars) {
+    return tVars.stream().map(tVar -> ((AccountState) ((MemoryCell) tVar).peek()).getBalance()).collect(Collectors.toList());
+  }
+}
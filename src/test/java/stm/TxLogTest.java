@@ -0,0 +1,189 @@
+/**
+ * Project: STMv2 Package: stm File: TxLogTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 1:02:44 PM
+ */
+package stm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Objects;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Checks the lookups of the {@link TxLog} through its linear and hashed searches, its growth and its
+ * truncation.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.TxLogTest
+ */
+public class TxLogTest {
+  
+  /**
+   * Well past the linear search and a few growths of the arrays and the index.
+   */
+  private static final int ENTRIES = 200;
+  
+  @Test
+  public void putsAndLookupsAcrossTheSwitchToTheIndex() {
+    
+    TxLog log = new TxLog();
+    MemoryCell[] cells = cells(0, ENTRIES);
+    Value[] values = new Value[ENTRIES];
+    
+    for (int i = 0; i < ENTRIES; i++) {
+      values[i] = new AccountState(i);
+      assertNull(log.put(cells[i], values[i]));
+      assertEquals(i + 1, log.size());
+      
+      // every entry put so far is found after every put, the ones to come aren't
+      //
+      for (int j = 0; j <= i; j++) assertSame(values[j], log.get(cells[j]));
+      if (i + 1 < ENTRIES) assertEquals(-1, log.indexOf(cells[i + 1]));
+    }
+    
+    // the overwrites keep the positions and the size
+    //
+    for (int i = 0; i < ENTRIES; i = i + 3) {
+      Value overwrite = new AccountState(-i);
+      assertSame(values[i], log.put(cells[i], overwrite));
+      values[i] = overwrite;
+    }
+    
+    assertEquals(ENTRIES, log.size());
+    for (int i = 0; i < ENTRIES; i++) {
+      assertEquals(i, log.indexOf(cells[i]));
+      assertSame(cells[i], log.keyAt(i));
+      assertSame(values[i], log.valueAt(i));
+    }
+  }
+  
+  @Test
+  public void theCellsOfDifferentSTMsWithTheSameIDAreDifferentEntries() {
+    
+    TxLog log = new TxLog();
+    
+    // the same ID hashes into the same bucket, the probe sequence is as long as the log
+    //
+    MemoryCell[] cells = new MemoryCell[ENTRIES];
+    for (int i = 0; i < ENTRIES; i++) {
+      cells[i] = new MemoryCell(7, new AccountState(i));
+      log.put(cells[i], new AccountState(i));
+    }
+    
+    for (int i = 0; i < ENTRIES; i++) assertEquals(i, log.indexOf(cells[i]));
+  }
+  
+  @Test
+  public void theSlotsOfACellAreDifferentEntries() {
+    TxLog log = new TxLog();
+    MemoryCell arena = new MemoryCell(3, new AccountState());
+    for (int slot = 0; slot < ENTRIES; slot++) log.put(arena, slot, PrimitiveCell.BITS, slot * 10L);
+    for (int slot = 0; slot < ENTRIES; slot++) assertEquals(slot * 10L, log.bitsAt(log.indexOf(arena, slot)));
+    assertEquals(-1, log.indexOf(arena, ENTRIES));
+  }
+  
+  @Test
+  public void truncatedEntriesLeaveNothingStaleBehind() {
+    
+    MemoryCell[] cells = cells(0, ENTRIES);
+    
+    for (int size : new int[] { 0, 5, 8, 9, 100, ENTRIES - 1 }) {
+      
+      TxLog log = new TxLog();
+      for (int i = 0; i < ENTRIES; i++) log.put(cells[i], new AccountState(i));
+      
+      log.truncate(size);
+      
+      assertEquals(size, log.size());
+      for (int i = 0; i < size; i++) assertEquals(i, log.indexOf(cells[i]));
+      for (int i = size; i < ENTRIES; i++) assertEquals(-1, log.indexOf(cells[i]));
+      
+      // the truncated cells are put again at new positions, in reverse
+      //
+      for (int i = ENTRIES - 1; i >= size; i--) log.put(cells[i], new AccountState(-i));
+      for (int i = size; i < ENTRIES; i++) {
+        int index = log.indexOf(cells[i]);
+        assertEquals(size + ENTRIES - 1 - i, index);
+        assertEquals(-i, ((AccountState) log.valueAt(index)).getBalance());
+      }
+    }
+  }
+  
+  @Test
+  public void truncatingACollidingProbeSequence() {
+    
+    TxLog log = new TxLog();
+    MemoryCell[] cells = new MemoryCell[ENTRIES];
+    for (int i = 0; i < ENTRIES; i++) {
+      cells[i] = new MemoryCell(i % 2, new AccountState(i));
+      log.put(cells[i], new AccountState(i));
+    }
+    
+    log.truncate(ENTRIES / 2);
+    
+    for (int i = 0; i < ENTRIES / 2; i++) assertEquals(i, log.indexOf(cells[i]));
+    for (int i = ENTRIES / 2; i < ENTRIES; i++) assertEquals(-1, log.indexOf(cells[i]));
+  }
+  
+  @Test
+  public void bloomFalsePositivesAreSearched() {
+    
+    // a cell whose Bloom bit is the bit of the cell 0, but which isn't in the log
+    //
+    MemoryCell logged = new MemoryCell(0, new AccountState());
+    MemoryCell sharingTheBit = null;
+    for (long ID = 1; Objects.isNull(sharingTheBit); ID++) {
+      if (bloomBit(ID) == bloomBit(0)) sharingTheBit = new MemoryCell(ID, new AccountState());
+    }
+    
+    // searched linearly
+    //
+    TxLog log = new TxLog();
+    log.put(logged, new AccountState());
+    assertEquals(-1, log.indexOf(sharingTheBit));
+    
+    // searched through the index
+    //
+    for (MemoryCell memCell : cells(sharingTheBit.getID() + 1, ENTRIES)) log.put(memCell, new AccountState());
+    assertEquals(-1, log.indexOf(sharingTheBit));
+    assertEquals(0, log.indexOf(logged));
+    
+    // and found once it is put
+    //
+    log.put(sharingTheBit, new AccountState());
+    assertEquals(ENTRIES + 1, log.indexOf(sharingTheBit));
+  }
+  
+  @Test
+  public void clearingKeepsTheLogUsable() {
+    TxLog log = new TxLog();
+    MemoryCell[] cells = cells(0, ENTRIES);
+    for (MemoryCell memCell : cells) log.put(memCell, new AccountState());
+    log.clear();
+    assertTrue(log.isEmpty());
+    for (MemoryCell memCell : cells) assertEquals(-1, log.indexOf(memCell));
+    log.put(cells[42], new AccountState());
+    assertEquals(0, log.indexOf(cells[42]));
+  }
+  
+  private static MemoryCell[] cells(long firstID, int n) {
+    MemoryCell[] cells = new MemoryCell[n];
+    for (int i = 0; i < n; i++) cells[i] = new MemoryCell(firstID + i, new AccountState());
+    return cells;
+  }
+  
+  /**
+   * The bit of the memory cell with the ID at the slot 0 in the Bloom filter, as the log picks it.
+   */
+  private static long bloomBit(long ID) {
+    return 1L << ((ID * 0x9E3779B97F4A7C15L) >>> 58);
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Project: STMv2 Package: stm.persistent File: PersistentHashMapTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 2:44:52 PM
+ */
+package stm.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Fuzzes the {@link PersistentHashMap} against a {@link HashMap}, with keys whose hashes collide.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.persistent.PersistentHashMapTest
+ */
+public class PersistentHashMapTest {
+  
+  @Test
+  public void randomOperationsMatchAHashMap() {
+    fuzz(id -> Integer.hashCode(id) * 0x9E3779B9, 4096);
+  }
+  
+  @Test
+  public void fullyCollidingHashesMatchAHashMap() {
+    
+    // a handful of collision nodes, each holding many keys
+    //
+    fuzz(id -> id % 4, 256);
+  }
+  
+  @Test
+  public void hashesSharingTheirLowLevelsMatchAHashMap() {
+    
+    // the hashes only differ past the first few levels of the trie, and some not at all
+    //
+    fuzz(id -> (id % 64) << 25, 1024);
+  }
+  
+  @Test
+  public void theValuesAreComparedByIsEqual() {
+    
+    PersistentHashMap<String, AccountState> map = PersistentHashMap.<String, AccountState> empty().put("a", new AccountState(1));
+    
+    assertTrue(map.isEqual(PersistentHashMap.<String, AccountState> empty().put("a", new AccountState(1))));
+    assertFalse(map.isEqual(PersistentHashMap.<String, AccountState> empty().put("a", new AccountState(2))));
+  }
+  
+  /**
+   * Runs random puts and removes over the keys with the hashes, and compares the map after each.
+   */
+  private static void fuzz(IntUnaryOperator hash, int nKeys) {
+    
+    Random random = new Random(nKeys);
+    
+    PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+    Map<Key, Integer> reference = new HashMap<>();
+    
+    for (int step = 0; step < 30000; step++) {
+      
+      int id = random.nextInt(nKeys);
+      Key key = new Key(id, hash.applyAsInt(id));
+      
+      PersistentHashMap<Key, Integer> before = map;
+      int sizeBefore = map.size();
+      
+      if (random.nextInt(3) < 2) {
+        map = map.put(key, step);
+        reference.put(key, step);
+      } else {
+        map = map.remove(key);
+        reference.remove(key);
+      }
+      
+      assertEquals(reference.size(), map.size());
+      assertEquals(reference.get(key), map.get(key));
+      assertEquals(reference.containsKey(key), map.containsKey(key));
+      
+      // the earlier version is untouched
+      //
+      assertEquals(sizeBefore, before.size());
+      
+      if (step % 1000 == 0) assertSameEntries(reference, map);
+    }
+    
+    assertSameEntries(reference, map);
+    
+    // removing every key empties the map
+    //
+    for (Key key : reference.keySet()) map = map.remove(key);
+    assertTrue(map.isEmpty());
+  }
+  
+  private static void assertSameEntries(Map<Key, Integer> reference, PersistentHashMap<Key, Integer> map) {
+    Map<Key, Integer> entries = new HashMap<>();
+    map.forEach(entries::put);
+    assertEquals(reference, entries);
+    for (Map.Entry<Key, Integer> entry : reference.entrySet()) assertEquals(entry.getValue(), map.get(entry.getKey()));
+  }
+  
+  /**
+   * A key with a chosen hash.
+   */
+  private static final class Key {
+    
+    private final int id;
+    
+    private final int hash;
+    
+    Key(int id, int hash) {
+      this.id = id;
+      this.hash = hash;
+    }
+    
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && ((Key) obj).id == this.id;
+    }
+    
+    @Override
+    public String toString() {
+      return this.id + "#" + this.hash;
+    }
+  }
+}
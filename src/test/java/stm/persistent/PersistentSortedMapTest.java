@@ -0,0 +1,121 @@
+/**
+ * Project: STMv2 Package: stm.persistent File: PersistentSortedMapTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 2:58:20 PM
+ */
+package stm.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Fuzzes the {@link PersistentSortedMap} against a {@link TreeMap}, checking that it stays balanced.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.persistent.PersistentSortedMapTest
+ */
+public class PersistentSortedMapTest {
+  
+  private static final int KEYS = 5000;
+  
+  @Test
+  public void ascendingInsertsStayBalanced() {
+    PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty();
+    TreeMap<Integer, Integer> reference = new TreeMap<>();
+    for (int i = 0; i < KEYS; i++) {
+      map = map.put(i, i);
+      reference.put(i, i);
+      assertBalanced(map);
+    }
+    assertSameEntries(reference, map);
+  }
+  
+  @Test
+  public void descendingInsertsStayBalanced() {
+    PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty(Comparator.reverseOrder());
+    TreeMap<Integer, Integer> reference = new TreeMap<>(Comparator.reverseOrder());
+    for (int i = 0; i < KEYS; i++) {
+      map = map.put(i, i);
+      reference.put(i, i);
+      assertBalanced(map);
+    }
+    assertSameEntries(reference, map);
+  }
+  
+  @Test
+  public void randomOperationsMatchATreeMap() {
+    
+    Random random = new Random(47);
+    
+    PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty();
+    TreeMap<Integer, Integer> reference = new TreeMap<>();
+    
+    for (int step = 0; step < 30000; step++) {
+      
+      int key = random.nextInt(KEYS);
+      
+      if (random.nextInt(3) < 2) {
+        map = map.put(key, step);
+        reference.put(key, step);
+      } else {
+        map = map.remove(key);
+        reference.remove(key);
+      }
+      
+      assertEquals(reference.size(), map.size());
+      assertEquals(reference.get(key), map.get(key));
+      
+      int probe = random.nextInt(KEYS + 2) - 1;
+      assertEquals(reference.floorKey(probe), map.floorKey(probe));
+      assertEquals(reference.ceilingKey(probe), map.ceilingKey(probe));
+      assertEquals(reference.isEmpty() ? null : reference.firstKey(), map.firstKey());
+      assertEquals(reference.isEmpty() ? null : reference.lastKey(), map.lastKey());
+      
+      if (step % 100 == 0) assertBalanced(map);
+      if (step % 1000 == 0) assertSameEntries(reference, map);
+    }
+    
+    assertSameEntries(reference, map);
+    
+    // removing the keys in order rebalances all the way down
+    //
+    for (Integer key : new ArrayList<>(reference.keySet())) {
+      map = map.remove(key);
+      assertBalanced(map);
+    }
+    assertTrue(map.isEmpty());
+  }
+  
+  @Test
+  public void theValuesAreComparedByIsEqual() {
+    
+    PersistentSortedMap<String, AccountState> map = PersistentSortedMap.<String, AccountState> empty().put("a", new AccountState(1));
+    
+    assertTrue(map.isEqual(PersistentSortedMap.<String, AccountState> empty().put("a", new AccountState(1))));
+    assertFalse(map.isEqual(PersistentSortedMap.<String, AccountState> empty().put("a", new AccountState(2))));
+  }
+  
+  private static void assertBalanced(PersistentSortedMap<?, ?> map) {
+    double bound = 1.4405 * Math.log(map.size() + 2) / Math.log(2) - 0.3277;
+    assertTrue(map.height() + " > " + bound, map.height() <= bound);
+  }
+  
+  private static void assertSameEntries(TreeMap<Integer, Integer> reference, PersistentSortedMap<Integer, Integer> map) {
+    List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+    map.forEach((key, value) -> entries.add(new java.util.AbstractMap.SimpleEntry<>(key, value)));
+    assertEquals(new ArrayList<>(reference.entrySet()), entries);
+  }
+}
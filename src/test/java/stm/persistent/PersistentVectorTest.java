@@ -0,0 +1,133 @@
+/**
+ * Project: STMv2 Package: stm.persistent File: PersistentVectorTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 2:31:07 PM
+ */
+package stm.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import isolate.AccountState;
+
+/**
+ * Fuzzes the {@link PersistentVector} against an {@link ArrayList}.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.persistent.PersistentVectorTest
+ */
+public class PersistentVectorTest {
+  
+  /**
+   * Past the first leaf, the first trie level and the second trie level.
+   */
+  private static final int[] BOUNDARIES = { 31, 32, 33, 63, 64, 65, 1023, 1024, 1025, 1055, 1056, 1057, 1088, 33 * 1024, 33 * 1024 + 32, 33 * 1024 + 33 };
+  
+  @Test
+  public void growingAndShrinkingAcrossTheTailAndTrieBoundaries() {
+    
+    int max = BOUNDARIES[BOUNDARIES.length - 1] + 1;
+    
+    PersistentVector<Integer> vector = PersistentVector.empty();
+    List<PersistentVector<Integer>> versions = new ArrayList<>();
+    
+    for (int i = 0; i < max; i++) {
+      vector = vector.append(i);
+      versions.add(vector);
+      assertEquals(i + 1, vector.size());
+      assertEquals(Integer.valueOf(i), vector.get(i));
+      assertEquals(Integer.valueOf(i / 2), vector.get(i / 2));
+    }
+    
+    for (int size : BOUNDARIES) assertContents(versions.get(size - 1), size);
+    
+    for (int size = max - 1; size >= 0; size--) {
+      vector = vector.removeLast();
+      assertEquals(size, vector.size());
+      if (size > 0) assertEquals(Integer.valueOf(size - 1), vector.get(size - 1));
+      if (contains(BOUNDARIES, size)) assertContents(vector, size);
+    }
+    
+    assertTrue(vector.isEmpty());
+    
+    // the earlier versions are untouched
+    //
+    for (int size : BOUNDARIES) assertContents(versions.get(size - 1), size);
+  }
+  
+  @Test
+  public void randomOperationsMatchAnArrayList() {
+    
+    Random random = new Random(43);
+    
+    PersistentVector<Integer> vector = PersistentVector.empty();
+    List<Integer> reference = new ArrayList<>();
+    
+    for (int step = 0; step < 20000; step++) {
+      
+      int op = random.nextInt(10);
+      
+      if (op < 5 || reference.isEmpty()) {
+        vector = vector.append(step);
+        reference.add(step);
+      } else if (op < 8) {
+        int index = random.nextInt(reference.size());
+        vector = vector.set(index, -step);
+        reference.set(index, -step);
+      } else {
+        vector = vector.removeLast();
+        reference.remove(reference.size() - 1);
+      }
+      
+      assertEquals(reference.size(), vector.size());
+      if (!reference.isEmpty()) {
+        int index = random.nextInt(reference.size());
+        assertEquals(reference.get(index), vector.get(index));
+      }
+      if (step % 1000 == 0) assertIterates(reference, vector);
+    }
+    
+    assertIterates(reference, vector);
+  }
+  
+  @Test
+  public void theValuesAreComparedByIsEqual() {
+    
+    // the account states don't override equals
+    //
+    PersistentVector<AccountState> vector = PersistentVector.of(new AccountState(1), new AccountState(2));
+    
+    assertTrue(vector.isEqual(PersistentVector.of(new AccountState(1), new AccountState(2))));
+    assertFalse(vector.isEqual(PersistentVector.of(new AccountState(1), new AccountState(3))));
+  }
+  
+  private static void assertContents(PersistentVector<Integer> vector, int size) {
+    assertEquals(size, vector.size());
+    for (int i = 0; i < size; i++) assertEquals(Integer.valueOf(i), vector.get(i));
+    int i = 0;
+    for (Integer element : vector) assertEquals(Integer.valueOf(i++), element);
+    assertEquals(size, i);
+  }
+  
+  private static void assertIterates(List<Integer> reference, PersistentVector<Integer> vector) {
+    Iterator<Integer> elements = vector.iterator();
+    for (Integer element : reference) assertEquals(element, elements.next());
+    assertFalse(elements.hasNext());
+  }
+  
+  private static boolean contains(int[] sizes, int size) {
+    for (int s : sizes) {
+      if (s == size) return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,218 @@
+/**
+ * Project: STMv2 Package: stm.processor File: TransactionalValueProcessorTest.java
+ * 
+ * @author sidmishraw Last modified: Oct 19, 2026 10:12:40 AM
+ */
+package stm.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import stm.Value;
+
+/**
+ * Compiles values annotated with {@link stm.TransactionalValue} through the processor and checks
+ * what it generates or rejects, and that the generated copies are deep and the generated
+ * equalities exact.
+ * 
+ * @author sidmishraw
+ * 
+ *         Qualified Name: stm.processor.TransactionalValueProcessorTest
+ */
+public class TransactionalValueProcessorTest {
+  
+  @Test
+  public void generatesTheValuesOfACopyableValue() throws IOException {
+    Result result = compile("Point", "int x; double[] ys; String name; stm.persistent.PersistentVector<String> tags;");
+    assertEquals(Collections.emptyList(), result.errors);
+    assertTrue(result.generated.contains("static Point copy(Point value)"));
+    assertTrue(result.generated.contains("static Boolean isEqual(Point value, stm.Value v)"));
+  }
+  
+  @Test
+  public void theGeneratedCopyIsDeepAndTheGeneratedEqualityExact() throws Exception {
+    
+    String inner = "package sample;\n"
+        + "@stm.TransactionalValue\n"
+        + "public class Inner implements stm.Value {\n"
+        + "  int n; int[] ns;\n"
+        + "  public Inner() {}\n"
+        + "  static Inner of(int n) { Inner inner = new Inner(); inner.n = n; inner.ns = new int[] { n, n }; return inner; }\n"
+        + "  public stm.Value makeCopy() { return InnerValues.copy(this); }\n"
+        + "  public Boolean isEqual(stm.Value v) { return InnerValues.isEqual(this, v); }\n"
+        + "}\n";
+    
+    String outer = "package sample;\n"
+        + "@stm.TransactionalValue\n"
+        + "public class Outer implements stm.Value {\n"
+        + "  int x; double[] ys; String name; Inner inner; Inner[] inners; int[][] grid;\n"
+        + "  public Outer() {}\n"
+        + "  public static Outer sample() {\n"
+        + "    Outer o = new Outer(); o.x = 1; o.ys = new double[] { 1.5, Double.NaN }; o.name = \"a\"; o.inner = Inner.of(2);\n"
+        + "    o.inners = new Inner[] { Inner.of(3), null }; o.grid = new int[][] { { 4, 5 }, { 6 } }; return o;\n"
+        + "  }\n"
+        + "  public void mutate(int field) {\n"
+        + "    switch (field) {\n"
+        + "      case 0: x++; break;\n"
+        + "      case 1: ys[0]++; break;\n"
+        + "      case 2: name = \"b\"; break;\n"
+        + "      case 3: inner.n++; break;\n"
+        + "      case 4: inner.ns[1]++; break;\n"
+        + "      case 5: inners[0].ns[0]++; break;\n"
+        + "      case 6: inners[1] = Inner.of(3); break;\n"
+        + "      default: grid[1][0]++;\n"
+        + "    }\n"
+        + "  }\n"
+        + "  public stm.Value makeCopy() { return OuterValues.copy(this); }\n"
+        + "  public Boolean isEqual(stm.Value v) { return OuterValues.isEqual(this, v); }\n"
+        + "}\n";
+    
+    Path out = Files.createTempDirectory("processor");
+    List<String> errors = compile(out, false, source("Inner", inner), source("Outer", outer));
+    assertEquals(Collections.emptyList(), errors);
+    
+    try (URLClassLoader loader = new URLClassLoader(new URL[] { out.toUri().toURL() }, this.getClass().getClassLoader())) {
+      
+      Class<?> outerClass = loader.loadClass("sample.Outer");
+      Method sample = outerClass.getMethod("sample");
+      Method mutate = outerClass.getMethod("mutate", int.class);
+      
+      Value original = (Value) sample.invoke(null);
+      
+      // every field, however deep, is compared, and the copy shares nothing mutable with the original
+      //
+      for (int field = 0; field < 8; field++) {
+        
+        Value copy = original.makeCopy();
+        assertNotSame(original, copy);
+        assertTrue(original.isEqual(copy));
+        
+        mutate.invoke(copy, field);
+        
+        assertFalse("field " + field, original.isEqual(copy));
+        assertFalse("field " + field, copy.isEqual(original));
+        assertTrue("field " + field, original.isEqual((Value) sample.invoke(null)));
+      }
+    }
+  }
+  
+  @Test
+  public void rejectsAPrivateField() throws IOException {
+    Result result = compile("Point", "private int x;");
+    assertRejected(result, "can't be private");
+  }
+  
+  @Test
+  public void rejectsAFinalField() throws IOException {
+    Result result = compile("Point", "final int x = 1;");
+    assertRejected(result, "can't be final");
+  }
+  
+  @Test
+  public void rejectsAMutableFieldThatIsntAValue() throws IOException {
+    Result result = compile("Point", "java.util.List<String> xs;");
+    assertRejected(result, "can't be copied");
+  }
+  
+  @Test
+  public void acceptsAMutableFieldThatIsTransient() throws IOException {
+    Result result = compile("Point", "int x; transient java.util.List<String> cache;");
+    assertEquals(Collections.emptyList(), result.errors);
+  }
+  
+  private static void assertRejected(Result result, String message) {
+    assertEquals(result.errors.toString(), 1, result.errors.size());
+    assertTrue(result.errors.get(0), result.errors.get(0).contains(message));
+    assertFalse(result.generated.contains("class PointValues"));
+  }
+  
+  /**
+   * Compiles a value with the fields through the processor, upto the generation.
+   */
+  private static Result compile(String name, String fields) throws IOException {
+    
+    String source = "package sample;\n"
+        + "@stm.TransactionalValue\n"
+        + "public class " + name + " implements stm.Value {\n"
+        + "  " + fields + "\n"
+        + "  public " + name + "() {}\n"
+        + "  public stm.Value makeCopy() { return this; }\n"
+        + "  public Boolean isEqual(stm.Value v) { return this == v; }\n"
+        + "}\n";
+    
+    Path out = Files.createTempDirectory("processor");
+    
+    Result result = new Result();
+    result.errors = compile(out, true, source(name, source));
+    
+    Path generated = out.resolve("sample").resolve(name + "Values.java");
+    result.generated = Files.exists(generated) ? new String(Files.readAllBytes(generated), "UTF-8") : "";
+    
+    return result;
+  }
+  
+  /**
+   * Compiles the sources through the processor, the generated sources and the classes go to the
+   * output directory.
+   * 
+   * @param generateOnly
+   *          Whether to stop after the generation.
+   * @return The errors.
+   */
+  private static List<String> compile(Path out, boolean generateOnly, JavaFileObject... sources) {
+    
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    List<String> options = new ArrayList<>(Arrays.asList("-s", out.toString(), "-d", out.toString(), "-classpath",
+        System.getProperty("java.class.path")));
+    if (generateOnly) options.add("-proc:only");
+    
+    JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(sources));
+    task.setProcessors(Collections.singletonList(new TransactionalValueProcessor()));
+    task.call();
+    
+    return diagnostics.getDiagnostics().stream().filter(d -> d.getKind() == Diagnostic.Kind.ERROR).map(d -> d.getMessage(null))
+        .collect(Collectors.toList());
+  }
+  
+  private static JavaFileObject source(String name, String source) {
+    return new SimpleJavaFileObject(URI.create("string:///sample/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+      
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+  }
+  
+  private static final class Result {
+    
+    private List<String> errors;
+    
+    private String generated;
+  }
+}